@@ -0,0 +1,439 @@
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * This program generates gold standard and predictions files of any size for task 1 or task 2, to test and profile
+ * the evaluator with large inputs.
+ *
+ * Annotations are taken from the training set:
+ * 		- task 1: the relations of training/clinical_cases.relations.training_set.tsv
+ * 		- task 2: the abbreviations (mention A) of those relations with their definitions (mention B), and every
+ * 		  other occurrence of the same abbreviations in training/txt/<DocumentID>.txt. There is no lemmatizer here,
+ * 		  so the lemmatized definition is the definition in lower case.
+ * These annotations are repeated, with the document IDs of the copies changed to "<DocumentID>_<copy>",
+ * until the requested number of gold annotations is written. The first copy keeps the original document IDs,
+ * so its offsets match the training texts. A metadata file is also written for the generated documents,
+ * copying the rows of training/clinical_cases.metadata.training_set.tsv.
+ *
+ * Predictions are made from gold annotations with these errors, each one with its own rate:
+ * 		- missing: the annotation is not predicted
+ * 		- wrong offset: the start offset is moved 1 to 3 characters
+ * 		- wrong type: the mention B type is changed (task 1 only, task 2 has no types)
+ * 		- partial definition: the last word of the definition (mention B in task 1) is removed. Definitions of a single word
+ * 		  have no partial definition, so they are predicted without errors instead.
+ * 		- spurious: an extra prediction is added after the annotation, at an offset without gold annotation
+ * The output depends only on the arguments: the same seed always generates the same files.
+ * Files are written as they are generated, so their size is not limited by memory.
+ *
+ * USAGE:
+ * 		java -cp <CLASSES> CorpusGenerator <OUTPUT_DIRECTORY> <TASK_NUMBER> <GOLD_ANNOTATIONS> [OPTIONS]
+ * OPTIONS:
+ * 		--seed N                (1 by default)
+ * 		--missing RATE          (0.1 by default)
+ * 		--spurious RATE         (0.05 by default)
+ * 		--wrong-offset RATE     (0.05 by default)
+ * 		--wrong-type RATE       (0.05 by default)
+ * 		--partial RATE          (0.1 by default)
+ * 		--training DIRECTORY    (training by default)
+ * The output directory receives gold.tsv, predictions.tsv and metadata.tsv.
+ */
+public class CorpusGenerator
+{
+	private static final String RELATIONS_FILE = "clinical_cases.relations.training_set.tsv";
+	private static final String METADATA_FILE = "clinical_cases.metadata.training_set.tsv";
+	private static final String TEXTS_DIRECTORY = "txt";
+	
+	// Spurious predictions are placed after this offset, far from any gold annotation of the training texts
+	private static final int SPURIOUS_OFFSET = 1000000;
+	
+	private final int taskNumber;
+	private final long seed;
+	private double missingRate = 0.1;
+	private double spuriousRate = 0.05;
+	private double wrongOffsetRate = 0.05;
+	private double wrongTypeRate = 0.05;
+	private double partialDefinitionRate = 0.1;
+	
+	// Seed annotations (columns of a gold line), sorted by document and start offset, and metadata rows by document ID
+	private final List<String[]> seedAnnotations;
+	private final Map<String, String[]> metadata;
+	private final String metadataHeader;
+	
+	public CorpusGenerator(File trainingDirectory, int taskNumber, long seed) throws IOException
+	{
+		this.taskNumber = taskNumber;
+		this.seed = seed;
+		
+		List<String[]> relations = readTsv(new File(trainingDirectory, RELATIONS_FILE));
+		if (taskNumber == 1)
+		{
+			seedAnnotations = relations;
+		}
+		else
+		{
+			seedAnnotations = abbreviationAnnotations(relations, new File(trainingDirectory, TEXTS_DIRECTORY));
+		}
+		Collections.sort(seedAnnotations, new Comparator<String[]>()
+		{
+			@Override
+			public int compare(String[] a, String[] b)
+			{
+				int comparison = a[0].compareTo(b[0]);
+				if (comparison != 0)
+				{
+					return comparison;
+				}
+				return Integer.compare(Integer.parseInt(a[startColumn()]), Integer.parseInt(b[startColumn()]));
+			}
+		});
+		
+		metadata = new HashMap<String, String[]>();
+		File metadataFile = new File(trainingDirectory, METADATA_FILE);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(metadataFile), StandardCharsets.UTF_8));
+		metadataHeader = reader.readLine();
+		reader.close();
+		for (String[] row : readTsv(metadataFile))
+		{
+			metadata.put(row[0].replace(".txt", ""), row);
+		}
+	}
+	
+	public void setMissingRate(double missingRate)
+	{
+		this.missingRate = missingRate;
+	}
+	
+	public void setSpuriousRate(double spuriousRate)
+	{
+		this.spuriousRate = spuriousRate;
+	}
+	
+	public void setWrongOffsetRate(double wrongOffsetRate)
+	{
+		this.wrongOffsetRate = wrongOffsetRate;
+	}
+	
+	public void setWrongTypeRate(double wrongTypeRate)
+	{
+		this.wrongTypeRate = wrongTypeRate;
+	}
+	
+	public void setPartialDefinitionRate(double partialDefinitionRate)
+	{
+		this.partialDefinitionRate = partialDefinitionRate;
+	}
+	
+	public static void main(String[] args) throws IOException
+	{
+		List<String> arguments = new ArrayList<String>();
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].startsWith("--") && i + 1 < args.length)
+			{
+				options.put(args[i], args[++i]);
+			}
+			else
+			{
+				arguments.add(args[i]);
+			}
+		}
+		if (arguments.size() != 3)
+		{
+			System.err.println("USAGE: java CorpusGenerator <OUTPUT_DIRECTORY> <TASK_NUMBER> <GOLD_ANNOTATIONS> [--seed N] [--missing RATE]"
+					+ " [--spurious RATE] [--wrong-offset RATE] [--wrong-type RATE] [--partial RATE] [--training DIRECTORY]");
+			System.exit(1);
+		}
+		
+		File outputDirectory = new File(arguments.get(0));
+		int taskNumber = Integer.parseInt(arguments.get(1));
+		long annotations = Long.parseLong(arguments.get(2));
+		File trainingDirectory = new File(option(options, "--training", "training"));
+		long seed = Long.parseLong(option(options, "--seed", "1"));
+		
+		CorpusGenerator generator = new CorpusGenerator(trainingDirectory, taskNumber, seed);
+		generator.setMissingRate(Double.parseDouble(option(options, "--missing", "0.1")));
+		generator.setSpuriousRate(Double.parseDouble(option(options, "--spurious", "0.05")));
+		generator.setWrongOffsetRate(Double.parseDouble(option(options, "--wrong-offset", "0.05")));
+		generator.setWrongTypeRate(Double.parseDouble(option(options, "--wrong-type", "0.05")));
+		generator.setPartialDefinitionRate(Double.parseDouble(option(options, "--partial", "0.1")));
+		
+		outputDirectory.mkdirs();
+		generator.generate(annotations, new File(outputDirectory, "gold.tsv"), new File(outputDirectory, "predictions.tsv"),
+				new File(outputDirectory, "metadata.tsv"));
+	}
+	
+	private static String option(Map<String, String> options, String name, String defaultValue)
+	{
+		String value = options.get(name);
+		return value != null ? value : defaultValue;
+	}
+	
+	/*
+	 * This method writes the gold standard, predictions and metadata files. Metadata is not written if its file is null.
+	 */
+	public void generate(long annotations, File gold, File predictions, File metadataOutput) throws IOException
+	{
+		Random random = new Random(seed);
+		Writer goldWriter = writer(gold);
+		Writer predictionsWriter = writer(predictions);
+		Writer metadataWriter = metadataOutput != null ? writer(metadataOutput) : null;
+		try
+		{
+			String header = taskNumber == 1
+					? "#DocumentID\tMention_A_type\tA_Start\tA_End\tMent_A\tRelation_type\tMention_B_type\tB_Start\tB_End\tMent_B\n"
+					: "#DocumentID\tStart\tEnd\tAbbreviation\tDefinition\tLemmatized_definition\n";
+			goldWriter.write(header);
+			predictionsWriter.write(header);
+			if (metadataWriter != null)
+			{
+				metadataWriter.write(metadataHeader + "\n");
+			}
+			
+			String previousDocument = null;
+			for (long written = 0; written < annotations; written++)
+			{
+				String[] seedAnnotation = seedAnnotations.get((int) (written % seedAnnotations.size()));
+				long copy = written / seedAnnotations.size();
+				String documentId = copy == 0 ? seedAnnotation[0] : seedAnnotation[0] + "_" + copy;
+				
+				if (metadataWriter != null && !documentId.equals(previousDocument))
+				{
+					writeMetadata(metadataWriter, seedAnnotation[0], documentId);
+				}
+				previousDocument = documentId;
+				
+				String[] annotation = seedAnnotation.clone();
+				annotation[0] = documentId;
+				goldWriter.write(line(annotation));
+				
+				String[] prediction = predict(annotation, random);
+				if (prediction != null)
+				{
+					predictionsWriter.write(line(prediction));
+				}
+				if (random.nextDouble() < spuriousRate)
+				{
+					predictionsWriter.write(line(spurious(annotation, random)));
+				}
+			}
+		}
+		finally
+		{
+			goldWriter.close();
+			predictionsWriter.close();
+			if (metadataWriter != null)
+			{
+				metadataWriter.close();
+			}
+		}
+	}
+	
+	/*
+	 * This method returns the prediction made for a gold annotation, or null if it is missing
+	 */
+	private String[] predict(String[] annotation, Random random)
+	{
+		double draw = random.nextDouble();
+		if (draw < missingRate)
+		{
+			return null;
+		}
+		draw -= missingRate;
+		
+		String[] prediction = annotation.clone();
+		if (draw < wrongOffsetRate)
+		{
+			int shift = 1 + random.nextInt(3);
+			prediction[startColumn()] = String.valueOf(Integer.parseInt(prediction[startColumn()]) + shift);
+			if (taskNumber == 2)
+			{
+				prediction[2] = String.valueOf(Integer.parseInt(prediction[2]) + shift);
+			}
+			return prediction;
+		}
+		draw -= wrongOffsetRate;
+		
+		if (taskNumber == 1 && draw < wrongTypeRate)
+		{
+			MentionType type = MentionType.parse(prediction[5]);
+			MentionType[] types = MentionType.values();
+			prediction[5] = types[(type.ordinal() + 1 + random.nextInt(types.length - 1)) % types.length].name();
+			return prediction;
+		}
+		if (taskNumber == 1)
+		{
+			draw -= wrongTypeRate;
+		}
+		
+		if (draw < partialDefinitionRate && prediction[definitionColumn()].indexOf(' ') > 0)
+		{
+			if (taskNumber == 1)
+			{
+				prediction[8] = removeLastWord(prediction[8]);
+			}
+			else
+			{
+				prediction[4] = removeLastWord(prediction[4]);
+				prediction[5] = removeLastWord(prediction[5]);
+			}
+		}
+		return prediction;
+	}
+	
+	private String[] spurious(String[] annotation, Random random)
+	{
+		String[] prediction = annotation.clone();
+		int start = SPURIOUS_OFFSET + random.nextInt(SPURIOUS_OFFSET);
+		prediction[startColumn()] = String.valueOf(start);
+		if (taskNumber == 2)
+		{
+			prediction[2] = String.valueOf(start + prediction[3].length());
+		}
+		return prediction;
+	}
+	
+	private static String removeLastWord(String text)
+	{
+		return text.substring(0, text.lastIndexOf(' '));
+	}
+	
+	private int startColumn()
+	{
+		return taskNumber == 1 ? 2 : 1;
+	}
+	
+	private int definitionColumn()
+	{
+		return taskNumber == 1 ? 8 : 4;
+	}
+	
+	private void writeMetadata(Writer writer, String seedDocument, String documentId) throws IOException
+	{
+		String[] row = metadata.get(seedDocument);
+		if (row == null)
+		{
+			return;
+		}
+		String[] copy = row.clone();
+		copy[0] = documentId + ".txt";
+		writer.write(line(copy));
+	}
+	
+	/*
+	 * This method builds the task 2 annotations: each relation gives the abbreviation and its definition, and each
+	 * other occurrence of the abbreviation in the text of the document is also annotated with the same definition
+	 */
+	private static List<String[]> abbreviationAnnotations(List<String[]> relations, File textsDirectory) throws IOException
+	{
+		List<String[]> annotations = new ArrayList<String[]>();
+		Set<String> annotated = new HashSet<String>();
+		Map<String, String> texts = new HashMap<String, String>();
+		for (String[] relation : relations)
+		{
+			String documentId = relation[0];
+			String abbreviation = relation[3];
+			String definition = relation[8];
+			int start = Integer.parseInt(relation[2]);
+			addAbbreviation(annotations, annotated, documentId, start, abbreviation, definition);
+			
+			if (!texts.containsKey(documentId))
+			{
+				File textFile = new File(textsDirectory, documentId + ".txt");
+				texts.put(documentId, textFile.exists() ? readText(textFile) : "");
+			}
+			String text = texts.get(documentId);
+			for (int found = text.indexOf(abbreviation); found != -1 && !abbreviation.isEmpty(); found = text.indexOf(abbreviation, found + 1))
+			{
+				if (isWholeWord(text, found, found + abbreviation.length()))
+				{
+					addAbbreviation(annotations, annotated, documentId, found, abbreviation, definition);
+				}
+			}
+		}
+		return annotations;
+	}
+	
+	private static void addAbbreviation(List<String[]> annotations, Set<String> annotated, String documentId, int start,
+			String abbreviation, String definition)
+	{
+		if (annotated.add(documentId + "\t" + start))
+		{
+			annotations.add(new String[] { documentId, String.valueOf(start), String.valueOf(start + abbreviation.length()),
+					abbreviation, definition, definition.toLowerCase() });
+		}
+	}
+	
+	private static boolean isWholeWord(String text, int start, int end)
+	{
+		return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+				&& (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+	}
+	
+	private static String readText(File file) throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		char[] buffer = new char[8192];
+		int read;
+		while ((read = reader.read(buffer)) != -1)
+		{
+			text.append(buffer, 0, read);
+		}
+		reader.close();
+		return text.toString();
+	}
+	
+	private static List<String[]> readTsv(File file) throws IOException
+	{
+		List<String[]> rows = new ArrayList<String[]>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		String line = "";
+		while ((line = reader.readLine()) != null)
+		{
+			if (!line.startsWith("#"))
+			{
+				rows.add(line.split("\t"));
+			}
+		}
+		reader.close();
+		return rows;
+	}
+	
+	private static Writer writer(File file) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 20);
+	}
+	
+	private static String line(String[] columns)
+	{
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < columns.length; i++)
+		{
+			if (i > 0)
+			{
+				builder.append('\t');
+			}
+			builder.append(columns[i]);
+		}
+		return builder.append('\n').toString();
+	}
+}
@@ -0,0 +1,430 @@
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * This program measures the performance of the evaluator hot paths:
+ * 		- parse:      checkAnnotations on a predictions file (task 1 and task 2)
+ * 		- scan:       reading and parsing the lines of a predictions file, with LineAnnotationReader (BufferedReader)
+ * 		              and with MappedAnnotationReader (task 1 and task 2)
+ * 		- validate:   checkShortLongTaskCorrectLine and checkAbbreviationTaskCorrectLine
+ * 		- fold:       accent removal (AnnotationParser.eliminoAcentos)
+ * 		- tokens:     analizeTokens
+ * 		- relation:   evaluateRelation
+ * 		- evaluate:   full evaluate() (task 1 and task 2)
+ * 		- bootstrap:  1000 resamples of the paired bootstrap test (BootstrapTest.resample) of the task 2 predictions
+ * 		              against themselves, in one thread. Operations are resampled documents.
+ *
+ * Inputs are generated from the training set by CorpusGenerator, with its default error rates and the seed CORPUS_SEED,
+ * so every run measures the same files. They are kept in a temporary directory and reused by the next runs.
+ *
+ * For each benchmark and size it displays the throughput (operations per second), the allocation rate and
+ * allocated bytes per operation (measured per thread), the garbage collections, and the latency of each
+ * measured iteration (p50, p99 and maximum).
+ * The results of a reference run are kept in bench/baseline.txt, to compare performance changes against them.
+ *
+ * USAGE (from the project directory, after compiling src and bench):
+ * 		java -Xmx8g -cp <CLASSES> EvaluatorBenchmark [SIZES] [BENCHMARKS]
+ * SIZES: comma separated numbers of annotations, "10000,100000,1000000" by default (up to 10000000 with enough memory)
+ * BENCHMARKS: comma separated benchmark names to run, all of them by default
+ */
+public class EvaluatorBenchmark
+{
+	private static final String TRAINING_DIRECTORY = "training";
+	private static final long CORPUS_SEED = 1;
+	private static final String STOP_WORDS = "stopwords-es.txt";
+	
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASURED_ITERATIONS = 15;
+	
+	// Lines used by the benchmarks of single methods, repeated in each iteration
+	private static final int SAMPLE_LINES = 10000;
+	
+	// Resamples of the bootstrap benchmark
+	private static final int BOOTSTRAP_RESAMPLES = 1000;
+	
+	private final CorpusGenerator[] generators;		// by task number - 1, created when they are needed
+	private final File workDirectory;
+	private final List<String> selected;
+	private final PrintStream out;
+	
+	// Result of the last operations, so the JIT cannot remove them
+	private long blackhole;
+	
+	/*
+	 * A benchmarked operation. Each invocation processes a number of operations (lines, pairs...)
+	 */
+	private interface Operation
+	{
+		void run() throws Exception;
+	}
+	
+	public EvaluatorBenchmark(File workDirectory, List<String> selected, PrintStream out)
+	{
+		this.generators = new CorpusGenerator[2];
+		this.workDirectory = workDirectory;
+		this.selected = selected;
+		this.out = out;
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		int[] sizes = { 10000, 100000, 1000000 };
+		if (args.length > 0)
+		{
+			String[] values = args[0].split(",");
+			sizes = new int[values.length];
+			for (int i = 0; i < values.length; i++)
+			{
+				sizes[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+		List<String> selected = new ArrayList<String>();
+		if (args.length > 1)
+		{
+			selected.addAll(Arrays.asList(args[1].split(",")));
+		}
+		
+		File workDirectory = new File(System.getProperty("java.io.tmpdir"), "barr-benchmark");
+		workDirectory.mkdirs();
+		
+		// Benchmarks run with System.out closed, so the messages of the evaluator are not measured
+		PrintStream out = System.out;
+		EvaluatorBenchmark benchmark = new EvaluatorBenchmark(workDirectory, selected, out);
+		out.println("# java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors() + " processors, "
+				+ (Runtime.getRuntime().maxMemory() >> 20) + " MB heap");
+		out.println("# benchmark\tannotations\tops/s\talloc MB/s\talloc B/op\tgc count\tgc ms\tp50 ms\tp99 ms\tmax ms");
+		System.setOut(new PrintStream(new OutputStream()
+		{
+			@Override
+			public void write(int b)
+			{
+			}
+		}));
+		try
+		{
+			for (int size : sizes)
+			{
+				benchmark.run(size);
+			}
+		}
+		finally
+		{
+			System.setOut(out);
+		}
+	}
+	
+	/*
+	 * This method runs all the selected benchmarks with the given number of annotations
+	 */
+	public void run(int size) throws Exception
+	{
+		File gold1 = new File(workDirectory, "corpus-gold1-" + size + ".tsv");
+		File predictions1 = new File(workDirectory, "corpus-predictions1-" + size + ".tsv");
+		File gold2 = new File(workDirectory, "corpus-gold2-" + size + ".tsv");
+		File predictions2 = new File(workDirectory, "corpus-predictions2-" + size + ".tsv");
+		writeInputs(size, 1, gold1, predictions1);
+		writeInputs(size, 2, gold2, predictions2);
+		
+		final List<String> lines1 = readSample(predictions1);
+		final List<String> lines2 = readSample(predictions2);
+		
+		// Evaluators with the gold standard loaded, and predictions loaded in evaluators which share it
+		final BARR_Evaluator goldEvaluator1 = new BARR_Evaluator(gold1.getPath(), predictions1.getPath(), 1, STOP_WORDS, false);
+		goldEvaluator1.loadGoldStandard();
+		final BARR_Evaluator goldEvaluator2 = new BARR_Evaluator(gold2.getPath(), predictions2.getPath(), 2, STOP_WORDS, false);
+		goldEvaluator2.loadGoldStandard();
+		final String predictionsPath1 = predictions1.getPath();
+		final String predictionsPath2 = predictions2.getPath();
+		
+		if (isSelected("parse"))
+		{
+			measure("parse-task1", size, new Operation()
+			{
+				public void run() throws Exception
+				{
+					goldEvaluator1.forPredictions(predictionsPath1).checkAnnotations(predictionsPath1, false);
+				}
+			});
+			measure("parse-task2", size, new Operation()
+			{
+				public void run() throws Exception
+				{
+					goldEvaluator2.forPredictions(predictionsPath2).checkAnnotations(predictionsPath2, false);
+				}
+			});
+		}
+		
+		if (isSelected("scan"))
+		{
+			for (final int taskNumber : new int[] { 1, 2 })
+			{
+				final String predictionsPath = taskNumber == 1 ? predictionsPath1 : predictionsPath2;
+				final AnnotationParser parser = new AnnotationParser(taskNumber);
+				measure("scan-lines-task" + taskNumber, size, new Operation()
+				{
+					public void run() throws Exception
+					{
+						scan(new LineAnnotationReader(new BufferedReader(new FileReader(predictionsPath)), parser));
+					}
+				});
+				measure("scan-mapped-task" + taskNumber, size, new Operation()
+				{
+					public void run() throws Exception
+					{
+						scan(new MappedAnnotationReader(predictionsPath, parser));
+					}
+				});
+			}
+		}
+		
+		if (isSelected("validate"))
+		{
+			measure("validate-task1", lines1.size(), new Operation()
+			{
+				public void run()
+				{
+					for (String line : lines1)
+					{
+						blackhole += goldEvaluator1.checkShortLongTaskCorrectLine(line) ? 1 : 0;
+					}
+				}
+			});
+			measure("validate-task2", lines2.size(), new Operation()
+			{
+				public void run()
+				{
+					for (String line : lines2)
+					{
+						blackhole += goldEvaluator2.checkAbbreviationTaskCorrectLine(line) ? 1 : 0;
+					}
+				}
+			});
+		}
+		
+		if (isSelected("fold"))
+		{
+			final List<String> texts = new ArrayList<String>();
+			for (String line : lines1)
+			{
+				texts.add(line.split("\t")[8]);
+			}
+			measure("fold", texts.size(), new Operation()
+			{
+				public void run()
+				{
+					for (String text : texts)
+					{
+						blackhole += AnnotationParser.eliminoAcentos(text).length();
+					}
+				}
+			});
+		}
+		
+		if (isSelected("tokens"))
+		{
+			// Pairs of different definitions, so analizeTokens always has to compare tokens
+			final List<String[]> pairs = new ArrayList<String[]>();
+			for (int i = 0; i < lines2.size(); i++)
+			{
+				String[] prediction = lines2.get(i).split("\t");
+				String[] gold = lines2.get((i * 7 + 3) % lines2.size()).split("\t");
+				pairs.add(new String[] { prediction[4], gold[4], prediction[5], gold[5] });
+			}
+			measure("tokens", pairs.size(), new Operation()
+			{
+				public void run()
+				{
+					for (String[] pair : pairs)
+					{
+						blackhole += (long) (goldEvaluator2.analizeTokens(pair[0], pair[1], pair[2], pair[3]) * 100);
+					}
+				}
+			});
+		}
+		
+		if (isSelected("relation"))
+		{
+			AnnotationParser parser = new AnnotationParser(1);
+			final List<RelationAnnotation[]> pairs = new ArrayList<RelationAnnotation[]>();
+			for (int i = 0; i < lines1.size(); i++)
+			{
+				RelationAnnotation prediction = (RelationAnnotation) parser.parse(lines1.get(i));
+				RelationAnnotation gold = (RelationAnnotation) parser.parse(lines1.get(i % 2 == 0 ? i : (i + 1) % lines1.size()));
+				pairs.add(new RelationAnnotation[] { gold, prediction });
+			}
+			measure("relation", pairs.size(), new Operation()
+			{
+				public void run()
+				{
+					for (RelationAnnotation[] pair : pairs)
+					{
+						blackhole += (long) goldEvaluator1.evaluateRelation(pair[0], pair[1]);
+					}
+				}
+			});
+		}
+		
+		if (isSelected("evaluate"))
+		{
+			final BARR_Evaluator evaluator1 = goldEvaluator1.forPredictions(predictionsPath1);
+			evaluator1.checkAnnotations(predictionsPath1, false);
+			measure("evaluate-task1", size, new Operation()
+			{
+				public void run()
+				{
+					evaluator1.evaluate();
+				}
+			});
+			final BARR_Evaluator evaluator2 = goldEvaluator2.forPredictions(predictionsPath2);
+			evaluator2.checkAnnotations(predictionsPath2, false);
+			measure("evaluate-task2", size, new Operation()
+			{
+				public void run()
+				{
+					evaluator2.evaluate();
+				}
+			});
+		}
+		
+		if (isSelected("bootstrap"))
+		{
+			DocumentScoreVector scores = goldEvaluator2.forPredictions(predictionsPath2).evaluateDocuments();
+			final float[] documentValues = BootstrapTest.documentValues(scores, scores);
+			final BootstrapTest test = new BootstrapTest(goldEvaluator2, BOOTSTRAP_RESAMPLES, BootstrapTest.DEFAULT_SEED, 1);
+			measure("bootstrap", scores.size() * BOOTSTRAP_RESAMPLES, new Operation()
+			{
+				public void run()
+				{
+					blackhole += (long) test.resample(documentValues)[0];
+				}
+			});
+		}
+	}
+	
+	private void scan(AnnotationReader reader) throws IOException
+	{
+		while (reader.nextLine())
+		{
+			blackhole += reader.parse().getStartOffset();
+		}
+		reader.close();
+	}
+	
+	private boolean isSelected(String benchmark)
+	{
+		return selected.isEmpty() || selected.contains(benchmark);
+	}
+	
+	/*
+	 * This method runs an operation several times, first to warm up the JVM and then to measure it,
+	 * and displays the results. Each invocation of the operation processes "operations" operations.
+	 */
+	private void measure(String name, int operations, Operation operation) throws Exception
+	{
+		for (int i = 0; i < WARMUP_ITERATIONS; i++)
+		{
+			operation.run();
+		}
+		System.gc();
+		
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long[] times = new long[MEASURED_ITERATIONS];
+		long gcCountBefore = gcCount();
+		long gcTimeBefore = gcTime();
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long totalTime = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++)
+		{
+			long start = System.nanoTime();
+			operation.run();
+			times[i] = System.nanoTime() - start;
+			totalTime += times[i];
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		long gcCount = gcCount() - gcCountBefore;
+		long gcTime = gcTime() - gcTimeBefore;
+		
+		Arrays.sort(times);
+		double seconds = totalTime / 1e9;
+		double totalOperations = (double) operations * MEASURED_ITERATIONS;
+		out.println(String.format("%s\t%d\t%.0f\t%.1f\t%.1f\t%d\t%d\t%.3f\t%.3f\t%.3f", name, operations, totalOperations / seconds,
+				allocated / seconds / (1 << 20), allocated / totalOperations, gcCount, gcTime,
+				percentile(times, 0.50) / 1e6, percentile(times, 0.99) / 1e6, times[times.length - 1] / 1e6));
+	}
+	
+	private static long percentile(long[] sortedTimes, double percentile)
+	{
+		int index = (int) Math.ceil(percentile * sortedTimes.length) - 1;
+		return sortedTimes[Math.max(0, Math.min(index, sortedTimes.length - 1))];
+	}
+	
+	private static long gcCount()
+	{
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+	
+	private static long gcTime()
+	{
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+	
+	/*
+	 * This method writes a gold standard and a predictions file with the given number of annotations for a task
+	 * (see CorpusGenerator). Files are reused if they already exist.
+	 */
+	private void writeInputs(int size, int taskNumber, File gold, File predictions) throws IOException
+	{
+		if (gold.exists() && predictions.exists())
+		{
+			return;
+		}
+		if (generators[taskNumber - 1] == null)
+		{
+			generators[taskNumber - 1] = new CorpusGenerator(new File(TRAINING_DIRECTORY), taskNumber, CORPUS_SEED);
+		}
+		generators[taskNumber - 1].generate(size, gold, predictions, null);
+	}
+	
+	/*
+	 * This method reads the first SAMPLE_LINES annotation lines of a file
+	 */
+	private static List<String> readSample(File file) throws IOException
+	{
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		String line = "";
+		while ((line = reader.readLine()) != null && lines.size() < SAMPLE_LINES)
+		{
+			if (!line.startsWith("#"))
+			{
+				lines.add(line);
+			}
+		}
+		reader.close();
+		return lines;
+	}
+}
@@ -0,0 +1,191 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * This program checks the token overlap scores of TokenOverlap (see BARR_Evaluator.analizeTokens) against
+ * two reference implementations written with String.split and collections:
+ * 		- the list search of previous versions of this script, copied from them, where a repeated predicted token
+ * 		  matches the same gold token many times. TokenOverlap must give the same scores with countRepeatedTokens
+ * 		  (the --legacy-token-matching option).
+ * 		- a multiset of gold tokens, where each gold token matches only one predicted token. TokenOverlap must give
+ * 		  the same scores by default.
+ * Both the scores of texts and of prepared gold tokens (TokenMultiset) are checked.
+ *
+ * First it checks fixed cases with repeated tokens, displaying their old (legacy) and new scores,
+ * which must be the expected ones. Then it checks random definitions built from a few tokens, with stop words,
+ * repeated tokens, and empty tokens (consecutive and trailing spaces).
+ * It exits with status 1 if any score is different.
+ *
+ * USAGE (from the project directory, after compiling src and bench):
+ * 		java -cp <CLASSES> TokenOverlapCheck [CASES] [SEED]
+ * CASES: number of random cases, 500000 by default
+ * SEED: seed of the random cases, 1 by default
+ */
+public class TokenOverlapCheck
+{
+	private static final StopWordSet STOP_WORDS = new StopWordSet(Arrays.asList("de", "la", "el", "y"));
+	private static final String[] VOCABULARY = { "insuficiencia", "renal", "cronica", "de", "la", "y", "virus", "" };
+	private static final int MAX_MISMATCHES_DISPLAYED = 10;
+	
+	// Fixed cases: predicted text, gold text, legacy score, score
+	private static final Object[][] FIXED_CASES = {
+		{ "insuficiencia renal", "insuficiencia renal", 1f, 1f },
+		{ "insuficiencia renal renal", "insuficiencia renal", 1f, 2f / 3 },
+		{ "dolor dolor dolor", "dolor abdominal", 1f, 1f / 3 },
+		{ "tumor tumor", "tumor tumor maligno", 2f / 3, 2f / 3 },
+		{ "virus de la hepatitis c", "virus de la hepatitis c", 3f / 5, 3f / 5 },
+		{ "renal renal de de", "renal de la", 2f / 4, 1f / 4 },
+		{ "", "renal", 0f, 0f },
+	};
+	
+	private int mismatches;
+	
+	public static void main(String[] args)
+	{
+		int cases = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		
+		TokenOverlapCheck check = new TokenOverlapCheck();
+		check.checkFixedCases();
+		check.checkRandomCases(cases, seed);
+		if (check.mismatches > 0)
+		{
+			System.out.println(check.mismatches + " DIFFERENT SCORES");
+			System.exit(1);
+		}
+		System.out.println("All the scores are the same");
+	}
+	
+	private void checkFixedCases()
+	{
+		TokenOverlap overlap = new TokenOverlap(STOP_WORDS, false);
+		TokenOverlap legacyOverlap = new TokenOverlap(STOP_WORDS, true);
+		System.out.println("PREDICTION\tGOLD\tLEGACY SCORE\tSCORE");
+		for (Object[] fixedCase : FIXED_CASES)
+		{
+			String pred = (String) fixedCase[0];
+			String gs = (String) fixedCase[1];
+			float legacyScore = (Float) fixedCase[2];
+			float score = (Float) fixedCase[3];
+			System.out.println("\"" + pred + "\"\t\"" + gs + "\"\t" + legacyScore + "\t" + score);
+			
+			compare("fixed reference legacy", pred, gs, legacyScore, listSearchScore(pred, gs));
+			compare("fixed reference", pred, gs, score, multisetScore(pred, gs));
+			compare("fixed legacy", pred, gs, legacyScore, legacyOverlap.score(pred, gs));
+			compare("fixed", pred, gs, score, overlap.score(pred, gs));
+		}
+	}
+	
+	private void checkRandomCases(int cases, long seed)
+	{
+		Random random = new Random(seed);
+		TokenOverlap overlap = new TokenOverlap(STOP_WORDS, false);
+		TokenOverlap legacyOverlap = new TokenOverlap(STOP_WORDS, true);
+		for (int i = 0; i < cases; i++)
+		{
+			String pred = randomText(random);
+			String gs = randomText(random);
+			TokenMultiset gsTokens = new TokenMultiset(gs, STOP_WORDS);
+			
+			float legacyScore = listSearchScore(pred, gs);
+			compare("legacy", pred, gs, legacyScore, legacyOverlap.score(pred, gs));
+			compare("legacy prepared", pred, gs, legacyScore, legacyOverlap.score(pred, gsTokens));
+			
+			float score = multisetScore(pred, gs);
+			compare("new", pred, gs, score, overlap.score(pred, gs));
+			compare("new prepared", pred, gs, score, overlap.score(pred, gsTokens));
+		}
+		System.out.println("Checked " + cases + " random cases");
+	}
+	
+	private static String randomText(Random random)
+	{
+		int tokens = random.nextInt(7);
+		StringBuilder text = new StringBuilder();
+		for (int token = 0; token < tokens; token++)
+		{
+			if (token > 0)
+			{
+				text.append(' ');
+			}
+			text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+		}
+		return text.toString();
+	}
+	
+	private void compare(String name, String pred, String gs, float expected, float actual)
+	{
+		// Scores are compared by their bits, so NaN scores are the same too
+		if (Float.floatToIntBits(expected) != Float.floatToIntBits(actual))
+		{
+			if (mismatches < MAX_MISMATCHES_DISPLAYED)
+			{
+				System.out.println("DIFFERENT " + name.toUpperCase() + " SCORE: \"" + pred + "\" \"" + gs + "\" " + expected + " " + actual);
+			}
+			mismatches++;
+		}
+	}
+	
+	/*
+	 * The score of previous versions of this script: each predicted token which is not a stop word
+	 * is searched in the list of gold tokens without stop words
+	 */
+	private static float listSearchScore(String pred, String gs)
+	{
+		List<String> predTokens = new ArrayList<String>(Arrays.asList(pred.split(" ")));
+		List<String> gsTokens = new ArrayList<String>();
+		for (String token : gs.split(" "))
+		{
+			if (!STOP_WORDS.contains(token))
+			{
+				gsTokens.add(token);
+			}
+		}
+		
+		float matchingTokens = 0;
+		for (String token : predTokens)
+		{
+			if (!STOP_WORDS.contains(token) && gsTokens.contains(token))
+			{
+				matchingTokens++;
+			}
+		}
+		return matchingTokens / Math.max(gsTokens.size(), predTokens.size());
+	}
+	
+	/*
+	 * The score with a multiset of gold tokens: a predicted token which matches a gold token uses it
+	 */
+	private static float multisetScore(String pred, String gs)
+	{
+		String[] predTokens = pred.split(" ");
+		Map<String, Integer> gsTokens = new HashMap<String, Integer>();
+		int gsSize = 0;
+		for (String token : gs.split(" "))
+		{
+			if (!STOP_WORDS.contains(token))
+			{
+				Integer count = gsTokens.get(token);
+				gsTokens.put(token, count == null ? 1 : count + 1);
+				gsSize++;
+			}
+		}
+		
+		float matchingTokens = 0;
+		for (String token : predTokens)
+		{
+			Integer count = gsTokens.get(token);
+			if (!STOP_WORDS.contains(token) && count != null && count > 0)
+			{
+				matchingTokens++;
+				gsTokens.put(token, count - 1);
+			}
+		}
+		return matchingTokens / Math.max(gsSize, predTokens.length);
+	}
+}
@@ -0,0 +1,93 @@
+
+/*
+ * An annotation of the abbreviation resolution task (task 2).
+ * Abbreviation, definition and lemmatized definition are stored without accents, as they are compared.
+ */
+public class AbbreviationAnnotation extends Annotation
+{
+	private final int endOffset;
+	private final String endOffsetText;		// text of the end offset column, only if it is not a plain number
+	private final String abbreviation;
+	private final String definition;
+	private final String lemmatizedDefinition;
+	
+	// Tokens of the definitions without stop words, prepared only for gold annotations (see prepareGoldTokens)
+	private TokenMultiset definitionTokens;
+	private TokenMultiset lemmatizedDefinitionTokens;
+	
+	public AbbreviationAnnotation(String documentId, int startOffset, int endOffset, String endOffsetText, String abbreviation, 
+			String definition, String lemmatizedDefinition, float confidence, String line)
+	{
+		super(documentId, startOffset, confidence, line);
+		this.endOffset = endOffset;
+		this.endOffsetText = endOffsetText;
+		this.abbreviation = abbreviation;
+		this.definition = definition;
+		this.lemmatizedDefinition = lemmatizedDefinition;
+	}
+	
+	public AbbreviationAnnotation(String documentId, int startOffset, int endOffset, String endOffsetText, String abbreviation, 
+			String definition, String lemmatizedDefinition, float confidence, byte[] encodedLine)
+	{
+		super(documentId, startOffset, confidence, encodedLine);
+		this.endOffset = endOffset;
+		this.endOffsetText = endOffsetText;
+		this.abbreviation = abbreviation;
+		this.definition = definition;
+		this.lemmatizedDefinition = lemmatizedDefinition;
+	}
+	
+	public int getEndOffset()
+	{
+		return endOffset;
+	}
+	
+	public String getEndOffsetText()
+	{
+		return endOffsetText;
+	}
+	
+	/*
+	 * This method checks if the end offset of another annotation is written as the end offset of this one
+	 */
+	public boolean sameEndOffset(AbbreviationAnnotation other)
+	{
+		return sameOffset(endOffset, endOffsetText, other.endOffset, other.endOffsetText);
+	}
+	
+	public String getAbbreviation()
+	{
+		return abbreviation;
+	}
+	
+	public String getDefinition()
+	{
+		return definition;
+	}
+	
+	public String getLemmatizedDefinition()
+	{
+		return lemmatizedDefinition;
+	}
+	
+	/*
+	 * This method prepares the tokens of the definitions, so they are not calculated again each time
+	 * a prediction is compared with this annotation. It must be called while loading the gold standard,
+	 * before the evaluation starts.
+	 */
+	public void prepareGoldTokens(StopWordSet stopWords)
+	{
+		definitionTokens = new TokenMultiset(definition, stopWords);
+		lemmatizedDefinitionTokens = new TokenMultiset(lemmatizedDefinition, stopWords);
+	}
+	
+	public TokenMultiset getDefinitionTokens()
+	{
+		return definitionTokens;
+	}
+	
+	public TokenMultiset getLemmatizedDefinitionTokens()
+	{
+		return lemmatizedDefinitionTokens;
+	}
+}
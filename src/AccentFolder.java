@@ -0,0 +1,104 @@
+
+import java.text.Normalizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/*
+ * This class removes accents and any other non ASCII character from texts.
+ * The result is the same as Normalizer.normalize(text, NFD) followed by removing non ASCII characters, but faster:
+ * 		- ASCII texts are returned as they are, without creating any object
+ * 		- Latin-1 and Latin Extended-A characters (the usual ones in Spanish) are folded with a precomputed table
+ * 		- Any other character makes the whole text go through the Normalizer
+ * Folded texts are cached, since the same definitions appear many times in gold standard and predictions files.
+ * 
+ * Folding each character on its own gives the same result as normalizing the whole text: NFD only reorders
+ * combining marks, which are not ASCII and are removed anyway.
+ */
+public final class AccentFolder
+{
+	// Characters folded with the table: from U+0000 to U+017F (Latin Extended-A)
+	private static final int TABLE_SIZE = 0x180;
+	private static final String[] FOLDING_TABLE = new String[TABLE_SIZE];
+	
+	private static final int MAX_CACHED_TEXTS = 8192;
+	private static final ConcurrentHashMap<String, String> CACHE = new ConcurrentHashMap<String, String>();
+	
+	private static final Pattern NON_ASCII = Pattern.compile("[^\\p{ASCII}]");
+	
+	static
+	{
+		// The table is computed with the Normalizer, so both ways give exactly the same result
+		for (char c = 0x80; c < TABLE_SIZE; c++)
+		{
+			FOLDING_TABLE[c] = foldWithNormalizer(String.valueOf(c));
+		}
+	}
+	
+	private AccentFolder()
+	{
+	}
+	
+	/*
+	 * This method returns the text without accents nor any other non ASCII character
+	 */
+	public static String fold(String text)
+	{
+		// ASCII fast path
+		int length = text.length();
+		int firstNonAscii = 0;
+		while (firstNonAscii < length && text.charAt(firstNonAscii) < 0x80)
+		{
+			firstNonAscii++;
+		}
+		if (firstNonAscii == length)
+		{
+			return text;
+		}
+		
+		String folded = CACHE.get(text);
+		if (folded == null)
+		{
+			folded = fold(text, firstNonAscii);
+			if (CACHE.size() >= MAX_CACHED_TEXTS)
+			{
+				CACHE.clear();
+			}
+			CACHE.put(text, folded);
+		}
+		return folded;
+	}
+	
+	private static String fold(String text, int firstNonAscii)
+	{
+		int length = text.length();
+		StringBuilder builder = new StringBuilder(length);
+		builder.append(text, 0, firstNonAscii);
+		for (int i = firstNonAscii; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c < 0x80)
+			{
+				builder.append(c);
+			}
+			else if (c < TABLE_SIZE)
+			{
+				builder.append(FOLDING_TABLE[c]);
+			}
+			else
+			{
+				// Character out of the table, normalize the whole text
+				return foldWithNormalizer(text);
+			}
+		}
+		return builder.toString();
+	}
+	
+	/*
+	 * This method folds a text the way previous versions of this script did
+	 */
+	static String foldWithNormalizer(String text)
+	{
+		String cadenaNormalize = Normalizer.normalize(text, Normalizer.Form.NFD);
+		return NON_ASCII.matcher(cadenaNormalize).replaceAll("");
+	}
+}
@@ -0,0 +1,78 @@
+
+import java.nio.charset.Charset;
+
+/*
+ * An annotation line of a gold standard or predictions file, already validated and parsed.
+ * Subclasses store the columns of each task.
+ */
+public abstract class Annotation
+{
+	private final String documentId;
+	private final int startOffset;		// offset used to match gold annotations and predictions
+	private final String line;			// original line, used to display the annotation
+	private final byte[] encodedLine;	// or the bytes of the original line, if it was read without decoding it
+	private final float confidence;		// confidence of a prediction, if its line has one (see AnnotationParser)
+	
+	protected Annotation(String documentId, int startOffset, float confidence, String line)
+	{
+		this.documentId = documentId;
+		this.startOffset = startOffset;
+		this.confidence = confidence;
+		this.line = line;
+		this.encodedLine = null;
+	}
+	
+	/*
+	 * This constructor is used for lines read as bytes (see MappedAnnotationReader),
+	 * which are decoded only if the annotation is displayed
+	 */
+	protected Annotation(String documentId, int startOffset, float confidence, byte[] encodedLine)
+	{
+		this.documentId = documentId;
+		this.startOffset = startOffset;
+		this.confidence = confidence;
+		this.line = null;
+		this.encodedLine = encodedLine;
+	}
+	
+	public String getDocumentId()
+	{
+		return documentId;
+	}
+	
+	public int getStartOffset()
+	{
+		return startOffset;
+	}
+	
+	/*
+	 * The confidence of a prediction, or positive infinity if its line does not have a confidence column,
+	 * so it is kept at any confidence threshold (see ThresholdSweep)
+	 */
+	public float getConfidence()
+	{
+		return confidence;
+	}
+	
+	/*
+	 * This method compares two offsets as they are written in their files: their text, if one of them is not
+	 * written as a plain number (see AnnotationParser.offsetText), or their value otherwise
+	 */
+	protected static boolean sameOffset(int offset, String offsetText, int otherOffset, String otherOffsetText)
+	{
+		if (offsetText == null || otherOffsetText == null)
+		{
+			return offsetText == otherOffsetText && offset == otherOffset;
+		}
+		return offsetText.equals(otherOffsetText);
+	}
+	
+	public String getLine()
+	{
+		if (line == null)
+		{
+			return new String(encodedLine, Charset.defaultCharset());
+		}
+		return line;
+	}
+}
@@ -0,0 +1,452 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * This class stores the annotations of a gold standard or predictions file in a compact way.
+ *
+ * Document IDs are numbered with dense integers (0, 1, 2...) in the order they are found.
+ * Each annotation is identified by its document number and start offset, packed in a single long key,
+ * and is found through an open-addressing hash table, so lookups do not create any object.
+ * The annotation fields are stored column-wise in arrays, one position per annotation (entry).
+ * The entries of a document are linked in insertion order, to iterate them without a separate map per document.
+ *
+ * As in the previous Map<String, Map<Integer, String>> structure, adding an annotation with the same
+ * document and start offset than a previous one replaces it.
+ *
+ * The structure of the index (documents, keys, links and hash table) can be written to a gold standard snapshot
+ * and read back with bulk copies of its arrays (see GoldSnapshot). The annotations of an index read this way are not
+ * created when it is read, but by an AnnotationSource the first time each one is needed. Document IDs are not decoded either:
+ * they are found through an open-addressing table by String.hashCode (which is the same in any JVM), written with the index.
+ * So reading an index only copies its arrays. An index read from a snapshot can not be modified, except by clear.
+ */
+public class AnnotationIndex
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	// Documents: dense number <-> document ID, and first/last entry of each document
+	private Map<String, Integer> documentNumbers;
+	private String[] documentIds;
+	private int[] documentFirst;
+	private int[] documentLast;
+	private int[] documentSize;
+	private int[] documentLines;
+	private int documentCount;
+
+	// Entries, stored column-wise
+	private long[] entryKey;
+	private int[] entryNext;
+	private Annotation[] entryAnnotation;
+	private int entryCount;
+
+	// Open-addressing table, each slot stores (entry + 1), 0 means empty
+	private int[] table;
+	private int tableMask;
+
+	// Source of the annotations of an index read from a snapshot, and the annotations already created by it
+	private AnnotationSource source;
+	private AtomicReferenceArray<Annotation> sourceAnnotations;
+
+	// Document IDs of an index read from a snapshot, as UTF-8 bytes, and their open-addressing table (document + 1, 0 means empty)
+	private ByteBuffer documentIdBytes;
+	private int[] documentIdPositions;
+	private int[] documentTable;
+
+	/*
+	 * Creates the annotations of an index read from a snapshot, by their entry.
+	 * It can be called by many threads at the same time, and more than once for the same entry.
+	 */
+	public interface AnnotationSource
+	{
+		Annotation createAnnotation(int entry);
+	}
+
+	public AnnotationIndex()
+	{
+		init();
+	}
+
+	private void init()
+	{
+		documentNumbers = new HashMap<String, Integer>();
+		documentIds = new String[INITIAL_CAPACITY];
+		documentFirst = new int[INITIAL_CAPACITY];
+		documentLast = new int[INITIAL_CAPACITY];
+		documentSize = new int[INITIAL_CAPACITY];
+		documentLines = new int[INITIAL_CAPACITY];
+		documentCount = 0;
+
+		entryKey = new long[INITIAL_CAPACITY];
+		entryNext = new int[INITIAL_CAPACITY];
+		entryAnnotation = new Annotation[INITIAL_CAPACITY];
+		entryCount = 0;
+
+		table = new int[INITIAL_CAPACITY * 2];
+		tableMask = table.length - 1;
+
+		source = null;
+		sourceAnnotations = null;
+		documentIdBytes = null;
+		documentIdPositions = null;
+		documentTable = null;
+	}
+
+	/*
+	 * This method stores an annotation, replacing the previous one with the same document and start offset
+	 */
+	public void put(Annotation annotation)
+	{
+		if (source != null)
+		{
+			throw new IllegalStateException("An index read from a snapshot can not be modified");
+		}
+		int document = addDocument(annotation.getDocumentId());
+		documentLines[document]++;
+		long key = key(document, annotation.getStartOffset());
+
+		int slot = slot(key);
+		while (table[slot] != 0)
+		{
+			int entry = table[slot] - 1;
+			if (entryKey[entry] == key)
+			{
+				entryAnnotation[entry] = annotation;
+				return;
+			}
+			slot = (slot + 1) & tableMask;
+		}
+
+		if (entryCount == entryKey.length)
+		{
+			int capacity = entryKey.length * 2;
+			entryKey = Arrays.copyOf(entryKey, capacity);
+			entryNext = Arrays.copyOf(entryNext, capacity);
+			entryAnnotation = Arrays.copyOf(entryAnnotation, capacity);
+		}
+		int entry = entryCount++;
+		entryKey[entry] = key;
+		entryNext[entry] = -1;
+		entryAnnotation[entry] = annotation;
+		table[slot] = entry + 1;
+
+		// Link the entry at the end of its document
+		if (documentFirst[document] == -1)
+		{
+			documentFirst[document] = entry;
+		}
+		else
+		{
+			entryNext[documentLast[document]] = entry;
+		}
+		documentLast[document] = entry;
+		documentSize[document]++;
+
+		// Keep the table at most half full
+		if (entryCount * 2 > table.length)
+		{
+			rehash(table.length * 2);
+		}
+	}
+
+	/*
+	 * This method returns the entry with the given document number and start offset, or -1 if it does not exist
+	 */
+	public int find(int document, int startOffset)
+	{
+		long key = key(document, startOffset);
+		int slot = slot(key);
+		while (table[slot] != 0)
+		{
+			int entry = table[slot] - 1;
+			if (entryKey[entry] == key)
+			{
+				return entry;
+			}
+			slot = (slot + 1) & tableMask;
+		}
+		return -1;
+	}
+
+	/*
+	 * This method returns the number of a document, or -1 if the document has no annotations
+	 */
+	public int documentNumber(String documentId)
+	{
+		if (documentTable != null)
+		{
+			int slot = documentSlot(documentId.hashCode(), documentTable.length);
+			while (documentTable[slot] != 0)
+			{
+				int document = documentTable[slot] - 1;
+				if (documentId.equals(documentId(document)))
+				{
+					return document;
+				}
+				slot = (slot + 1) & (documentTable.length - 1);
+			}
+			return -1;
+		}
+		Integer document = documentNumbers.get(documentId);
+		if (document == null)
+		{
+			return -1;
+		}
+		return document;
+	}
+
+	public boolean containsDocument(String documentId)
+	{
+		return documentNumber(documentId) != -1;
+	}
+
+	public int documentCount()
+	{
+		return documentCount;
+	}
+
+	public String documentId(int document)
+	{
+		if (documentIds == null)
+		{
+			ByteBuffer id = documentIdBytes.duplicate();
+			id.position(documentIdPositions[document]);
+			return GoldSnapshot.readString(id);
+		}
+		return documentIds[document];
+	}
+
+	public int documentSize(int document)
+	{
+		return documentSize[document];
+	}
+
+	/*
+	 * This method returns the number of annotations added to a document, including the ones replaced by a later annotation
+	 * with the same start offset. This is the number of lines of the document counted by BARR_Evaluator.
+	 */
+	public int documentLines(int document)
+	{
+		return documentLines[document];
+	}
+
+	/*
+	 * These methods iterate the entries of a document:
+	 * 		for (int entry = index.firstEntry(document); entry != -1; entry = index.nextEntry(entry))
+	 */
+	public int firstEntry(int document)
+	{
+		return documentFirst[document];
+	}
+
+	public int nextEntry(int entry)
+	{
+		return entryNext[entry];
+	}
+
+	public int startOffset(int entry)
+	{
+		return (int) entryKey[entry];
+	}
+
+	public Annotation annotation(int entry)
+	{
+		if (source == null)
+		{
+			return entryAnnotation[entry];
+		}
+
+		// The first thread which needs the annotation creates it, and all of them use the same object
+		Annotation annotation = sourceAnnotations.get(entry);
+		if (annotation == null)
+		{
+			annotation = source.createAnnotation(entry);
+			if (!sourceAnnotations.compareAndSet(entry, null, annotation))
+			{
+				annotation = sourceAnnotations.get(entry);
+			}
+		}
+		return annotation;
+	}
+
+	public int size()
+	{
+		return entryCount;
+	}
+
+	/*
+	 * This method removes all annotations and documents, keeping the allocated arrays to be reused
+	 */
+	public void clear()
+	{
+		if (source != null)
+		{
+			init();
+			return;
+		}
+		documentNumbers.clear();
+		Arrays.fill(documentIds, 0, documentCount, null);
+		documentCount = 0;
+		Arrays.fill(entryAnnotation, 0, entryCount, null);
+		entryCount = 0;
+		Arrays.fill(table, 0);
+	}
+
+	/*
+	 * This method writes the structure of the index, without its annotations
+	 */
+	public void writeStructure(DataOutputStream output) throws IOException
+	{
+		output.writeInt(documentCount);
+		int[] positions = new int[documentCount];
+		int[] idTable = new int[Math.max(2, Integer.highestOneBit(Math.max(1, documentCount)) * 4)];
+		ByteArrayOutputStream idBytes = new ByteArrayOutputStream();
+		DataOutputStream ids = new DataOutputStream(idBytes);
+		for (int document = 0; document < documentCount; document++)
+		{
+			String documentId = documentId(document);
+			positions[document] = ids.size();
+			GoldSnapshot.writeString(ids, documentId);
+			int slot = documentSlot(documentId.hashCode(), idTable.length);
+			while (idTable[slot] != 0)
+			{
+				slot = (slot + 1) & (idTable.length - 1);
+			}
+			idTable[slot] = document + 1;
+		}
+		ids.flush();
+		writeInts(output, positions, documentCount);
+		output.writeInt(idBytes.size());
+		idBytes.writeTo(output);
+		output.writeInt(idTable.length);
+		writeInts(output, idTable, idTable.length);
+		writeInts(output, documentFirst, documentCount);
+		writeInts(output, documentLast, documentCount);
+		writeInts(output, documentSize, documentCount);
+		writeInts(output, documentLines, documentCount);
+
+		output.writeInt(entryCount);
+		for (int entry = 0; entry < entryCount; entry++)
+		{
+			output.writeLong(entryKey[entry]);
+		}
+		writeInts(output, entryNext, entryCount);
+		output.writeInt(table.length);
+		writeInts(output, table, table.length);
+	}
+
+	/*
+	 * This method replaces the content of the index with a structure written by writeStructure, read from the current
+	 * position of the buffer. The annotations of its entries are created by the given source when they are needed.
+	 */
+	public void readStructure(ByteBuffer input, AnnotationSource source)
+	{
+		documentCount = input.getInt();
+		documentIds = null;
+		documentNumbers = null;
+		documentIdPositions = readInts(input, documentCount);
+		int idLength = input.getInt();
+		documentIdBytes = input.slice();
+		documentIdBytes.limit(idLength);
+		input.position(input.position() + idLength);
+		documentTable = readInts(input, input.getInt());
+		documentFirst = readInts(input, documentCount);
+		documentLast = readInts(input, documentCount);
+		documentSize = readInts(input, documentCount);
+		documentLines = readInts(input, documentCount);
+
+		entryCount = input.getInt();
+		entryKey = new long[entryCount];
+		input.asLongBuffer().get(entryKey);
+		input.position(input.position() + entryCount * 8);
+		entryNext = readInts(input, entryCount);
+		entryAnnotation = null;
+		table = readInts(input, input.getInt());
+		tableMask = table.length - 1;
+		if (Integer.bitCount(table.length) != 1 || Integer.bitCount(documentTable.length) != 1)
+		{
+			throw new IllegalArgumentException("Hash tables of the index must have a power of 2 size");
+		}
+
+		this.source = source;
+		this.sourceAnnotations = new AtomicReferenceArray<Annotation>(entryCount);
+	}
+
+	private static void writeInts(DataOutputStream output, int[] values, int count) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+		{
+			output.writeInt(values[i]);
+		}
+	}
+
+	private static int[] readInts(ByteBuffer input, int count)
+	{
+		int[] values = new int[count];
+		input.asIntBuffer().get(values);
+		input.position(input.position() + count * 4);
+		return values;
+	}
+
+	private int addDocument(String documentId)
+	{
+		Integer existing = documentNumbers.get(documentId);
+		if (existing != null)
+		{
+			return existing;
+		}
+
+		if (documentCount == documentIds.length)
+		{
+			int capacity = documentIds.length * 2;
+			documentIds = Arrays.copyOf(documentIds, capacity);
+			documentFirst = Arrays.copyOf(documentFirst, capacity);
+			documentLast = Arrays.copyOf(documentLast, capacity);
+			documentSize = Arrays.copyOf(documentSize, capacity);
+			documentLines = Arrays.copyOf(documentLines, capacity);
+		}
+		int document = documentCount++;
+		documentIds[document] = documentId;
+		documentFirst[document] = -1;
+		documentLast[document] = -1;
+		documentSize[document] = 0;
+		documentLines[document] = 0;
+		documentNumbers.put(documentId, document);
+		return document;
+	}
+
+	private static int documentSlot(int hash, int capacity)
+	{
+		return (hash ^ (hash >>> 16)) & (capacity - 1);
+	}
+
+	private void rehash(int capacity)
+	{
+		table = new int[capacity];
+		tableMask = capacity - 1;
+		for (int entry = 0; entry < entryCount; entry++)
+		{
+			int slot = slot(entryKey[entry]);
+			while (table[slot] != 0)
+			{
+				slot = (slot + 1) & tableMask;
+			}
+			table[slot] = entry + 1;
+		}
+	}
+
+	private int slot(long key)
+	{
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & tableMask;
+	}
+
+	private static long key(int document, int startOffset)
+	{
+		return ((long) document << 32) | (startOffset & 0xFFFFFFFFL);
+	}
+}
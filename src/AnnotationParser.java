@@ -0,0 +1,184 @@
+
+/*
+ * This class validates annotation lines and parses them into Annotation objects.
+ * Each line is split once, and its offsets and types are parsed once, 
+ * so the evaluation does not need to read the line again.
+ * Parsers of predictions for a threshold sweep (see ThresholdSweep) also accept lines with an extra last column,
+ * the confidence of the prediction, which must be a finite number.
+ */
+public class AnnotationParser
+{
+	private final int taskNumber;
+	private final boolean confidenceColumn;
+	
+	public AnnotationParser(int taskNumber)
+	{
+		this(taskNumber, false);
+	}
+	
+	public AnnotationParser(int taskNumber, boolean confidenceColumn)
+	{
+		this.taskNumber = taskNumber;
+		this.confidenceColumn = confidenceColumn;
+	}
+	
+	public int getTaskNumber()
+	{
+		return taskNumber;
+	}
+	
+	public boolean hasConfidenceColumn()
+	{
+		return confidenceColumn;
+	}
+	
+	/*
+	 * This method returns the annotation of a line, or null if the line structure does not fit with the task
+	 */
+	public Annotation parse(String line)
+	{
+		String elements[] = line.split("\t");
+		if (taskNumber == 1)
+		{
+			return parseShortLongTaskLine(elements, line);
+		}
+		else
+		{
+			return parseAbbreviationTaskLine(elements, line);
+		}
+	}
+	
+	private AbbreviationAnnotation parseAbbreviationTaskLine(String[] elements, String line)
+	{
+		// first, check if the tabular file has 6 columns (or 7, with the confidence)
+		if (elements.length != 6 && !(confidenceColumn && elements.length == 7))
+		{
+			return null;
+		}
+		
+		// first, check if the element in the first column looks like the document ID
+		if (!isDocumentId(elements[0]))
+		{
+			return null;
+		}
+		
+		// then, check if the second and third columns contain numerical content
+		int start;
+		int end;
+		float confidence = Float.POSITIVE_INFINITY;
+		try
+		{
+			start = Integer.parseInt(elements[1]);
+			end = Integer.parseInt(elements[2]);
+			if (elements.length == 7)
+			{
+				confidence = parseConfidence(elements[6]);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		
+		// if we arrived here, everything was fine
+		return new AbbreviationAnnotation(elements[0], start, end, offsetText(elements[2]), eliminoAcentos(elements[3]), 
+				eliminoAcentos(elements[4]), eliminoAcentos(elements[5]), confidence, line);
+	}
+	
+	private RelationAnnotation parseShortLongTaskLine(String[] elements, String line)
+	{
+		// first, check if the tabular file has 9 columns (or 10, with the confidence)
+		if (elements.length != 9 && !(confidenceColumn && elements.length == 10))
+		{
+			return null;
+		}
+		
+		// first, check if the element in the first column looks like the document ID
+		if (!isDocumentId(elements[0]))
+		{
+			return null;
+		}
+		
+		// then, check if the third, fourth, eighth and ninth columns contain numerical content
+		int startA;
+		int startB;
+		int endB;
+		float confidence = Float.POSITIVE_INFINITY;
+		try
+		{
+			startA = Integer.parseInt(elements[2]);
+			startB = Integer.parseInt(elements[6]);
+			endB = Integer.parseInt(elements[7]);
+			if (elements.length == 10)
+			{
+				confidence = parseConfidence(elements[9]);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		
+		// finally, check if mention types (columns 2 and 7) and relation types (column 6) are correct
+		MentionType mentionAType = MentionType.parse(elements[1]);
+		MentionType mentionBType = MentionType.parse(elements[5]);
+		if (mentionAType == null || mentionBType == null)
+		{
+			return null;
+		}
+		RelationType relationType = RelationType.parse(elements[4]);
+		if (relationType == null)
+		{
+			return null;
+		}
+		
+		// if we arrived here, everything was fine
+		return new RelationAnnotation(elements[0], mentionAType, startA, eliminoAcentos(elements[3]), relationType, 
+				mentionBType, startB, offsetText(elements[6]), endB, offsetText(elements[7]), eliminoAcentos(elements[8]), confidence, line);
+	}
+	
+	/*
+	 * This method parses the confidence column of a prediction, throwing a NumberFormatException if it is not a finite number
+	 */
+	static float parseConfidence(String confidence)
+	{
+		float value = Float.parseFloat(confidence);
+		if (Float.isNaN(value) || Float.isInfinite(value))
+		{
+			throw new NumberFormatException("Confidence is not a finite number: " + confidence);
+		}
+		return value;
+	}
+	
+	/*
+	 * This method returns the text of an offset column which is already parsed, if it is not the plain number of its offset
+	 * (as "0454" or "+454"), or null if it is. Offsets compared by the evaluation are compared as they are written
+	 * in the files (see Annotation.sameOffset), as in previous versions of this script.
+	 */
+	static String offsetText(String column)
+	{
+		char first = column.charAt(0);
+		if ((first >= '1' && first <= '9') || column.equals("0"))
+		{
+			return null;
+		}
+		if (first == '-' && column.length() > 1 && column.charAt(1) >= '1' && column.charAt(1) <= '9')
+		{
+			return null;
+		}
+		return column;
+	}
+	
+	static boolean isDocumentId(String documentId)
+	{
+		return documentId.length() >= 24 && documentId.startsWith("S") && documentId.charAt(5) == '-' && documentId.charAt(23) == '-';
+	}
+	
+	/*
+	 * This method removes accents and any other non ASCII character from a text
+	 */
+	public static String eliminoAcentos(String text)
+	{
+		return AccentFolder.fold(text);
+	}
+}
@@ -0,0 +1,35 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * This interface reads the annotation lines of a gold standard or predictions file, one by one.
+ * Comment lines (starting with "#") are skipped.
+ * 		while (reader.nextLine())
+ * 		{
+ * 			Annotation annotation = reader.parse();		// null if the line structure does not fit with the task
+ * 			...
+ * 		}
+ */
+public interface AnnotationReader extends Closeable
+{
+	/*
+	 * This method moves to the next annotation line, returning false at the end of the file
+	 */
+	boolean nextLine() throws IOException;
+	
+	/*
+	 * This method returns the annotation of the current line, or null if the line structure does not fit with the task
+	 */
+	Annotation parse();
+	
+	/*
+	 * This method returns the number of the current line in the file, starting with 1 and counting comment lines
+	 */
+	int getLineNumber();
+	
+	/*
+	 * This method returns the text of the current line, used to display errors
+	 */
+	String getLine();
+}
@@ -1,21 +1,24 @@
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.text.Normalizer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /*
  * This script evaluates participants' prediction files, returning the Precision, Recall and F-measure.
  * The script also displays wrong predictions by default.
  * 
  * USAGE:
- * 		java -jar BARR2_Evaluator.jar <GOLD_ANNOTATIONS_FILE_PATH> <PREDICTIONS_FILE_PATH> <TASK_NUMBER> <STOP_WORDS_FILE> <OPTIONAL_EXTRA_OUTPUT_DETAILS>
+ * 		java -jar BARR2_Evaluator.jar <GOLD_ANNOTATIONS_FILE_PATH> <PREDICTIONS_FILE_PATH> <TASK_NUMBER> <STOP_WORDS_FILE> <OPTIONAL_EXTRA_OUTPUT_DETAILS> [OPTIONS]
  * 
  * GOLD_ANNOTATIONS_FILE_PATH: path to the gold standard. When evaluating the training set, participants should use annotations files
  * 							as gold standard when evaluating their predictions on the training set.
@@ -26,6 +29,68 @@ import java.util.Map;
  * STOP_WORDS_FILE: file which contains Spanish stop words, vital to evaluate the second task
  * OPTIONAL_EXTRA_OUTPUT_DETAILS: using this flag allows users to get extra information about their predictions, 
  * 									like which predictions are correct, and which were missed
+ * 
+ * Annotations and stop words files whose name ends with ".gz" are read as gzip-compressed files.
+ * All the wrong lines of an annotations file are reported (see ValidationReport), not only the first one.
+ * Files are checked in chunks by many threads (see ParallelAnnotationChecker) if --threads is greater than 1.
+ * 
+ * OPTIONS:
+ * 		--stream: score the predictions file line by line while it is read, instead of loading it whole in memory.
+ * 				  Predictions of the same document must be on consecutive lines.
+ * 		--threads N: number of threads used to check files and evaluate documents in parallel, 1 by default. Use 0 for one thread per processor.
+ * 		--batch: evaluate many submissions at once and display a ranking. PREDICTIONS_FILE_PATH is a directory with the
+ * 				 submissions, or a file with one submission path per line. Submissions are evaluated in parallel,
+ * 				 using --threads threads (one per processor by default).
+ * 		--write-snapshot FILE: after checking the gold standard, save it together with the stop words in a binary snapshot.
+ * 				 The snapshot can be used as GOLD_ANNOTATIONS_FILE_PATH in next runs, to skip checking the gold standard again
+ * 				 (STOP_WORDS_FILE is then ignored). Snapshots are loaded without reading their annotations until they are needed.
+ * 		--skip-snapshot-checksum: load the snapshot used as GOLD_ANNOTATIONS_FILE_PATH without checking the checksum of its
+ * 				 whole content first. A damaged snapshot can then give wrong results.
+ * 		--legacy-token-matching: in task 2, let a repeated predicted token match the same gold token many times,
+ * 				 as in previous versions of this script.
+ * 		--incremental STATE_FILE: keep the score of each document of the predictions file in STATE_FILE, and in next runs
+ * 				 evaluate again only the documents whose predictions changed. Results are the same as in a full evaluation,
+ * 				 but details (OPTIONAL_EXTRA_OUTPUT_DETAILS, partially correct predictions) are only displayed for those documents.
+ * 		--compare PREDICTIONS_FILE_PATH_B: compare PREDICTIONS_FILE_PATH with another predictions file with a paired bootstrap test
+ * 				 (see BootstrapTest), displaying confidence intervals of both results and the p-value of their difference.
+ * 				 Resamples are calculated using --threads threads (one per processor by default).
+ * 		--resamples N: number of resamples of the paired bootstrap test, 10000 by default.
+ * 		--seed N: seed of the random numbers of the paired bootstrap test, 1 by default.
+ * 		--slices: also display the results of each slice of the annotations (see Slices), computed in the same evaluation.
+ * 				 For task 1, annotations are grouped by relation type, mention A type and mention B type.
+ * 		--slice-metadata METADATA_FILE: also group annotations by ISSN, journal and year of their document, read from
+ * 				 a metadata file as clinical_cases.metadata.training_set.tsv (implies --slices).
+ * 				 It is required for task 2, which has no other slices.
+ * 				 Slices can not be used with --batch, --compare nor --incremental.
+ * 		--diagnostics FILE: write every correct, wrong, partially correct, missing and spurious prediction to FILE
+ * 				 (see DiagnosticsSink), as JSON lines if its name ends with ".jsonl", or as TSV otherwise.
+ * 				 The file is written by a background thread, and partially correct and missing predictions are no longer displayed.
+ * 				 Diagnostics can not be used with --batch nor --compare.
+ * 		--lenient: also match gold annotations and predictions by the overlap of their spans, one to one (see SpanMatcher),
+ * 				 and display how many are matched by start offset and by overlap side by side.
+ * 		--min-overlap RATIO[,PREDICTION_RATIO]: minimum overlap of a lenient match, as a fraction of the gold span length
+ * 				 and of the predicted span length (RATIO for both if only one is given). Any overlap by default (implies --lenient).
+ * 				 Lenient matching can not be used with --batch, --compare nor --incremental.
+ * 		--metrics: display the wall time, allocated bytes and lines read of each phase of the evaluation, and the latency
+ * 				 of scoring each document (see EvaluationMetrics).
+ * 		--metrics-json FILE: write the same metrics to a JSON file (implies --metrics, without displaying them).
+ * 				 Metrics can not be used with --batch nor --compare.
+ * 		--threshold-sweep CURVE_FILE: predictions may have an extra last column with their confidence. Write to CURVE_FILE the
+ * 				 precision, recall and F-Measure obtained keeping only the predictions with a confidence equal to or higher than
+ * 				 each threshold, for all the thresholds at once (see ThresholdSweep), and display the best threshold of each evaluation.
+ * 				 The threshold sweep can not be used with --batch, --compare nor --incremental.
+ * 		--folds K: also display the results of K folds of the documents, assigned by the hash of their ID (see Folds),
+ * 				 with their micro-average, macro-average and variance. All the folds are evaluated in the same evaluation.
+ * 		--fold-assignment FOLDS_FILE: the same, with the fold of each document read from FOLDS_FILE
+ * 				 (a document ID and a fold label per line, as "S1130-01082009000400014-1	test").
+ * 				 Folds can not be used with --batch, --compare, --stream nor --incremental.
+ * 		--verify-offsets TEXTS_DIRECTORY: also check that the spans of the gold annotations and predictions cover their texts
+ * 				 in the clinical cases of TEXTS_DIRECTORY (as training/txt, see OffsetVerifier), and display the wrong spans.
+ * 				 Wrong spans do not stop the evaluation. Offsets can not be verified with --batch, --compare, --stream nor --incremental.
+ * 		--watch: evaluate the predictions file again each time it changes, or each file of PREDICTIONS_FILE_PATH if it is a directory,
+ * 				 and display the results with their difference from the previous evaluation (see PredictionsWatcher).
+ * 				 The gold standard is loaded once, and the script runs until it is stopped. The predictions file may not exist yet.
+ * 				 Watching can only be used with --threads, --write-snapshot, --skip-snapshot-checksum and --legacy-token-matching.
  */
 
 public class BARR_Evaluator {
@@ -36,17 +101,49 @@ public class BARR_Evaluator {
 	private int taskNumber;
 	private String stopWordsFile;
 	private boolean extraDetails;
+	private boolean streaming;
+	private int threads;
+	private String snapshotFile;	// file to save the gold standard snapshot, if desired
+	private boolean verifySnapshot;	// check the checksum of the gold standard snapshot when loading it
+	private String stateFile;	// file with the document scores of the incremental evaluation, if desired
+	private boolean quiet;		// do not display progress messages nor partially correct predictions
+	private DiagnosticsSink diagnostics;	// sink of the diagnostic events of the evaluation, if desired
+	private EvaluationMetrics metrics;	// performance metrics of the evaluation, if desired
+	private DocumentStore texts;	// texts of the documents to verify the offsets of the annotations, if desired
+	private Folds folds;			// folds of the documents of a k-fold evaluation, if desired
+	private DocumentScoreVector documentScores;	// scores of each gold document, kept for the folds
+	private String error;		// first error found in the last checked file
 	
-	// These variables store mention and relation types for task 1
-	private Map<String, Integer> mentionTypes;
-	private Map<String, Integer> relationTypes;
+	// This variable validates and parses the annotation lines of the task
+	private AnnotationParser parser;
+	private AnnotationParser predictionsParser;	// the same parser, unless predictions have a confidence column
 	
 	// These variables store the gold annotations and predictions to evaluate between them
-	private Map<String, Map<Integer, String>> goldAnnotations;
-	private Map<String, Map<Integer, String>> predictions;
+	private AnnotationIndex goldAnnotations;
+	private AnnotationIndex predictions;
 	
-	// This variable stores the Spanish stop words
+	// These variables store the Spanish stop words, as a map and as a set to look up tokens without creating substrings
 	private Map<String, Integer> stopWordsMap;
+	private StopWordSet stopWords;
+	
+	// Token overlap calculation for task 2, one per thread
+	private boolean countRepeatedTokens;
+	private ThreadLocal<TokenOverlap> tokenOverlap;
+	
+	// Slices of the sliced evaluation, if desired, and their scores, one per thread (all of them are kept to add them later)
+	private Slices slices;
+	private List<SliceScores> threadSliceScores;
+	private ThreadLocal<SliceScores> sliceScores;
+	
+	// Span matching of the lenient evaluation, if desired, one per thread (all of them are kept to add their matches later)
+	private float[] minOverlap;		// minimum overlap with the gold span and with the predicted span
+	private List<SpanMatcher> threadSpanMatchers;
+	private ThreadLocal<SpanMatcher> spanMatcher;
+	
+	// Confidence threshold sweep
+	private String sweepFile;		// file to write the precision/recall curve, if desired
+	private List<ThresholdSweep> threadSweeps;
+	private ThreadLocal<ThresholdSweep> thresholdSweep;
 	
 	// These variables store the amount of correct, incorrect and missing predictions,
 	// the number of predictions given by the participant
@@ -71,14 +168,67 @@ public class BARR_Evaluator {
 		this.taskNumber = taskNumber;
 		this.stopWordsFile = stopWordsFile;
 		this.extraDetails = extraDetails;
+		this.threads = 1;
+		this.verifySnapshot = true;
 		
-		mentionTypes = new HashMap<String, Integer>();
-		relationTypes = new HashMap<String, Integer>();
+		parser = new AnnotationParser(taskNumber);
+		predictionsParser = parser;
 		
-		goldAnnotations = new HashMap<String, Map<Integer, String>>();
-		predictions = new HashMap<String, Map<Integer, String>>();
+		goldAnnotations = new AnnotationIndex();
+		predictions = new AnnotationIndex();
 		
 		stopWordsMap = new HashMap<String, Integer>();
+		stopWords = new StopWordSet(stopWordsMap.keySet());
+		tokenOverlap = new ThreadLocal<TokenOverlap>()
+		{
+			@Override
+			protected TokenOverlap initialValue()
+			{
+				return new TokenOverlap(stopWords, countRepeatedTokens);
+			}
+		};
+		threadSliceScores = new ArrayList<SliceScores>();
+		sliceScores = new ThreadLocal<SliceScores>()
+		{
+			@Override
+			protected SliceScores initialValue()
+			{
+				SliceScores scores = new SliceScores(slices);
+				synchronized (threadSliceScores)
+				{
+					threadSliceScores.add(scores);
+				}
+				return scores;
+			}
+		};
+		threadSpanMatchers = new ArrayList<SpanMatcher>();
+		spanMatcher = new ThreadLocal<SpanMatcher>()
+		{
+			@Override
+			protected SpanMatcher initialValue()
+			{
+				SpanMatcher matcher = new SpanMatcher(minOverlap[0], minOverlap[1]);
+				synchronized (threadSpanMatchers)
+				{
+					threadSpanMatchers.add(matcher);
+				}
+				return matcher;
+			}
+		};
+		threadSweeps = new ArrayList<ThresholdSweep>();
+		thresholdSweep = new ThreadLocal<ThresholdSweep>()
+		{
+			@Override
+			protected ThresholdSweep initialValue()
+			{
+				ThresholdSweep sweep = new ThresholdSweep();
+				synchronized (threadSweeps)
+				{
+					threadSweeps.add(sweep);
+				}
+				return sweep;
+			}
+		};
 		
 		correctPredictionsUltraStrict = 0;
 		correctPredictionsStrict = 0;
@@ -91,462 +241,1592 @@ public class BARR_Evaluator {
 		totalAnnotationsGS = 0;
 	}
 	
-	public static void main(String[] args) throws IOException 
+	/*
+	 * This constructor creates an evaluator for another predictions file, which shares the gold annotations
+	 * and stop words of an evaluator that already loaded them. Used to evaluate many submissions at once.
+	 */
+	private BARR_Evaluator(BARR_Evaluator goldEvaluator, String predictionsFile)
 	{
-		// Load arguments
-		String goldStandard = args[0];
-		String predictionsFile = args[1];
-		int taskNumber = Integer.parseInt(args[2]);
-		
-		// Check if task numbers are correct 
-		if (taskNumber < 1 || taskNumber > 2)
-		{
-			DisplayError("GeneralError");
-		}
-		
-		// Load stop words argument
-		String stopWordsFile = args[3];
-		
-		// Check if participant wants more information in the output
-		boolean extraDetails = false;
-		if (args.length == 5)
-		{
-			extraDetails = Boolean.parseBoolean(args[4]);
-		}		
-		
-		// Execute program
-		BARR_Evaluator evaluation = new BARR_Evaluator(goldStandard, predictionsFile, taskNumber, stopWordsFile, extraDetails);
-		evaluation.start();
+		this(goldEvaluator.goldStandard, predictionsFile, goldEvaluator.taskNumber, goldEvaluator.stopWordsFile, false);
+		this.quiet = true;
+		this.parser = goldEvaluator.parser;
+		this.predictionsParser = goldEvaluator.parser;
+		this.goldAnnotations = goldEvaluator.goldAnnotations;
+		this.stopWordsMap = goldEvaluator.stopWordsMap;
+		this.stopWords = goldEvaluator.stopWords;
+		this.countRepeatedTokens = goldEvaluator.countRepeatedTokens;
+		this.tokenOverlap = goldEvaluator.tokenOverlap;
+		this.totalAnnotationsGS = goldEvaluator.totalAnnotationsGS;
 	}
-
+	
 	/*
-	 * This method initializes all the methods for evaluation.
-	 * The evaluation begins with file controls, checking if the structure fits with the chosen task, 
-	 * 		for both gold standard file, and predictions files. 
-	 * Once both files passed the control, the script evaluates the predictions, displaying the 
-	 * 		erroneous predictions, together with the correct predictions and missed ones if desired by the user.
-	 * Finally, the script displays the precision, recall and F-Measure.
+	 * This method returns a new evaluator for the given predictions file, using the gold annotations and stop words
+	 * already loaded by this evaluator (see loadGoldStandard)
 	 */
-	public void start() throws IOException 
+	public BARR_Evaluator forPredictions(String predictionsFile)
 	{
-		printInitialInfo();
-		
-		// If we are evaluating detected abbreviations and their explicit definitions, we need to initialize the mention and relation types
-		if (taskNumber == 1)
-		{
-			initializeMentionRelationTypes();
-		}		
-		
-		// Check if gold annotation and prediction files are correct
-		boolean goldCorrect = checkAnnotations(goldStandard, true);
-		boolean predictionsCorrect = checkAnnotations(predictionsFile, false);
-		
-		if (goldCorrect && predictionsCorrect)
-		{
-			// Begin evaluation if files are correct
-			if (taskNumber == 2)
-			{
-				loadStopWords();	// Stop words are needed for a flexible evaluation of abbreviation definitions in task 2
-			}			
-			evaluate();
-			
-			// There are 3 evaluation methods for sub-track 2. The script displays all of them for this track.
-			// For task 1, only the default evaluation type is displayed.
-			printFinalResultsUltraStrict();
-			if (taskNumber == 2)
-			{
-				printFinalResultsStrict();
-				printFinalResultsFlexible();
-			}				
-		}		
-		else
-		{
-			// Display error messages if one of the file is incorrect
-			if (!goldCorrect)
-			{
-				DisplayError("GoldError");
-			}			
-			else if (!predictionsCorrect)
-			{
-				DisplayError("PredictionError");
-			}
-			else if (!goldCorrect && !predictionsCorrect)
-			{
-				DisplayError("FatalError");
-			}
-		}
+		return new BARR_Evaluator(this, predictionsFile);
 	}
 	
 	/*
-	 * This method just prints the input information for the participant
+	 * Enables the streaming mode: predictions are scored document by document while the file is read,
+	 * so only the gold annotations are kept in memory
 	 */
-	public void printInitialInfo()
+	public void setStreaming(boolean streaming)
 	{
-		System.out.println("\tGold Standard annotation file:\t" + goldStandard);
-		System.out.println("\tPredictions file:\t\t" + predictionsFile);
-		if (taskNumber == 1)
-		{
-			System.out.println("\tTask: 1 --> Abbreviation-definition (short-long forms) relations task.");
-		}
-		else
-		{
-			System.out.println("\tTask: 2 --> Abbreviation recognition task.");
-		}
-		System.out.println(); // empty line
+		this.streaming = streaming;
 	}
 	
 	/*
-	 * This method initializes the mention and relation types to evaluate relations between abbreviations and their explicit definitions 
+	 * Makes a repeated predicted token match the same gold token many times in task 2, 
+	 * as in previous versions of this script (see TokenOverlap)
 	 */
-	public void initializeMentionRelationTypes()
+	public void setCountRepeatedTokens(boolean countRepeatedTokens)
 	{
-		System.out.println("Initializing mention and relation types...");
-		
-		mentionTypes.put("SHORT_FORM", 1);
-		mentionTypes.put("LONG_FORM", 1);
-		mentionTypes.put("NESTED", 1);
-		
-		relationTypes.put("SHORT-LONG", 1);
-		relationTypes.put("SHORT-NESTED", 1);
-		relationTypes.put("NESTED-LONG", 1);
+		this.countRepeatedTokens = countRepeatedTokens;
 	}
 	
 	/*
-	 * This file checks if the gold annotations' or predictions file's structure fits with the task to evaluate.
-	 * If the 
+	 * Sets the file where the gold standard snapshot is written after checking the gold standard file
 	 */
-	public boolean checkAnnotations(String file, boolean isGold) throws IOException
+	public void setSnapshotFile(String snapshotFile)
 	{
-		if (isGold)
-		{
-			System.out.println("Checking Gold Standard annotations file ...");
-		}
-		else
-		{
-			System.out.println("Checking predictions file ...");
-		}
-		
-		boolean goldCorrect = true;
-		
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		String line = "";
-		int numLine = 0;
-		while ((line = reader.readLine()) != null)
+		this.snapshotFile = snapshotFile;
+	}
+	
+	/*
+	 * Sets if a gold standard snapshot is checked whole with its checksum when loading it (see GoldSnapshot.read), true by default
+	 */
+	public void setVerifySnapshot(boolean verifySnapshot)
+	{
+		this.verifySnapshot = verifySnapshot;
+	}
+	
+	/*
+	 * Enables the incremental evaluation: document scores are kept in the given file (see EvaluationState),
+	 * and only documents whose predictions changed since the last evaluation are evaluated again
+	 */
+	public void setStateFile(String stateFile)
+	{
+		this.stateFile = stateFile;
+	}
+	
+	/*
+	 * Enables the sliced evaluation: the results of each slice of the given slices are displayed after the final results
+	 */
+	public void setSlices(Slices slices)
+	{
+		this.slices = slices;
+	}
+	
+	/*
+	 * Enables the lenient evaluation: gold annotations and predictions are also matched by the overlap of their spans
+	 * (see SpanMatcher), with the given minimum overlap with the gold span and with the predicted span
+	 */
+	public void setLenientMatching(float minGoldOverlap, float minPredictionOverlap)
+	{
+		this.minOverlap = new float[] { minGoldOverlap, minPredictionOverlap };
+	}
+	
+	/*
+	 * Enables the confidence threshold sweep: predictions may have a confidence column, and the precision/recall curve
+	 * by confidence threshold (see ThresholdSweep) is written to the given file after the final results
+	 */
+	public void setThresholdSweep(String sweepFile)
+	{
+		this.sweepFile = sweepFile;
+		this.predictionsParser = new AnnotationParser(taskNumber, true);
+	}
+	
+	/*
+	 * Sets the sink where the diagnostic events of the evaluation are recorded, instead of displaying
+	 * partially correct and missing predictions
+	 */
+	public void setDiagnostics(DiagnosticsSink diagnostics)
+	{
+		this.diagnostics = diagnostics;
+	}
+	
+	/*
+	 * Enables the k-fold evaluation: the results of each of the given folds, and their averages, are displayed after the final results
+	 */
+	public void setFolds(Folds folds)
+	{
+		this.folds = folds;
+	}
+	
+	/*
+	 * Enables the verification of the offsets of the gold annotations and predictions against the texts of the documents
+	 */
+	public void setDocumentStore(DocumentStore texts)
+	{
+		this.texts = texts;
+	}
+	
+	/*
+	 * Enables the collection of performance metrics of the evaluation phases and of the scoring of each document
+	 */
+	public void setMetrics(EvaluationMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+	
+	/*
+	 * Sets the number of threads used to evaluate documents in parallel (1 by default)
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+	
+	public static void main(String[] args) throws IOException 
+	{
+		// Separate options ("--option") from positional arguments
+		List<String> arguments = new ArrayList<String>();
+		boolean streaming = false;
+		boolean batch = false;
+		boolean watch = false;
+		String snapshotFile = null;
+		boolean verifySnapshot = true;
+		String stateFile = null;
+		String comparedFile = null;
+		int resamples = BootstrapTest.DEFAULT_RESAMPLES;
+		long seed = BootstrapTest.DEFAULT_SEED;
+		boolean sliced = false;
+		String metadataFile = null;
+		String diagnosticsFile = null;
+		float[] minOverlap = null;
+		boolean printMetrics = false;
+		String metricsFile = null;
+		String textsDirectory = null;
+		String sweepFile = null;
+		int foldCount = 0;
+		String foldsFile = null;
+		boolean countRepeatedTokens = false;
+		int threads = -1;
+		try
 		{
-			numLine++;
-			if (!line.startsWith("#"))	// Avoid first line
-			{				
-				if (taskNumber == 1)
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--stream"))
 				{
-					boolean lineCorrect = checkShortLongTaskCorrectLine(line);
-					if (!lineCorrect)	// There is an error in the annotation's format, return false and end script
-					{
-						goldCorrect = false;
-						System.err.println("ERROR IN LINE " + numLine + " : " + line);
-						break;
-					}
-					else				// There is no error in the annotation's format, store the annotation
-					{
-						String documentID = line.split("\t")[0];
-						int startOffset = Integer.parseInt(line.split("\t")[2]);
-						if (isGold)
-						{							
-							Map<Integer, String> documentMap = new HashMap<Integer, String>();
-							if (goldAnnotations.containsKey(documentID))
-							{
-								documentMap = goldAnnotations.get(documentID);
-							}
-							documentMap.put(startOffset, line);
-							goldAnnotations.put(documentID, documentMap);
-							
-							// Increase the number of total annotations found in Gold Standard
-							totalAnnotationsGS++;
-						}
-						else
-						{
-							Map<Integer, String> documentMap = new HashMap<Integer, String>();
-							if (predictions.containsKey(documentID))
-							{
-								documentMap = predictions.get(documentID);
-							}
-							documentMap.put(startOffset, line);
-							predictions.put(documentID, documentMap);
-							
-							// Increase the number of total predictions made by the participant,
-							// this variable is increased only if the document ID is also present in the gold standard
-							if (goldAnnotations.containsKey(documentID))
-							{
-								totalPredictions++;
-							}							
-						}
-					}
+					streaming = true;
 				}
-				else if (taskNumber == 2)
-				{					
-					boolean lineCorrect = checkAbbreviationTaskCorrectLine(line);
-					if (!lineCorrect)	// There is an error in the annotation's format, return false and end script
-					{
-						goldCorrect = false;
-						System.err.println("ERROR IN LINE " + numLine + " : " + line);
-						break;
-					}
-					else				// There is no error in the annotation's format, store the annotation
+				else if (args[i].equals("--batch"))
+				{
+					batch = true;
+				}
+				else if (args[i].equals("--watch"))
+				{
+					watch = true;
+				}
+				else if (args[i].equals("--legacy-token-matching"))
+				{
+					countRepeatedTokens = true;
+				}
+				else if (args[i].equals("--write-snapshot") && i + 1 < args.length)
+				{
+					snapshotFile = args[++i];
+				}
+				else if (args[i].equals("--skip-snapshot-checksum"))
+				{
+					verifySnapshot = false;
+				}
+				else if (args[i].equals("--incremental") && i + 1 < args.length)
+				{
+					stateFile = args[++i];
+				}
+				else if (args[i].equals("--threads") && i + 1 < args.length)
+				{
+					threads = parseThreads(args[++i]);
+				}
+				else if (args[i].equals("--compare") && i + 1 < args.length)
+				{
+					comparedFile = args[++i];
+				}
+				else if (args[i].equals("--resamples") && i + 1 < args.length)
+				{
+					resamples = parseResamples(args[++i]);
+				}
+				else if (args[i].equals("--seed") && i + 1 < args.length)
+				{
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (args[i].equals("--diagnostics") && i + 1 < args.length)
+				{
+					diagnosticsFile = args[++i];
+				}
+				else if (args[i].equals("--lenient"))
+				{
+					if (minOverlap == null)
 					{
-						String documentID = line.split("\t")[0];
-						int startOffset = Integer.parseInt(line.split("\t")[1]);
-						if (isGold)
-						{							
-							Map<Integer, String> documentMap = new HashMap<Integer, String>();
-							if (goldAnnotations.containsKey(documentID))
-							{
-								documentMap = goldAnnotations.get(documentID);
-							}
-							documentMap.put(startOffset, line);
-							goldAnnotations.put(documentID, documentMap);
-							
-							// Increase the number of total annotations found in Gold Standard
-							totalAnnotationsGS++;
-						}
-						else
-						{
-							Map<Integer, String> documentMap = new HashMap<Integer, String>();
-							if (predictions.containsKey(documentID))
-							{
-								documentMap = predictions.get(documentID);
-							}
-							documentMap.put(startOffset, line);
-							predictions.put(documentID, documentMap);
-							
-							// Increase the number of total predictions made by the participant,
-							// this variable is increased only if the document ID is also present in the gold standard
-							if (goldAnnotations.containsKey(documentID))
-							{
-								totalPredictions++;
-							}
-						}
+						minOverlap = new float[2];
 					}
 				}
+				else if (args[i].equals("--min-overlap") && i + 1 < args.length)
+				{
+					minOverlap = parseMinOverlap(args[++i]);
+				}
+				else if (args[i].equals("--metrics"))
+				{
+					printMetrics = true;
+				}
+				else if (args[i].equals("--metrics-json") && i + 1 < args.length)
+				{
+					metricsFile = args[++i];
+				}
+				else if (args[i].equals("--folds") && i + 1 < args.length)
+				{
+					foldCount = parseFolds(args[++i]);
+				}
+				else if (args[i].equals("--fold-assignment") && i + 1 < args.length)
+				{
+					foldsFile = args[++i];
+				}
+				else if (args[i].equals("--threshold-sweep") && i + 1 < args.length)
+				{
+					sweepFile = args[++i];
+				}
+				else if (args[i].equals("--verify-offsets") && i + 1 < args.length)
+				{
+					textsDirectory = args[++i];
+				}
+				else if (args[i].equals("--slices"))
+				{
+					sliced = true;
+				}
+				else if (args[i].equals("--slice-metadata") && i + 1 < args.length)
+				{
+					sliced = true;
+					metadataFile = args[++i];
+				}
+				else if (args[i].startsWith("--"))
+				{
+					throw new NumberFormatException("Unknown option: " + args[i]);
+				}
+				else
+				{
+					arguments.add(args[i]);
+				}
 			}
 		}
-		reader.close();
+		catch (NumberFormatException e)
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if (arguments.size() < 4)
+		{
+			DisplayError("GeneralError");
+			return;
+		}
 		
-		return goldCorrect;
-	}
-	
-	public boolean checkAbbreviationTaskCorrectLine(String line)
-	{
-		// first, check if the tabular file has 6 columns 
-		String elements[] = line.split("\t");
-		if (elements.length != 6)
+		// Load arguments
+		String goldStandard = arguments.get(0);
+		String predictionsFile = arguments.get(1);
+		int taskNumber = 0;
+		try
 		{
-			return false;
+			taskNumber = Integer.parseInt(arguments.get(2));
+		}
+		catch (NumberFormatException e)
+		{
+		}
+		
+		// Check if task numbers are correct 
+		if (taskNumber < 1 || taskNumber > 2)
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		
+		// Load stop words argument
+		String stopWordsFile = arguments.get(3);
+		
+		// Check if participant wants more information in the output
+		boolean extraDetails = false;
+		if (arguments.size() == 5)
+		{
+			extraDetails = Boolean.parseBoolean(arguments.get(4));
+		}		
+		
+		// Slices are only calculated in a single evaluation of all the documents
+		if (sliced && (batch || comparedFile != null || stateFile != null))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		// Task 2 annotations only have the slices of their document, read from the metadata file
+		if (sliced && taskNumber == 2 && metadataFile == null)
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if (diagnosticsFile != null && (batch || comparedFile != null))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if (minOverlap != null && (batch || comparedFile != null || stateFile != null))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if ((printMetrics || metricsFile != null) && (batch || comparedFile != null))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if ((foldCount > 0 || foldsFile != null) && (batch || comparedFile != null || streaming || stateFile != null || (foldCount > 0 && foldsFile != null)))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if (sweepFile != null && (batch || comparedFile != null || stateFile != null))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if (textsDirectory != null && (batch || comparedFile != null || streaming || stateFile != null || !new File(textsDirectory).isDirectory()))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		if (watch && (batch || comparedFile != null || streaming || stateFile != null || sliced || diagnosticsFile != null || minOverlap != null
+				|| printMetrics || metricsFile != null || foldCount > 0 || foldsFile != null || sweepFile != null || textsDirectory != null
+				|| !PredictionsWatcher.canWatch(predictionsFile)))
+		{
+			DisplayError("GeneralError");
+			return;
+		}
+		
+		// By default, documents are evaluated in one thread, and submissions of a batch and resamples in one thread per processor
+		if (threads == -1)
+		{
+			threads = batch || comparedFile != null ? Runtime.getRuntime().availableProcessors() : 1;
+		}
+		
+		// Execute program
+		BARR_Evaluator evaluation = new BARR_Evaluator(goldStandard, predictionsFile, taskNumber, stopWordsFile, extraDetails);
+		evaluation.setStreaming(streaming);
+		evaluation.setThreads(threads);
+		evaluation.setSnapshotFile(snapshotFile);
+		evaluation.setVerifySnapshot(verifySnapshot);
+		evaluation.setStateFile(stateFile);
+		evaluation.setCountRepeatedTokens(countRepeatedTokens);
+		if (minOverlap != null)
+		{
+			evaluation.setLenientMatching(minOverlap[0], minOverlap[1]);
+		}
+		EvaluationMetrics metrics = null;
+		if (printMetrics || metricsFile != null)
+		{
+			metrics = new EvaluationMetrics();
+			evaluation.setMetrics(metrics);
+		}
+		if (sliced)
+		{
+			Slices slices = new Slices(taskNumber);
+			if (metadataFile != null)
+			{
+				EvaluationMetrics.Phase phase = metrics == null ? null : metrics.startPhase("read slice metadata");
+				if (!slices.readMetadata(metadataFile))
+				{
+					DisplayError("MetadataError");
+					return;
+				}
+				if (metrics != null)
+				{
+					metrics.endPhase(phase, 0, new File(metadataFile).length());
+				}
+			}
+			evaluation.setSlices(slices);
+		}
+		if (foldCount > 0)
+		{
+			evaluation.setFolds(new Folds(foldCount));
+		}
+		else if (foldsFile != null)
+		{
+			Folds folds = new Folds();
+			if (!folds.readAssignment(foldsFile))
+			{
+				DisplayError("FoldError");
+				return;
+			}
+			evaluation.setFolds(folds);
+		}
+		if (sweepFile != null)
+		{
+			evaluation.setThresholdSweep(sweepFile);
+		}
+		if (textsDirectory != null)
+		{
+			evaluation.setDocumentStore(new DocumentStore(textsDirectory));
+		}
+		if (diagnosticsFile != null)
+		{
+			evaluation.setDiagnostics(new DiagnosticsSink(diagnosticsFile));
+		}
+		if (batch)
+		{
+			evaluation.startBatch();
+		}
+		else if (watch)
+		{
+			evaluation.startWatch();
+		}
+		else if (comparedFile != null)
+		{
+			evaluation.startComparison(comparedFile, resamples, seed);
+		}
+		else
+		{
+			evaluation.start();
+			if (metricsFile != null)
+			{
+				metrics.writeJson(metricsFile);
+				System.out.println("Written metrics to " + metricsFile);
+			}
+			else if (metrics != null)
+			{
+				metrics.print(System.out);
+			}
+		}
+	}
+
+	/*
+	 * These methods read the values of the options, throwing a NumberFormatException if they are not valid.
+	 * The number of threads of the "--threads" option can be 0, which means one thread per processor.
+	 */
+	private static int parseThreads(String value)
+	{
+		int threads = Integer.parseInt(value);
+		if (threads < 0)
+		{
+			throw new NumberFormatException("Negative number of threads: " + value);
+		}
+		else if (threads == 0)
+		{
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		return threads;
+	}
+	
+	private static int parseFolds(String value)
+	{
+		int folds = Integer.parseInt(value);
+		if (folds < 1)
+		{
+			throw new NumberFormatException("Number of folds lower than 1: " + value);
+		}
+		return folds;
+	}
+	
+	private static int parseResamples(String value)
+	{
+		int resamples = Integer.parseInt(value);
+		if (resamples < 1)
+		{
+			throw new NumberFormatException("Number of resamples lower than 1: " + value);
+		}
+		return resamples;
+	}
+	
+	/*
+	 * The minimum overlaps of the "--min-overlap" option are one ratio for the gold and predicted spans,
+	 * or two ratios separated by a comma. Ratios must be between 0 and 1.
+	 */
+	private static float[] parseMinOverlap(String value)
+	{
+		float[] minOverlap = new float[2];
+		String[] ratios = value.split(",");
+		if (ratios.length > 2)
+		{
+			throw new NumberFormatException("More than 2 overlap ratios: " + value);
+		}
+		minOverlap[0] = Float.parseFloat(ratios[0]);
+		minOverlap[1] = ratios.length == 2 ? Float.parseFloat(ratios[1]) : minOverlap[0];
+		for (float ratio : minOverlap)
+		{
+			if (!(ratio >= 0 && ratio <= 1))
+			{
+				throw new NumberFormatException("Overlap ratio out of range: " + value);
+			}
+		}
+		return minOverlap;
+	}
+	
+	/*
+	 * This method initializes all the methods for evaluation.
+	 * The evaluation begins with file controls, checking if the structure fits with the chosen task, 
+	 * 		for both gold standard file, and predictions files. 
+	 * Once both files passed the control, the script evaluates the predictions, displaying the 
+	 * 		erroneous predictions, together with the correct predictions and missed ones if desired by the user.
+	 * Finally, the script displays the precision, recall and F-Measure.
+	 */
+	public void start() throws IOException 
+	{
+		printInitialInfo();
+		
+		// Mention and relation types are enums now (see MentionType and RelationType), but the message is kept for task 1,
+		// so the output does not change
+		if (taskNumber == 1)
+		{
+			System.out.println("Initializing mention and relation types...");
+		}
+		
+		// Check if gold annotation and prediction files are correct
+		boolean goldCorrect = loadGoldStandard();
+		if (goldCorrect && slices != null)
+		{
+			EvaluationMetrics.Phase phase = startPhase("prepare slices");
+			slices.prepareGold(goldAnnotations);
+			endPhase(phase, 0, 0);
+		}
+		if (goldCorrect && folds != null)
+		{
+			folds.prepareGold(goldAnnotations);
+		}
+		boolean predictionsCorrect;
+		if (streaming)
+		{
+			// In streaming mode predictions are checked and evaluated in the same pass
+			predictionsCorrect = false;
+			if (goldCorrect)
+			{
+				predictionsCorrect = evaluateStreaming();
+			}
+		}
+		else if (stateFile != null)
+		{
+			// In incremental mode only the lines of changed documents are checked and evaluated
+			predictionsCorrect = false;
+			if (goldCorrect)
+			{
+				EvaluationMetrics.Phase phase = startPhase("check and evaluate incremental");
+				predictionsCorrect = evaluateIncremental();
+				endPhase(phase, 0, new File(predictionsFile).length());
+			}
+		}
+		else
+		{
+			predictionsCorrect = checkAnnotations(predictionsFile, false);
+		}
+		
+		if (goldCorrect && predictionsCorrect)
+		{
+			// Begin evaluation if files are correct
+			if (!streaming && stateFile == null)
+			{
+				evaluate();
+			}
+			
+			// All the diagnostic events are recorded, wait until they are written
+			if (diagnostics != null)
+			{
+				EvaluationMetrics.Phase phase = startPhase("write diagnostics");
+				long events = diagnostics.finish();
+				endPhase(phase, 0, 0);
+				System.out.println("Written " + events + " diagnostic events to " + diagnostics.getFile());
+			}
+			
+			// There are 3 evaluation methods for sub-track 2. The script displays all of them for this track.
+			// For task 1, only the default evaluation type is displayed.
+			printFinalResultsUltraStrict();
+			if (taskNumber == 2)
+			{
+				printFinalResultsStrict();
+				printFinalResultsFlexible();
+			}				
+			if (minOverlap != null)
+			{
+				printMatchingResults();
+			}
+			if (slices != null)
+			{
+				printSlicedResults();
+			}
+			if (folds != null)
+			{
+				printFoldResults();
+			}
+			if (sweepFile != null)
+			{
+				printThresholdSweep();
+			}
+			if (texts != null)
+			{
+				verifyOffsets();
+			}
+		}		
+		else
+		{
+			if (diagnostics != null)
+			{
+				diagnostics.close();
+			}
+			
+			// Display error messages if one of the file is incorrect
+			if (!goldCorrect)
+			{
+				DisplayError("GoldError");
+			}			
+			else if (!predictionsCorrect)
+			{
+				DisplayError("PredictionError");
+			}
+			else if (!goldCorrect && !predictionsCorrect)
+			{
+				DisplayError("FatalError");
+			}
+		}
+	}
+	
+	/*
+	 * These methods start and end a phase of the performance metrics, if they are collected
+	 */
+	private EvaluationMetrics.Phase startPhase(String name)
+	{
+		return metrics == null ? null : metrics.startPhase(name);
+	}
+	
+	private void endPhase(EvaluationMetrics.Phase phase, long lines, long bytes)
+	{
+		if (metrics != null)
+		{
+			metrics.endPhase(phase, lines, bytes);
+		}
+	}
+	
+	/*
+	 * This method evaluates many submissions against the gold standard, loading the gold annotations and stop words once.
+	 * The predictions file argument is a directory with the submissions, or a file which lists one submission path per line.
+	 * Submissions are evaluated in parallel, and the script displays a ranking with the results of all of them.
+	 */
+	public void startBatch() throws IOException
+	{
+		printInitialInfo();
+		
+		if (!loadGoldStandard())
+		{
+			DisplayError("GoldError");
+			return;
+		}
+		
+		BatchEvaluator batch = new BatchEvaluator(this, threads);
+		batch.start(BatchEvaluator.listSubmissions(predictionsFile));
+	}
+	
+	/*
+	 * This method evaluates the predictions file, or the predictions files of a directory, each time they change,
+	 * loading the gold annotations and stop words once (see PredictionsWatcher). It runs until the script is stopped.
+	 */
+	public void startWatch() throws IOException
+	{
+		printInitialInfo();
+		
+		if (!loadGoldStandard())
+		{
+			DisplayError("GoldError");
+			return;
+		}
+		
+		PredictionsWatcher watcher = new PredictionsWatcher(this, predictionsFile, threads);
+		watcher.start();
+	}
+	
+	/*
+	 * This method compares the predictions file with another one, loading the gold annotations and stop words once.
+	 * Both files are evaluated document by document, and the script displays the results of a paired bootstrap test
+	 * (see BootstrapTest) with the given number of resamples.
+	 */
+	public void startComparison(String comparedFile, int resamples, long seed) throws IOException
+	{
+		printInitialInfo();
+		
+		if (!loadGoldStandard())
+		{
+			DisplayError("GoldError");
+			return;
+		}
+		
+		BootstrapTest test = new BootstrapTest(this, resamples, seed, threads);
+		if (!test.start(predictionsFile, comparedFile))
+		{
+			DisplayError("PredictionError");
+		}
+	}
+	
+	/*
+	 * This method checks and loads the gold annotations, and the stop words needed to evaluate task 2.
+	 * If the gold standard is a snapshot (see GoldSnapshot), both are read from it without checking them again.
+	 */
+	public boolean loadGoldStandard() throws IOException
+	{
+		if (GoldSnapshot.isSnapshot(goldStandard))
+		{
+			System.out.println("Loading Gold Standard snapshot ...");
+			EvaluationMetrics.Phase phase = startPhase("load gold snapshot");
+			try
+			{
+				// Gold annotations are created from the snapshot when they are needed, with their tokens already prepared
+				totalAnnotationsGS = GoldSnapshot.read(goldStandard, taskNumber, goldAnnotations, stopWordsMap, verifySnapshot);
+				stopWords = new StopWordSet(stopWordsMap.keySet());
+			}
+			catch (IOException e)
+			{
+				System.err.println("ERROR IN GOLD STANDARD SNAPSHOT " + goldStandard + " : " + e.getMessage());
+				return false;
+			}
+			endPhase(phase, 0, verifySnapshot ? new File(goldStandard).length() : 0);
+			return true;
+		}
+		
+		boolean goldCorrect = checkAnnotations(goldStandard, true);
+		if (goldCorrect && taskNumber == 2)
+		{
+			loadStopWords();	// Stop words are needed for a flexible evaluation of abbreviation definitions in task 2
+			prepareGoldTokens();
+		}
+		
+		// Save the checked gold standard, so next runs can load it faster
+		if (goldCorrect && snapshotFile != null)
+		{
+			System.out.println("Writing Gold Standard snapshot " + snapshotFile + " ...");
+			EvaluationMetrics.Phase phase = startPhase("write snapshot");
+			GoldSnapshot.write(snapshotFile, taskNumber, goldAnnotations, totalAnnotationsGS, stopWordsMap);
+			endPhase(phase, 0, 0);
+		}
+		return goldCorrect;
+	}
+	
+	/*
+	 * This method prepares the tokens of the gold definitions for task 2, without stop words,
+	 * so only the predicted definitions are tokenized during the evaluation
+	 */
+	private void prepareGoldTokens()
+	{
+		if (taskNumber != 2)
+		{
+			return;
+		}
+		EvaluationMetrics.Phase phase = startPhase("prepare gold tokens");
+		for (int entry = 0; entry < goldAnnotations.size(); entry++)
+		{
+			((AbbreviationAnnotation) goldAnnotations.annotation(entry)).prepareGoldTokens(stopWords);
+		}
+		endPhase(phase, 0, 0);
+	}
+	
+	/*
+	 * This method checks, loads and evaluates the predictions file of an evaluator created with forPredictions.
+	 * Returns the results, or null if the predictions file is not correct.
+	 */
+	public EvaluationResult evaluateSubmission() throws IOException
+	{
+		if (!checkAnnotations(predictionsFile, false))
+		{
+			return null;
+		}
+		evaluate();
+		return getResult();
+	}
+	
+	/*
+	 * This method checks, loads and evaluates the predictions file of an evaluator created with forPredictions,
+	 * keeping the score of each gold standard document (see DocumentScoreVector). Predictions of documents
+	 * which are not in the gold standard are not kept, since they are not counted in the results either.
+	 * Returns the scores, or null if the predictions file is not correct.
+	 */
+	public DocumentScoreVector evaluateDocuments() throws IOException
+	{
+		if (!checkAnnotations(predictionsFile, false))
+		{
+			return null;
+		}
+		
+		DocumentScore[] scores = scoreDocuments();
+		for (int predictionDocument = 0; predictionDocument < scores.length; predictionDocument++)
+		{
+			addDocumentScore(scores[predictionDocument]);
+		}
+		return documentScoreVector(scores);
+	}
+	
+	/*
+	 * This method checks and evaluates predictions read from the given reader, with an evaluator created with forPredictions.
+	 * In streaming mode, predictions of the same document must be on consecutive lines.
+	 * Returns the results, or null if the predictions are not correct (see getError).
+	 */
+	public EvaluationResult evaluateSubmission(BufferedReader reader) throws IOException
+	{
+		if (streaming)
+		{
+			if (!evaluateStreaming(new LineAnnotationReader(reader, parser)))
+			{
+				return null;
+			}
+		}
+		else
+		{
+			if (!checkAnnotations(new LineAnnotationReader(reader, parser), predictionsFile, false))
+			{
+				return null;
+			}
+			evaluate();
+		}
+		return getResult();
+	}
+	
+	/*
+	 * This method returns the first error found in the last checked file, or null if there was no error
+	 */
+	public String getError()
+	{
+		return error;
+	}
+	
+	public int getTaskNumber()
+	{
+		return taskNumber;
+	}
+	
+	/*
+	 * This method returns the results of the evaluation
+	 */
+	public EvaluationResult getResult()
+	{
+		DocumentScore score = new DocumentScore(correctPredictionsUltraStrict, correctPredictionsStrict, correctPredictionsFlexible, 
+				missingPredictions, wrongPredictionsUltraStrict, wrongPredictionsStrict, wrongPredictionsFlexible);
+		return new EvaluationResult(score, totalPredictions, totalAnnotationsGS);
+	}
+	
+	/*
+	 * This method just prints the input information for the participant
+	 */
+	public void printInitialInfo()
+	{
+		System.out.println("\tGold Standard annotation file:\t" + goldStandard);
+		System.out.println("\tPredictions file:\t\t" + predictionsFile);
+		if (taskNumber == 1)
+		{
+			System.out.println("\tTask: 1 --> Abbreviation-definition (short-long forms) relations task.");
+		}
+		else
+		{
+			System.out.println("\tTask: 2 --> Abbreviation recognition task.");
+		}
+		System.out.println(); // empty line
+	}
+	
+	/*
+	 * This file checks if the gold annotations' or predictions file's structure fits with the task to evaluate.
+	 * All the lines are checked, and all the errors are displayed (up to ValidationReport.MAX_REPORTED_ERRORS) before failing.
+	 * With more than one thread, the file is checked and parsed in parallel chunks (see ParallelAnnotationChecker),
+	 * and the annotations are loaded afterwards in the order of the file.
+	 */
+	public boolean checkAnnotations(String file, boolean isGold) throws IOException
+	{
+		EvaluationMetrics.Phase phase = startPhase(isGold ? "check gold" : "check predictions");
+		if (threads > 1 && MappedAnnotationReader.supports(Charset.defaultCharset()) && !BackgroundGzipInputStream.isCompressed(file))
+		{
+			printCheckingMessage(isGold);
+			ParallelAnnotationChecker checker = new ParallelAnnotationChecker(file, isGold ? parser : predictionsParser, threads);
+			ValidationReport report = checker.check();
+			if (!report.hasErrors())
+			{
+				for (List<Annotation> chunk : checker.getAnnotations())
+				{
+					for (Annotation annotation : chunk)
+					{
+						loadAnnotation(annotation, isGold);
+					}
+				}
+			}
+			endPhase(phase, checker.getLines(), new File(file).length());
+			return reportErrors(report, file);
+		}
+		
+		AnnotationReader reader = openAnnotations(file, isGold ? parser : predictionsParser);
+		try
+		{
+			return checkAnnotations(reader, file, isGold);
+		}
+		finally
+		{
+			reader.close();
+			endPhase(phase, reader.getLineNumber(), new File(file).length());
+		}
+	}
+	
+	private boolean checkAnnotations(AnnotationReader reader, String file, boolean isGold) throws IOException
+	{
+		printCheckingMessage(isGold);
+		
+		ValidationReport report = new ValidationReport();
+		while (reader.nextLine())	// Comment lines are skipped by the reader
+		{
+			Annotation annotation = reader.parse();
+			if (annotation == null)	// There is an error in the annotation's format, keep checking the next lines
+			{
+				report.add(reader.getLineNumber(), reader.getLine());
+			}
+			else if (!report.hasErrors())	// There is no error in the annotation's format, store the annotation
+			{
+				loadAnnotation(annotation, isGold);
+			}
+		}
+		
+		return reportErrors(report, file);
+	}
+	
+	private void printCheckingMessage(boolean isGold)
+	{
+		if (isGold)
+		{
+			System.out.println("Checking Gold Standard annotations file ...");
+		}
+		else if (!quiet)
+		{
+			System.out.println("Checking predictions file ...");
+		}
+	}
+	
+	/*
+	 * This method stores a checked annotation of the gold standard or the predictions
+	 */
+	private void loadAnnotation(Annotation annotation, boolean isGold)
+	{
+		if (isGold)
+		{
+			goldAnnotations.put(annotation);
+			
+			// Increase the number of total annotations found in Gold Standard
+			totalAnnotationsGS++;
+		}
+		else
+		{
+			predictions.put(annotation);
+			
+			// Increase the number of total predictions made by the participant,
+			// this variable is increased only if the document ID is also present in the gold standard
+			if (goldAnnotations.containsDocument(annotation.getDocumentId()))
+			{
+				totalPredictions++;
+			}
+		}
+	}
+	
+	/*
+	 * This method displays the errors of a checked file, keeping the first one (see getError).
+	 * Returns true if there are no errors.
+	 */
+	private boolean reportErrors(ValidationReport report, String file)
+	{
+		if (!report.hasErrors())
+		{
+			return true;
+		}
+		error = report.getFirstError(quiet ? file : null);
+		report.print(System.err, quiet ? file : null);
+		return false;
+	}
+	
+	/*
+	 * This method opens an annotations file. Files are read through memory-mapped windows (see MappedAnnotationReader),
+	 * unless they are in a charset not supported by it. Gzip-compressed files are decompressed in a background thread
+	 * (see BackgroundGzipInputStream) while their lines are read.
+	 */
+	private AnnotationReader openAnnotations(String file, AnnotationParser parser) throws IOException
+	{
+		if (!MappedAnnotationReader.supports(Charset.defaultCharset()))
+		{
+			return new LineAnnotationReader(BackgroundGzipInputStream.openReader(file), parser);
+		}
+		if (BackgroundGzipInputStream.isCompressed(file))
+		{
+			return new MappedAnnotationReader(new BackgroundGzipInputStream(file), parser);
+		}
+		return new MappedAnnotationReader(file, parser);
+	}
+	
+	/*
+	 * These methods check if a line fits with the structure of task 2 and task 1 respectively
+	 */
+	public boolean checkAbbreviationTaskCorrectLine(String line)
+	{
+		return new AnnotationParser(2).parse(line) != null;
+	}
+	
+	public boolean checkShortLongTaskCorrectLine(String line)
+	{
+		return new AnnotationParser(1).parse(line) != null;
+	}
+	
+	/*
+	 * This method loads the stop words. These will be used later to evaluate the predicted definition for recognized abbreviations.
+	 * Stop words file format must have just one stop word per line. Use "#" for comments
+	 */
+	public void loadStopWords() throws IOException
+	{
+		EvaluationMetrics.Phase phase = startPhase("load stop words");
+		BufferedReader reader = BackgroundGzipInputStream.openReader(stopWordsFile);
+		String line = "";
+		int numLine = 0;
+		while ((line = reader.readLine()) != null)
+		{
+			numLine++;
+			if (!line.startsWith("#")) // ignore comments
+			{
+				stopWordsMap.put(line, 1);
+			}
+		}
+		reader.close();
+		stopWords = new StopWordSet(stopWordsMap.keySet());
+		endPhase(phase, numLine, new File(stopWordsFile).length());
+	}
+	
+	/*
+	 * This method evaluates participants' predictions against gold annotations
+	 */
+	public void evaluate()
+	{
+		if (!quiet)
+		{
+			System.out.println("Evaluating predictions against the Gold Standard...");
+		}
+		
+		// Document scores are added in document order, to get the same results with any number of threads.
+		EvaluationMetrics.Phase phase = startPhase("evaluate");
+		DocumentScore[] scores = scoreDocuments();
+		for (int predictionDocument = 0; predictionDocument < scores.length; predictionDocument++)
+		{
+			addDocumentScore(scores[predictionDocument]);
+		}
+		if (folds != null)
+		{
+			documentScores = documentScoreVector(scores);
+		}
+		endPhase(phase, 0, 0);
+	}
+	
+	/*
+	 * This method returns the scores of the predictions of each gold document, with the number of its gold annotations
+	 */
+	private DocumentScoreVector documentScoreVector(DocumentScore[] scores)
+	{
+		DocumentScoreVector documentScores = new DocumentScoreVector(goldAnnotations.documentCount());
+		for (int goldDocument = 0; goldDocument < goldAnnotations.documentCount(); goldDocument++)
+		{
+			documentScores.setAnnotationsGS(goldDocument, goldAnnotations.documentLines(goldDocument));
+		}
+		for (int predictionDocument = 0; predictionDocument < scores.length; predictionDocument++)
+		{
+			int goldDocument = goldAnnotations.documentNumber(predictions.documentId(predictionDocument));
+			if (goldDocument != -1)
+			{
+				documentScores.setScore(goldDocument, scores[predictionDocument], predictions.documentLines(predictionDocument));
+			}
+		}
+		return documentScores;
+	}
+	
+	/*
+	 * This method evaluates all the documents of the predictions, returning their scores in document order.
+	 * Documents are independent, so they can be evaluated in parallel.
+	 */
+	private DocumentScore[] scoreDocuments()
+	{
+		DocumentScore[] scores = new DocumentScore[predictions.documentCount()];
+		if (threads > 1)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				pool.invoke(new DocumentScoringTask(scores, 0, scores.length));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else
+		{
+			for (int predictionDocument = 0; predictionDocument < scores.length; predictionDocument++)
+			{
+				scores[predictionDocument] = evaluatePredictionDocument(predictionDocument);
+			}
+		}
+		return scores;
+	}
+	
+	/*
+	 * This method evaluates one document of the predictions file
+	 */
+	private DocumentScore evaluatePredictionDocument(int predictionDocument)
+	{
+		String documentID = predictions.documentId(predictionDocument);
+		int goldDocument = goldAnnotations.documentNumber(documentID);
+		
+		// If gold annotations do not contain the document to evaluate, throw an error message and check next document
+		if (goldDocument == -1)
+		{
+	//		System.err.println("Error: document ID " + documentID + " does not exist in Gold Standard. Please check your predictions file.");
+			return DocumentScore.EMPTY;
+		}
+		else	// Document exists in gold annotations, check predictions
+		{
+			return evaluateDocument(predictions, predictionDocument, goldDocument);
+		}
+	}
+	
+	/*
+	 * This method checks and evaluates the predictions file in a single pass, without storing it.
+	 * Lines are grouped by document ID, and each document is evaluated as soon as its last line is read.
+	 * Returns false if a line has a wrong format, or if the lines of a document are not consecutive.
+	 */
+	public boolean evaluateStreaming() throws IOException
+	{
+		EvaluationMetrics.Phase phase = startPhase("check and evaluate stream");
+		AnnotationReader reader = openAnnotations(predictionsFile, predictionsParser);
+		try
+		{
+			return evaluateStreaming(reader);
+		}
+		finally
+		{
+			reader.close();
+			endPhase(phase, reader.getLineNumber(), new File(predictionsFile).length());
+		}
+	}
+	
+	private boolean evaluateStreaming(AnnotationReader reader) throws IOException
+	{
+		if (!quiet)
+		{
+			System.out.println("Checking and evaluating predictions file as a stream ...");
+		}
+		
+		// Documents of the gold standard already evaluated, used to detect non consecutive documents
+		Set<String> evaluatedDocuments = new HashSet<String>();
+		
+		String currentDocumentID = null;
+		AnnotationIndex documentPredictions = new AnnotationIndex();	// predictions of the current document only
+		
+		// After a format error, the next lines are only checked, to display all the errors
+		ValidationReport report = new ValidationReport();
+		while (reader.nextLine())	// Comment lines are skipped by the reader
+		{
+			Annotation annotation = reader.parse();
+			if (annotation == null)	// There is an error in the annotation's format, keep checking the next lines
+			{
+				report.add(reader.getLineNumber(), reader.getLine());
+				continue;
+			}
+			if (report.hasErrors())
+			{
+				continue;
+			}
+			String documentID = annotation.getDocumentId();
+			
+			if (!documentID.equals(currentDocumentID))
+			{
+				// The previous document has no more lines, evaluate it
+				if (currentDocumentID != null && goldAnnotations.containsDocument(currentDocumentID))
+				{
+					addDocumentScore(evaluateDocument(documentPredictions, 0, goldAnnotations.documentNumber(currentDocumentID)));
+					evaluatedDocuments.add(currentDocumentID);
+				}
+				if (evaluatedDocuments.contains(documentID))
+				{
+					error = "ERROR IN LINE " + reader.getLineNumber() + (quiet ? " OF " + predictionsFile : "") + " : predictions for document " + documentID 
+							+ " are not in consecutive lines. Sort the predictions file or evaluate it without --stream.";
+					System.err.println(error);
+					return false;
+				}
+				currentDocumentID = documentID;
+				documentPredictions.clear();
+			}
+			
+			documentPredictions.put(annotation);
+			
+			// Increase the number of total predictions made by the participant,
+			// this variable is increased only if the document ID is also present in the gold standard
+			if (goldAnnotations.containsDocument(documentID))
+			{
+				totalPredictions++;
+			}
+		}
+		
+		if (!reportErrors(report, predictionsFile))
+		{
+			return false;
+		}
+		
+		// Evaluate the last document of the file
+		if (currentDocumentID != null && goldAnnotations.containsDocument(currentDocumentID))
+		{
+			addDocumentScore(evaluateDocument(documentPredictions, 0, goldAnnotations.documentNumber(currentDocumentID)));
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * This method evaluates the predictions file incrementally, using the scores saved in the state file by the previous run.
+	 * A first pass hashes the lines of each document. A second pass checks and loads only the lines of the documents
+	 * whose hash changed, which are evaluated again. The scores of all documents are then added in the order of the file,
+	 * as in a full evaluation, and saved for the next run.
+	 * Returns false if a line of a changed document has a wrong format.
+	 */
+	public boolean evaluateIncremental() throws IOException
+	{
+		if (!quiet)
+		{
+			System.out.println("Checking and evaluating changed documents of predictions file ...");
+		}
+		
+		String key = stateKey();
+		EvaluationState previousState;
+		try
+		{
+			previousState = EvaluationState.read(stateFile, key);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Ignoring evaluation state: " + e.getMessage());
+			previousState = new EvaluationState(key);
+		}
+		
+		// First pass: hash and count the lines of each document, in order of appearance
+		Map<String, long[]> documentLines = new LinkedHashMap<String, long[]>();	// document ID -> {hash, number of lines}
+		BufferedReader reader = BackgroundGzipInputStream.openReader(predictionsFile);
+		String line = "";
+		while ((line = reader.readLine()) != null)
+		{
+			if (line.startsWith("#"))	// Avoid first line
+			{
+				continue;
+			}
+			String documentID = documentId(line);
+			long[] hashAndLines = documentLines.get(documentID);
+			if (hashAndLines == null)
+			{
+				hashAndLines = new long[] { EvaluationState.INITIAL_HASH, 0 };
+				documentLines.put(documentID, hashAndLines);
+			}
+			hashAndLines[0] = EvaluationState.hash(hashAndLines[0], line);
+			hashAndLines[1]++;
+		}
+		reader.close();
+		
+		Set<String> changedDocuments = new HashSet<String>();
+		for (Map.Entry<String, long[]> document : documentLines.entrySet())
+		{
+			if (!previousState.contains(document.getKey(), document.getValue()[0]))
+			{
+				changedDocuments.add(document.getKey());
+			}
+		}
+		
+		// Second pass: check and load the lines of changed documents, checking all of them before failing
+		if (!changedDocuments.isEmpty())
+		{
+			ValidationReport report = new ValidationReport();
+			reader = BackgroundGzipInputStream.openReader(predictionsFile);
+			int numLine = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				numLine++;
+				if (line.startsWith("#") || !changedDocuments.contains(documentId(line)))
+				{
+					continue;
+				}
+				Annotation annotation = parser.parse(line);
+				if (annotation == null)	// There is an error in the annotation's format, keep checking the next lines
+				{
+					report.add(numLine, line);
+				}
+				else if (!report.hasErrors())
+				{
+					predictions.put(annotation);
+				}
+			}
+			reader.close();
+			if (!reportErrors(report, predictionsFile))
+			{
+				return false;
+			}
+		}
+		DocumentScore[] scores = scoreDocuments();
+		
+		// Add the scores in the order of the file, taking them from the previous state for unchanged documents
+		EvaluationState state = new EvaluationState(key);
+		for (Map.Entry<String, long[]> document : documentLines.entrySet())
+		{
+			String documentID = document.getKey();
+			DocumentScore score;
+			int documentPredictions;
+			if (changedDocuments.contains(documentID))
+			{
+				score = scores[predictions.documentNumber(documentID)];
+				
+				// As in checkAnnotations, predictions are counted only if the document ID is also present in the gold standard
+				documentPredictions = goldAnnotations.containsDocument(documentID) ? (int) document.getValue()[1] : 0;
+			}
+			else
+			{
+				score = previousState.getScore(documentID);
+				documentPredictions = previousState.getPredictions(documentID);
+			}
+			addDocumentScore(score);
+			totalPredictions += documentPredictions;
+			state.put(documentID, document.getValue()[0], documentPredictions, score);
 		}
 		
-		// first, check if the element in the first column looks like the document ID
-		if (!elements[0].startsWith("S") || !elements[0].substring(5, 6).equals("-") || !elements[0].substring(23, 24).equals("-"))
+		if (!quiet)
 		{
-			return false;
+			System.out.println("Evaluated " + changedDocuments.size() + " of " + documentLines.size() + " documents.");
 		}
 		
-		// then, check if the second and third columns contain numerical content
-		try
-		{
-			int start = Integer.parseInt(elements[1]);
-			int end = Integer.parseInt(elements[2]);
-		}
-		catch (NumberFormatException e)
+		// The state only needs to be saved again if a document changed or was removed
+		if (!changedDocuments.isEmpty() || previousState.size() != state.size())
 		{
-			return false;
+			state.write(stateFile);
 		}
-		
-		// if we arrived here, everything was fine
 		return true;
 	}
 	
-	public boolean checkShortLongTaskCorrectLine(String line)
+	/*
+	 * This method returns the document ID of a predictions line, without checking the line
+	 */
+	private static String documentId(String line)
+	{
+		int tab = line.indexOf('\t');
+		return tab == -1 ? line : line.substring(0, tab);
+	}
+	
+	/*
+	 * This method returns the key of the incremental evaluation state: document scores can only be reused
+	 * with the same task, gold standard, stop words and token matching
+	 */
+	private String stateKey()
+	{
+		File gold = new File(goldStandard);
+		File stopWordsList = new File(stopWordsFile);
+		return "task=" + taskNumber + "\tgold=" + gold.getAbsolutePath() + "," + gold.length() + "," + gold.lastModified()
+				+ "\tstopwords=" + (taskNumber == 2 ? stopWordsList.getAbsolutePath() + "," + stopWordsList.length() + "," + stopWordsList.lastModified() : "")
+				+ "\tlegacy-token-matching=" + countRepeatedTokens;
+	}
+	
+	/*
+	 * This method evaluates the predictions of one document against its gold annotations.
+	 * The predictions are read from the given index, which can be the whole predictions file or just one document.
+	 */
+	private DocumentScore evaluateDocument(AnnotationIndex documentPredictions, int predictionDocument, int goldDocument)
 	{
-		// first, check if the tabular file has 10 columns 
-		String elements[] = line.split("\t");
-		if (elements.length != 9)
+		long documentStart = metrics == null ? 0 : System.nanoTime();
+		int comparisons = 0;
+		float correctUltraStrict = 0;
+		float correctStrict = 0;
+		float correctFlexible = 0;
+		int missing = 0;
+		int wrongUltraStrict = 0;
+		int wrongStrict = 0;
+		int wrongFlexible = 0;
+		SliceScores documentSliceScores = slices == null ? null : sliceScores.get();
+		ThresholdSweep documentSweep = sweepFile == null ? null : thresholdSweep.get();
+		if (minOverlap != null)
 		{
-			return false;
+			spanMatcher.get().match(goldAnnotations, goldDocument, documentPredictions, predictionDocument);
 		}
 		
-		// first, check if the element in the first column looks like the document ID
-		if (!elements[0].startsWith("S") || !elements[0].substring(5, 6).equals("-") || !elements[0].substring(23, 24).equals("-"))
+		for (int goldEntry = goldAnnotations.firstEntry(goldDocument); goldEntry != -1; goldEntry = goldAnnotations.nextEntry(goldEntry))
 		{
-			return false;
+			/*
+			 * This part of the method analyzes if the gold annotation is present in the predictions file.
+			 * It checks if there is a prediction with the same start offset of the gold annotation.
+			 */
+			int startOffset = goldAnnotations.startOffset(goldEntry);
+			int predictionEntry = documentPredictions.find(predictionDocument, startOffset);
+			if (predictionEntry != -1)
+			{
+				// This annotation could exist in the prediction file, here we check the content.
+				Annotation gsAnnotation = goldAnnotations.annotation(goldEntry);
+				Annotation predictionAnnotation = documentPredictions.annotation(predictionEntry);
+				comparisons++;
+				
+				float guessed = 0;
+				if (taskNumber == 1)
+				{
+					// check if the abbreviation-definition relation is correct
+					guessed = evaluateRelation((RelationAnnotation) gsAnnotation, (RelationAnnotation) predictionAnnotation);
+				}
+				else
+				{
+					// check if the abbreviation resolution is correct
+					guessed = evaluateAbbreviationRecognition((AbbreviationAnnotation) gsAnnotation, (AbbreviationAnnotation) predictionAnnotation);
+				}
+				if (documentSliceScores != null)
+				{
+					documentSliceScores.addMatch(gsAnnotation, predictionAnnotation, goldDocument, guessed);
+				}
+				if (documentSweep != null)
+				{
+					documentSweep.add(predictionAnnotation.getConfidence(), guessed);
+				}
+				
+				if (guessed == 1)
+				{
+					// The annotation is correct
+					correctFlexible++;
+					correctUltraStrict++;
+					correctStrict++;
+					if (diagnostics != null)
+					{
+						diagnostics.record(DiagnosticKind.CORRECT, gsAnnotation, predictionAnnotation, 1);
+					}
+				}
+				else if (guessed == 0)
+				{
+					// The annotation is wrong
+					wrongFlexible++;
+					wrongUltraStrict++;
+					wrongStrict++;
+					if (diagnostics != null)
+					{
+						diagnostics.record(DiagnosticKind.WRONG, gsAnnotation, predictionAnnotation, 0);
+					}
+				}
+				else if (guessed == 2)
+				{
+					// the annotation is wrong for ultra-strict, but correct for strict and flexible
+					correctFlexible++;
+					correctStrict++;
+					wrongUltraStrict++;
+					if (diagnostics != null)
+					{
+						diagnostics.record(DiagnosticKind.CORRECT_NON_ULTRA_STRICT, gsAnnotation, predictionAnnotation, 1);
+					}
+				}
+				else if (guessed < 1 && guessed > 0)
+				{
+					// The annotation is partially correct
+					correctFlexible = correctFlexible + guessed;
+					wrongUltraStrict++;
+					wrongStrict++;
+					// print missing info (always print by default, unless it is written to the diagnostics file)
+					if (diagnostics != null)
+					{
+						diagnostics.record(DiagnosticKind.PARTIALLY_CORRECT, gsAnnotation, predictionAnnotation, guessed);
+					}
+					else if (!quiet)
+					{
+						System.out.println("PARTIALLY CORRECT: '" + predictionAnnotation.getLine() + "' : " + guessed 
+								+ " . Correct definition: " + gsAnnotation.getLine().split("\t")[4]);
+					}
+				}
+			}
+			else
+			{
+				// The annotation is missing
+				missing++;
+				if (diagnostics != null)
+				{
+					diagnostics.record(DiagnosticKind.MISSING, goldAnnotations.annotation(goldEntry), null, 0);
+				}
+				else if (extraDetails)	// print missing info (if desired by the participant)
+				{
+					String gsLine = goldAnnotations.annotation(goldEntry).getLine();
+					System.out.println("MISSING: '" + gsLine + "'"); 
+				}
+			}
 		}
 		
-		// then, check if the third, fourth, eighth and ninth columns contain numerical content
-		try
-		{
-			int startA = Integer.parseInt(elements[2]);
-			//int endA = Integer.parseInt(elements[3]);
-			int startB = Integer.parseInt(elements[6]);
-			int endB = Integer.parseInt(elements[7]);
-		}
-		catch (NumberFormatException e)
+		// The following lines checks if there are extra predictions given by the participant, but not in GS
+		// All these predictions are counted as wrong
+		for (int predictionEntry = documentPredictions.firstEntry(predictionDocument); predictionEntry != -1; predictionEntry = documentPredictions.nextEntry(predictionEntry))
 		{
-			return false;
+			if (documentSliceScores != null)
+			{
+				documentSliceScores.addPrediction(documentPredictions.annotation(predictionEntry), goldDocument);
+			}
+			int startOffset = documentPredictions.startOffset(predictionEntry);
+			if (goldAnnotations.find(goldDocument, startOffset) == -1)
+			{
+				// Prediction not found in GS
+				// The annotation is wrong
+				wrongFlexible++;
+				wrongUltraStrict++;
+				wrongStrict++;
+				if (documentSweep != null)
+				{
+					documentSweep.add(documentPredictions.annotation(predictionEntry).getConfidence(), 0);
+				}
+				if (diagnostics != null)
+				{
+					diagnostics.record(DiagnosticKind.SPURIOUS, null, documentPredictions.annotation(predictionEntry), 0);
+				}
+			}
 		}
 		
-		// finally, check if mention types (columns 2 and 7) and relation types (column 6) are correct
-		if (!mentionTypes.containsKey(elements[1]) || !mentionTypes.containsKey(elements[5]))
-		{
-			return false;
-		}
-		if (!relationTypes.containsKey(elements[4]))
+		if (metrics != null)
 		{
-			return false;
+			metrics.recordDocument(System.nanoTime() - documentStart, comparisons);
 		}
-		
-		// if we arrived here, everything was fine
-		return true;
+		return new DocumentScore(correctUltraStrict, correctStrict, correctFlexible, missing, wrongUltraStrict, wrongStrict, wrongFlexible);
 	}
 	
 	/*
-	 * This method loads the stop words. These will be used later to evaluate the predicted definition for recognized abbreviations.
-	 * Stop words file format must have just one stop word per line. Use "#" for comments
+	 * This method adds the score of a document to the final results
 	 */
-	public void loadStopWords() throws IOException
+	private void addDocumentScore(DocumentScore score)
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(stopWordsFile));
-		String line = "";
-		while ((line = reader.readLine()) != null)
-		{
-			if (!line.startsWith("#")) // ignore comments
-			{
-				stopWordsMap.put(line, 1);
-			}
-		}
-		reader.close();
+		correctPredictionsUltraStrict += score.getCorrectUltraStrict();
+		correctPredictionsStrict += score.getCorrectStrict();
+		correctPredictionsFlexible += score.getCorrectFlexible();
+		missingPredictions += score.getMissing();
+		wrongPredictionsUltraStrict += score.getWrongUltraStrict();
+		wrongPredictionsStrict += score.getWrongStrict();
+		wrongPredictionsFlexible += score.getWrongFlexible();
 	}
 	
 	/*
-	 * This method evaluates participants' predictions against gold annotations
+	 * This task evaluates a range of documents of the predictions file, splitting it until ranges are small enough.
+	 * Each document score is stored in its position of the scores array, so they can be added later in document order.
 	 */
-	public void evaluate()
+	private class DocumentScoringTask extends RecursiveAction
 	{
-		System.out.println("Evaluating predictions against the Gold Standard...");
+		private static final long serialVersionUID = 1L;
+		private static final int DOCUMENTS_PER_TASK = 16;
+		
+		private final DocumentScore[] scores;
+		private final int from;
+		private final int to;
 		
-		Iterator<String> predictionIterID = predictions.keySet().iterator();
-		while (predictionIterID.hasNext())
+		DocumentScoringTask(DocumentScore[] scores, int from, int to)
 		{
-			String documentID = predictionIterID.next();
-			
-			// If gold annotations do not contain the document to evaluate, throw an error message and check next document
-			if (!goldAnnotations.containsKey(documentID))
-			{
-		//		System.err.println("Error: document ID " + documentID + " does not exist in Gold Standard. Please check your predictions file.");
-			}
-			else	// Document exists in gold annotations, check predictions
+			this.scores = scores;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from <= DOCUMENTS_PER_TASK)
 			{
-				Map<Integer, String> documentPredictions = predictions.get(documentID);
-				Map<Integer, String> documentAnnotationsGS = goldAnnotations.get(documentID);
-				
-				Iterator<Integer> goldIter = documentAnnotationsGS.keySet().iterator();
-				while (goldIter.hasNext())
-				{
-					/*
-					 * This part of the method analyzes if the gold annotation is present in the predictions file.
-					 * It checks if there is a prediction with the same start offset of the gold annotation.
-					 */
-					int startOffset = goldIter.next();
-					if (documentPredictions.containsKey(startOffset))
-					{
-						// This annotation could exist in the prediction file, here we check the content.
-						String gsLine = documentAnnotationsGS.get(startOffset);
-						String predictionLine = documentPredictions.get(startOffset);
-						
-						float guessed = 0;
-						if (taskNumber == 1)
-						{
-							// check if the abbreviation-definition relation is correct
-							guessed = evaluateRelation(gsLine, predictionLine);
-						}
-						else
-						{
-							// check if the abbreviation resolution is correct
-							guessed = evaluateAbbreviationRecognition(gsLine, predictionLine);
-							if (guessed == 0)
-							{
-								//System.out.println("WRONG: '" + predictionLine + "' --> Error in abbreviation disambiguation. Correct definition: " + gsLine.split("\t")[4]);
-							}
-						}
-						
-						if (guessed == 1)
-						{
-							// The annotation is correct
-							correctPredictionsFlexible++;
-							correctPredictionsUltraStrict++;
-							correctPredictionsStrict++;
-							if (extraDetails)	// print missing info (if desired by the participant)
-							{
-								//System.out.println("CORRECT: '" + predictionLine + "'"); 
-							}
-						}
-						else if (guessed == 0)
-						{
-							// The annotation is wrong
-							wrongPredictionsFlexible++;
-							wrongPredictionsUltraStrict++;
-							wrongPredictionsStrict++;
-							// print missing info (always print by default)
-				//			System.out.println("WRONG: '" + predictionLine + "'");
-						}
-						else if (guessed == 2)
-						{
-							// the annotation is wrong for ultra-strict, but correct for strict and flexible
-							correctPredictionsFlexible++;
-							correctPredictionsStrict++;
-							wrongPredictionsUltraStrict++;
-							if (extraDetails)	// print missing info (if desired by the participant)
-							{
-								//System.out.println("CORRECT (non ultra-strict): '" + predictionLine + "'"); 
-							}
-						}
-						else if (guessed < 1 && guessed > 0)
-						{
-							// The annotation is partially correct
-							correctPredictionsFlexible = correctPredictionsFlexible + guessed;
-							wrongPredictionsUltraStrict++;
-							wrongPredictionsStrict++;
-							// print missing info (always print by default)
-							System.out.println("PARTIALLY CORRECT: '" + predictionLine + "' : " + guessed + " . Correct definition: " + gsLine.split("\t")[4]);
-						}
-					}
-					else
-					{
-						// The annotation is missing
-						missingPredictions++;
-						if (extraDetails)	// print missing info (if desired by the participant)
-						{
-							String gsLine = documentAnnotationsGS.get(startOffset);
-							System.out.println("MISSING: '" + gsLine + "'"); 
-						}
-					}
-				}
-				
-				// The following lines checks if there are extra predictions given by the participant, but not in GS
-				// All these predictions are counted as wrong
-				Iterator<Integer> predictionIter = documentPredictions.keySet().iterator();
-				while (predictionIter.hasNext())
+				for (int predictionDocument = from; predictionDocument < to; predictionDocument++)
 				{
-					int startOffset = predictionIter.next();
-					if (!documentAnnotationsGS.containsKey(startOffset))
-					{
-						String predictionLine = documentPredictions.get(startOffset);
-						// Prediction not found in GS
-						// The annotation is wrong
-						wrongPredictionsFlexible++;
-						wrongPredictionsUltraStrict++;
-						wrongPredictionsStrict++;
-						// print missing info (always print by default)
-						//System.out.println("COMPLETELY WRONG: '" + predictionLine + "'");
-					}
+					scores[predictionDocument] = evaluatePredictionDocument(predictionDocument);
 				}
 			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new DocumentScoringTask(scores, from, middle), new DocumentScoringTask(scores, middle, to));
+			}
 		}
 	}
 	
@@ -555,33 +1835,26 @@ public class BARR_Evaluator {
 	 */
 	public float evaluateRelation(String gsLine, String predictionLine)
 	{
-		String elementsGS[] = gsLine.split("\t");
-		String elementsPred[] = predictionLine.split("\t");
-		
-		//Elimino los acentos
-		eliminoAcentos(elementsGS);
-		eliminoAcentos(elementsPred);
+		return evaluateRelation((RelationAnnotation) parser.parse(gsLine), (RelationAnnotation) parser.parse(predictionLine));
+	}
+	
+	public float evaluateRelation(RelationAnnotation gs, RelationAnnotation prediction)
+	{
+		// Mention texts are compared without accents, the parser already removed them
 		
 		///
 		/// Argument A
 		///
 		// First check if the mention A type (column 2) matches in prediction and gold annotation
-		if (!elementsGS[1].equals(elementsPred[1]))
+		if (gs.getMentionAType() != prediction.getMentionAType())
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in mention A type.");
 			return 0;
 		}
 		
-		// Next check if the mention A end offset (column 4) matches in prediction and gold annotation
 		// Start offset is not analyzed, because we already know it matches with the gold annotation.
-		/*if (!elementsGS[3].equals(elementsPred[3]))
-		{
-			System.out.println("WRONG: '" + predictionLine + "' --> Error in mention A end offset.");
-			return 0;
-		}*/
-				
 		// Finally check if the mention A text (column 5) matches in prediction and gold annotation
-		if (!elementsGS[3].equals(elementsPred[3]))
+		if (!gs.getMentionAText().equals(prediction.getMentionAText()))
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in mention A text.");
 			return 0;
@@ -592,28 +1865,28 @@ public class BARR_Evaluator {
 		/// Argument B
 		///
 		// First check if the mention B type (column 7) matches in prediction and gold annotation
-		if (!elementsGS[5].equals(elementsPred[5]))
+		if (gs.getMentionBType() != prediction.getMentionBType())
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in mention B type.");
 			return 0;
 		}
 		
 		// Next check if the mention B start offset (column 8) matches in prediction and gold annotation
-		if (!elementsGS[6].equals(elementsPred[6]))
+		if (!gs.sameMentionBStart(prediction))
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in mention B start offset.");
 			return 0;
 		}
 		
 		// Then check if the mention B end offset (column 9) matches in prediction and gold annotation
-		if (!elementsGS[7].equals(elementsPred[7]))
+		if (!gs.sameMentionBEnd(prediction))
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in mention B end offset.");
 			return 0;
 		}
 				
 		// Finally check if the mention B text (column 10) matches in prediction and gold annotation
-		if (!elementsGS[8].equals(elementsPred[8]))
+		if (!gs.getMentionBText().equals(prediction.getMentionBText()))
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in mention B text.");
 			return 0;
@@ -623,24 +1896,12 @@ public class BARR_Evaluator {
 		///
 		/// Relation
 		///
-		// Check if the relation type (column 6) matches in prediction and gold annotation
-		if (!elementsGS[5].equals(elementsPred[5]))
-		{
-			//System.out.println("WRONG: '" + predictionLine + "' --> Error in relation type.");
-			return 0;
-		}
+		// The relation type (column 6) is not compared: the line-based version of this method checked the
+		// mention B type again at this point, and scores must not change between versions.
 		
 		// If we arrived here, the annotation is correct
 		return 1;
 	}
-	
-	private void eliminoAcentos(String[] elementsGS) {
-		//Accedo a las posiciones 3 y 8 para tratar el texto de la expansion		
-		String cadenaNormalize = Normalizer.normalize(elementsGS[3], Normalizer.Form.NFD);   
-		elementsGS[3] = cadenaNormalize.replaceAll("[^\\p{ASCII}]", "");
-		cadenaNormalize = Normalizer.normalize(elementsGS[8], Normalizer.Form.NFD);   
-		elementsGS[8] = cadenaNormalize.replaceAll("[^\\p{ASCII}]", "");		
-	}
 
 	/*
 	 * This method check if the prediction given for the abbreviation recognition sub-task is correct.
@@ -665,22 +1926,23 @@ public class BARR_Evaluator {
 	 */
 	public float evaluateAbbreviationRecognition(String gsLine, String predictionLine)
 	{
-		String elementsGS[] = gsLine.split("\t");
-		String elementsPred[] = predictionLine.split("\t");
-		
-		eliminoAcentosTask2(elementsGS);
-		eliminoAcentosTask2(elementsPred);
+		return evaluateAbbreviationRecognition((AbbreviationAnnotation) parser.parse(gsLine), (AbbreviationAnnotation) parser.parse(predictionLine));
+	}
+	
+	public float evaluateAbbreviationRecognition(AbbreviationAnnotation gs, AbbreviationAnnotation prediction)
+	{
+		// Texts are compared without accents, the parser already removed them
 		
 		// First check if the mention end offset (column 3) matches in prediction and gold annotation
 		// Start offset is not analyzed, because we already know it matches with the gold annotation.
-		if (!elementsGS[2].equals(elementsPred[2]))
+		if (!gs.sameEndOffset(prediction))
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in abbreviation end offset.");
 			return 0;
 		}
 				
 		// Finally check if the mention text (column 4) matches in prediction and gold annotation
-		if (!elementsGS[3].equalsIgnoreCase(elementsPred[3]))
+		if (!gs.getAbbreviation().equalsIgnoreCase(prediction.getAbbreviation()))
 		{
 			//System.out.println("WRONG: '" + predictionLine + "' --> Error in abbreviation text.");
 			return 0;
@@ -692,15 +1954,29 @@ public class BARR_Evaluator {
 		///
 		// First check if the abbreviation's unlemmatized definition (column 5) matches in prediction and gold annotation
 		// If it matches, return true, if not, check lemmatized definition
-		if (!elementsGS[4].equalsIgnoreCase(elementsPred[4]))
+		if (!gs.getDefinition().equalsIgnoreCase(prediction.getDefinition()))
 		{
 			// Predicted abbreviation definition does not match with gold definition
 			// Check lemmatized definition (column 6)
-			if (!elementsGS[5].equalsIgnoreCase(elementsPred[5]))
+			if (!gs.getLemmatizedDefinition().equalsIgnoreCase(prediction.getLemmatizedDefinition()))
 			{
 				// if we arrived here, ultra-strict evaluation will score 0
 				// analize prediction tokens
-				float score = analizeTokens(elementsPred[4], elementsGS[4], elementsPred[5], elementsGS[5]);
+				if (metrics != null)
+				{
+					metrics.recordTokenOverlap();
+				}
+				float score;
+				if (gs.getDefinitionTokens() != null)
+				{
+					// Gold tokens were prepared when the gold standard was loaded
+					score = tokenOverlap.get().score(prediction.getDefinition(), gs.getDefinitionTokens(), 
+							prediction.getLemmatizedDefinition(), gs.getLemmatizedDefinitionTokens());
+				}
+				else
+				{
+					score = analizeTokens(prediction.getDefinition(), gs.getDefinition(), prediction.getLemmatizedDefinition(), gs.getLemmatizedDefinition());
+				}
 				
 				// If we scored 1, that means both the prediction and gold annotation have the same amount of tokens,
 				// and all these tokens match. The Score here for ultra-strict evaluation is 0, but 1 for both strict
@@ -721,91 +1997,11 @@ public class BARR_Evaluator {
 		// if everything matches, return 1 point
 		return 1;
 	}
-	
-	private void eliminoAcentosTask2(String[] elementsPred) {
-		String cadenaNormalize = Normalizer.normalize(elementsPred[3], Normalizer.Form.NFD);   
-		elementsPred[3] = cadenaNormalize.replaceAll("[^\\p{ASCII}]", "");
-		cadenaNormalize = Normalizer.normalize(elementsPred[4], Normalizer.Form.NFD);   
-		elementsPred[4] = cadenaNormalize.replaceAll("[^\\p{ASCII}]", "");	
-		cadenaNormalize = Normalizer.normalize(elementsPred[5], Normalizer.Form.NFD);   
-		elementsPred[5] = cadenaNormalize.replaceAll("[^\\p{ASCII}]", "");
-		
-	}
 
 	public float analizeTokens(String pred, String gs, String predLemma, String gsLemma) 
 	{
-		// Create lists of tokens
-		List<String> predTokens = new ArrayList<String>(Arrays.asList(pred.split(" ")));
-		List<String> gsTokens = new ArrayList<String>(Arrays.asList(gs.split(" ")));
-		List<String> predLemmaTokens = new ArrayList<String>(Arrays.asList(predLemma.split(" ")));
-		List<String> gsLemmaTokens = new ArrayList<String>(Arrays.asList(gsLemma.split(" ")));
-		
-		// Remove stop words from gold annotations
-		List<String> gsTokensTemp = new ArrayList<String>();	// new unlemmatized gold annotation
-		for (int i = 0; i < gsTokens.size(); i++)
-		{
-			String token = gsTokens.get(i);
-			if (!stopWordsMap.containsKey(token))
-			{
-				gsTokensTemp.add(token);
-			}
-		}
-		gsTokens = gsTokensTemp;
-		
-		// Remove stop words from gold annotations
-		List<String> gsLemmaTokensTemp = new ArrayList<String>();	// new lemmatized gold annotation
-		for (int i = 0; i < gsLemmaTokens.size(); i++)
-		{
-			String token = gsLemmaTokens.get(i);
-			if (!stopWordsMap.containsKey(token))
-			{
-				gsLemmaTokensTemp.add(token);
-			}
-		}
-		gsLemmaTokens = gsLemmaTokensTemp;
-		
-		// Check tokens present in unlemmatized prediction and unlemmatized gold annotation
-		float matchingTokens = 0;
-		for (int i = 0; i < predTokens.size(); i++)
-		{
-			String token = predTokens.get(i);
-			// Check if token is stop word, continue if not
-			if (!stopWordsMap.containsKey(token))
-			{
-				if (gsTokens.contains(token))
-				{
-					matchingTokens++;
-				}
-			}			
-		}
-		// check which has most tokens, if gold annotation, or prediction
-		float matchingScore = matchingTokens / max(gsTokens.size(), predTokens.size());
-		
-		// Check tokens present in lemmatized prediction and lemmatized gold annotation
-		float matchingTokensLemma = 0;
-		for (int i = 0; i < predLemmaTokens.size(); i++)
-		{
-			String token = predLemmaTokens.get(i);
-			// Check if token is stop word, continue if not
-			if (!stopWordsMap.containsKey(token))
-			{
-				if (gsLemmaTokens.contains(token))
-				{
-					matchingTokensLemma++;
-				}
-			}			
-		}
-		// check which has most tokens, if gold annotation lemmatized, or prediction lemmatized
-		float matchingScoreLemma = matchingTokensLemma / max(gsLemmaTokens.size(), predLemmaTokens.size());
-		
-		if (matchingScoreLemma > matchingScore)
-		{
-			return matchingScoreLemma;
-		}
-		else
-		{
-			return matchingScore;
-		}
+		// Token matching is done by the TokenOverlap of the current thread, which reuses its buffers between calls
+		return tokenOverlap.get().score(pred, gs, predLemma, gsLemma);
 	}
 	
 	/*
@@ -883,12 +2079,192 @@ public class BARR_Evaluator {
 		System.out.println("F-MEASURE = " + F1);
 	}
 
+	/*
+	 * This method displays the gold annotations matched with a prediction by start offset, as in the evaluation,
+	 * and by the overlap of their spans, with the precision, recall and F-Measure of both matchings.
+	 * Only the matching is compared here: the content of the matched annotations is not checked.
+	 */
+	public void printMatchingResults()
+	{
+		long exactMatches = 0;
+		long overlapMatches = 0;
+		synchronized (threadSpanMatchers)
+		{
+			for (SpanMatcher matcher : threadSpanMatchers)
+			{
+				exactMatches += matcher.getExactMatches();
+				overlapMatches += matcher.getOverlapMatches();
+			}
+		}
+		
+		System.out.println(); // empty line
+		System.out.println("STRICT AND LENIENT MATCHING:");
+		System.out.println("---------------------------");
+		System.out.println("MATCHING\tMATCHED\tMISSED\tSPURIOUS\tPRECISION\tRECALL\tF-MEASURE");
+		printMatching("SAME START OFFSET", exactMatches);
+		printMatching("SPAN OVERLAP (GOLD >= " + minOverlap[0] + ", PREDICTION >= " + minOverlap[1] + ")", overlapMatches);
+		System.out.println("===========================");
+	}
+	
+	private void printMatching(String matching, long matches)
+	{
+		float precision = (float) matches / (float) totalPredictions;
+		float recall = (float) matches / (float) totalAnnotationsGS;
+		float F1 = (2 * precision * recall) / (precision + recall);
+		System.out.println(matching + "\t" + matches + "\t" + (totalAnnotationsGS - matches) + "\t" + (totalPredictions - matches) 
+				+ "\t" + precision + "\t" + recall + "\t" + F1);
+	}
+	
+	/*
+	 * This method displays the precision, recall and F-Measure of each fold, and their micro-average, macro-average and variance,
+	 * for the same scoring types as the final results
+	 */
+	public void printFoldResults()
+	{
+		FoldResults results = new FoldResults(folds, documentScores);
+		for (ScoringType type : ScoringType.values())
+		{
+			if (taskNumber == 1 && type != ScoringType.ULTRA_STRICT)
+			{
+				break;
+			}
+			System.out.println(); // empty line
+			System.out.println(type.getLabel() + " EVALUATION BY FOLD:");
+			System.out.println("---------------------------");
+			System.out.println("FOLD\tDOCUMENTS\tANNOTATIONS GS\tPREDICTIONS\tCORRECT\tPRECISION\tRECALL\tF-MEASURE");
+			for (int fold = 0; fold < folds.size(); fold++)
+			{
+				System.out.println(folds.getLabel(fold) + "\t" + folds.getDocuments(fold) + "\t" + results.getAnnotationsGS(fold) 
+						+ "\t" + results.getPredictions(fold) + "\t" + results.getCorrect(type, fold) + "\t" + results.getPrecision(type, fold) 
+						+ "\t" + results.getRecall(type, fold) + "\t" + results.getFMeasure(type, fold));
+			}
+			System.out.println("MICRO-AVERAGE\t\t\t\t\t" + results.getMicroPrecision(type) + "\t" + results.getMicroRecall(type) 
+					+ "\t" + results.getMicroFMeasure(type));
+			System.out.println("MACRO-AVERAGE\t\t\t\t\t" + results.getMacroAverage(type, FoldResults.PRECISION) 
+					+ "\t" + results.getMacroAverage(type, FoldResults.RECALL) + "\t" + results.getMacroAverage(type, FoldResults.F_MEASURE));
+			System.out.println("VARIANCE\t\t\t\t\t" + results.getVariance(type, FoldResults.PRECISION) 
+					+ "\t" + results.getVariance(type, FoldResults.RECALL) + "\t" + results.getVariance(type, FoldResults.F_MEASURE));
+			if (folds.getUnassignedDocuments() > 0)
+			{
+				System.out.println(folds.getUnassignedDocuments() + " GOLD DOCUMENTS ARE NOT IN ANY FOLD");
+			}
+			System.out.println("===========================");
+		}
+	}
+	
+	/*
+	 * This method calculates the precision/recall curve by confidence threshold, writing all its points to the sweep file
+	 * and displaying the threshold with the highest F-Measure of each scoring type
+	 */
+	public void printThresholdSweep() throws IOException
+	{
+		EvaluationMetrics.Phase phase = startPhase("threshold sweep");
+		ThresholdSweep sweep;
+		synchronized (threadSweeps)
+		{
+			sweep = ThresholdSweep.compute(threadSweeps, getResult());
+		}
+		List<ScoringType> types = new ArrayList<ScoringType>();
+		for (ScoringType type : ScoringType.values())
+		{
+			if (taskNumber == 1 && type != ScoringType.ULTRA_STRICT)
+			{
+				break;
+			}
+			types.add(type);
+		}
+		sweep.write(sweepFile, types);
+		endPhase(phase, 0, 0);
+		
+		System.out.println(); // empty line
+		System.out.println("CONFIDENCE THRESHOLD SWEEP:");
+		System.out.println("---------------------------");
+		System.out.println("EVALUATION\tBEST THRESHOLD\tPREDICTIONS\tCORRECT\tPRECISION\tRECALL\tF-MEASURE");
+		for (ScoringType type : types)
+		{
+			int point = sweep.getBestPoint(type);
+			if (point != -1)
+			{
+				System.out.println(type.getLabel() + "\t" + sweep.getThreshold(point) + "\t" + sweep.getPredictions(point) 
+						+ "\t" + sweep.getCorrect(type, point) + "\t" + sweep.getPrecision(type, point) 
+						+ "\t" + sweep.getRecall(type, point) + "\t" + sweep.getFMeasure(type, point));
+			}
+		}
+		System.out.println("Written " + sweep.getPoints() + " thresholds of the curve to " + sweepFile);
+		System.out.println("===========================");
+	}
+	
+	/*
+	 * This method checks the spans of the gold annotations and predictions against the texts of their documents,
+	 * displaying how many are wrong in each file, and the wrong spans of the predictions
+	 */
+	public void verifyOffsets() throws IOException
+	{
+		EvaluationMetrics.Phase phase = startPhase("verify offsets");
+		OffsetVerifier goldVerifier = new OffsetVerifier(texts, threads);
+		goldVerifier.verify(goldAnnotations);
+		OffsetVerifier predictionsVerifier = new OffsetVerifier(texts, threads);
+		predictionsVerifier.verify(predictions);
+		endPhase(phase, 0, 0);
+		
+		System.out.println(); // empty line
+		System.out.println("OFFSET VERIFICATION (" + texts.getDirectory() + "):");
+		System.out.println("---------------------------");
+		System.out.println("FILE	SPANS	WRONG SPANS	DOCUMENTS WITHOUT TEXT");
+		System.out.println("GOLD STANDARD	" + goldVerifier.getSpans() + "	" + goldVerifier.getWrongSpans() + "	" + goldVerifier.getDocumentsWithoutText());
+		System.out.println("PREDICTIONS	" + predictionsVerifier.getSpans() + "	" + predictionsVerifier.getWrongSpans() 
+				+ "	" + predictionsVerifier.getDocumentsWithoutText());
+		predictionsVerifier.printErrors(System.out);
+		System.out.println("===========================");
+	}
+	
+	/*
+	 * This method displays the precision, recall and F-Measure of each slice, for the same scoring types as the final results.
+	 * The precision of a slice is calculated with its predictions, and the recall with its gold annotations.
+	 * A note is displayed if some gold lines are not counted in the slices (see Slices).
+	 */
+	public void printSlicedResults()
+	{
+		SliceScores scores = new SliceScores(slices);
+		synchronized (threadSliceScores)
+		{
+			for (SliceScores threadScores : threadSliceScores)
+			{
+				scores.add(threadScores);
+			}
+		}
+		
+		for (ScoringType type : ScoringType.values())
+		{
+			if (taskNumber == 1 && type != ScoringType.ULTRA_STRICT)
+			{
+				break;
+			}
+			System.out.println(); // empty line
+			System.out.println(type.getLabel() + " EVALUATION BY SLICE:");
+			System.out.println("---------------------------");
+			System.out.println("SLICE\tANNOTATIONS GS\tPREDICTIONS\tCORRECT\tPRECISION\tRECALL\tF-MEASURE");
+			for (int slice = 0; slice < slices.size(); slice++)
+			{
+				System.out.println(slices.getLabel(slice) + "\t" + slices.getAnnotationsGS(slice) + "\t" + scores.getPredictions(slice) 
+						+ "\t" + scores.getCorrect(type, slice) + "\t" + scores.getPrecision(type, slice) 
+						+ "\t" + scores.getRecall(type, slice) + "\t" + scores.getFMeasure(type, slice));
+			}
+			if (slices.getRepeatedLinesGS() > 0)
+			{
+				System.out.println("NOTE: ANNOTATIONS GS counts distinct gold annotations, the " + slices.getRepeatedLinesGS() 
+						+ " gold lines replaced by a later line with the same document and start offset are only counted in TOTAL ANNOTATIONS GS");
+			}
+			System.out.println("===========================");
+		}
+	}
+
 	private static void DisplayError(String errorName) 
 	{
 		if (errorName.equals("GeneralError"))
 		{
 			System.err.println("USAGE:");
-			System.err.println("\tjava -jar Evaluation.jar <GOLD_STANDARD_FILE_PATH> <PREDICTIONS_FILE_PATH> <TASK_NUMBER> <OPTIONAL_EXTRA_OUTPUT_DETAILS>:");
+			System.err.println("\tjava -jar Evaluation.jar <GOLD_STANDARD_FILE_PATH> <PREDICTIONS_FILE_PATH> <TASK_NUMBER> <STOP_WORDS_FILE> <OPTIONAL_EXTRA_OUTPUT_DETAILS> [OPTIONS]:");
 			System.err.println("GOLD_STANDARD_FILE_PATH: path to the gold standard. When evaluating the training set, participants should use annotations files" 
 						+ " as gold standard when evaluating their predictions on the training set.");
 			System.err.println("PREDICTIONS_FILE_PATH: path the participant's prediction file. File must have the same format as the gold standard file.");
@@ -897,6 +2273,43 @@ public class BARR_Evaluator {
 			System.err.println("\t\t\tUse \"2\" for the abbreviation resolution task.");
 			System.err.println("OPTIONAL_EXTRA_OUTPUT_DETAILS: using this flag allows users to get extra information about their predictions,"
 						+ " like which predictions are correct, and which were missed");
+			System.err.println("OPTIONS:");
+			System.err.println("\t--stream: score the predictions file while it is read, without loading it in memory."
+						+ " Predictions of the same document must be on consecutive lines.");
+			System.err.println("\t--threads N: number of threads used to check files and evaluate documents in parallel, 1 by default. Use 0 for one thread per processor.");
+			System.err.println("\t--batch: evaluate many submissions and display a ranking. PREDICTIONS_FILE_PATH is a directory with the submissions,"
+						+ " or a file with one submission path per line.");
+			System.err.println("\t--write-snapshot FILE: save the checked gold standard and stop words in a binary snapshot,"
+						+ " which can be used as GOLD_STANDARD_FILE_PATH in next runs.");
+			System.err.println("\t--skip-snapshot-checksum: load the gold standard snapshot without checking the checksum of its whole content.");
+			System.err.println("\t--legacy-token-matching: in task 2, let a repeated predicted token match the same gold token many times,"
+						+ " as in previous versions of this script.");
+			System.err.println("\t--incremental STATE_FILE: keep document scores in STATE_FILE, and in next runs evaluate again"
+						+ " only the documents whose predictions changed.");
+			System.err.println("\t--compare PREDICTIONS_FILE_PATH_B: compare the predictions file with another one with a paired bootstrap test,"
+						+ " displaying confidence intervals and the p-value of the difference.");
+			System.err.println("\t--resamples N: number of resamples of the paired bootstrap test, 10000 by default.");
+			System.err.println("\t--seed N: seed of the paired bootstrap test, 1 by default.");
+			System.err.println("\t--slices: also display the results by relation type, mention A type and mention B type (task 1).");
+			System.err.println("\t--slice-metadata METADATA_FILE: also display the results by ISSN, journal and year of the documents,"
+						+ " read from a metadata file as clinical_cases.metadata.training_set.tsv (required for --slices in task 2).");
+			System.err.println("\t--diagnostics FILE: write every correct, wrong, partially correct, missing and spurious prediction to FILE,"
+						+ " as JSON lines if its name ends with \".jsonl\", or as TSV otherwise.");
+			System.err.println("\t--lenient: also match gold annotations and predictions by the overlap of their spans,"
+						+ " and display the matches by start offset and by overlap side by side.");
+			System.err.println("\t--min-overlap RATIO[,PREDICTION_RATIO]: minimum overlap of a lenient match with the gold span and the predicted span.");
+			System.err.println("\t--metrics: display the wall time, allocated bytes and lines read of each phase, and the latency of scoring each document.");
+			System.err.println("\t--metrics-json FILE: write the same metrics to a JSON file.");
+			System.err.println("\t--folds K: also display the results of K folds of the documents, assigned by the hash of their ID,"
+						+ " with their micro-average, macro-average and variance.");
+			System.err.println("\t--fold-assignment FOLDS_FILE: the same, with the fold of each document read from FOLDS_FILE"
+						+ " (a document ID and a fold label per line).");
+			System.err.println("\t--threshold-sweep CURVE_FILE: predictions may have an extra last column with their confidence."
+						+ " Write the precision/recall curve by confidence threshold to CURVE_FILE, and display the best threshold.");
+			System.err.println("\t--verify-offsets TEXTS_DIRECTORY: also check that the spans of the gold annotations and predictions cover their texts"
+						+ " in the clinical cases of TEXTS_DIRECTORY (as training/txt).");
+			System.err.println("\t--watch: evaluate the predictions file (or each file of a directory) again each time it changes,"
+						+ " displaying the difference from the previous results. The gold standard is loaded once.");
 		}
 		else if (errorName.equals("GoldError"))
 		{
@@ -910,25 +2323,21 @@ public class BARR_Evaluator {
 						+ "Please check if your predictions file has the same format as the gold annotations,\n" 
 						+ "also check if you are using the correct predictions file with the right task number to evaluate.");
 		}
-		else if (errorName.equals("FatalError"))
+		else if (errorName.equals("MetadataError"))
 		{
-			System.err.println("There are errors in the gold standard and predictions file.\n" 
-					+ "Please check if you are using the correct files,\n"  
-					+ "also check if both files fit with the right task number to evaluate.");
+			System.err.println("There are errors in the metadata file.\n" 
+						+ "Please check if it has the same columns as clinical_cases.metadata.training_set.tsv.");
 		}
-		
-		System.exit(0);
-	}
-	
-	private int max(int gsSize, int predictionSize)
-	{
-		if (gsSize > predictionSize)
+		else if (errorName.equals("FoldError"))
 		{
-			return gsSize;
+			System.err.println("There are errors in the folds file.\n" 
+						+ "Please check if it has a document ID and a fold label per line, separated by a tab.");
 		}
-		else
+		else if (errorName.equals("FatalError"))
 		{
-			return predictionSize;
+			System.err.println("There are errors in the gold standard and predictions file.\n" 
+					+ "Please check if you are using the correct files,\n"  
+					+ "also check if both files fit with the right task number to evaluate.");
 		}
 	}
 }
@@ -0,0 +1,239 @@
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * This class reads a gzip-compressed file, decompressing it in a background thread while the decompressed bytes
+ * are read (and parsed) by the calling thread.
+ * The background thread fills chunks of CHUNK_SIZE decompressed bytes and hands them over through a bounded queue,
+ * so it never gets more than QUEUED_CHUNKS chunks ahead of the reader. Chunks are given back to be reused.
+ *
+ * Files with many gzip members (as written by "cat a.gz b.gz > c.gz" or by parallel compressors) are read whole,
+ * as GZIPInputStream reads the next member while the file has more bytes.
+ * Errors of the background thread (a corrupt or truncated file) are thrown by the next read once the chunks
+ * decompressed before the error are read.
+ *
+ * Input files whose name ends with ".gz" are read through this class (see openReader), so they do not need
+ * to be decompressed to a temporary file first.
+ */
+public class BackgroundGzipInputStream extends InputStream
+{
+	private static final int CHUNK_SIZE = 256 << 10;
+	private static final int QUEUED_CHUNKS = 4;
+	private static final int INPUT_BUFFER_SIZE = 64 << 10;
+	
+	/*
+	 * Decompressed bytes handed over by the background thread
+	 */
+	private static final class Chunk
+	{
+		private final byte[] data = new byte[CHUNK_SIZE];
+		private int length;
+	}
+	
+	// A chunk without bytes, which tells the reader that there are no more chunks
+	private static final Chunk END = new Chunk();
+	
+	private final String file;
+	private final BlockingQueue<Chunk> chunks;
+	private final BlockingQueue<Chunk> freeChunks;
+	private final Thread inflater;
+	private volatile IOException error;
+	
+	// Chunk being read, and position of the next byte
+	private Chunk chunk;
+	private int position;
+	
+	public BackgroundGzipInputStream(String file) throws IOException
+	{
+		this.file = file;
+		this.chunks = new ArrayBlockingQueue<Chunk>(QUEUED_CHUNKS + 1);
+		this.freeChunks = new ArrayBlockingQueue<Chunk>(QUEUED_CHUNKS);
+		for (int i = 0; i < QUEUED_CHUNKS; i++)
+		{
+			freeChunks.add(new Chunk());
+		}
+		
+		// The file is opened here, so a missing file is reported by the constructor as with FileReader
+		final InputStream input = new GZIPInputStream(new FileInputStream(file), INPUT_BUFFER_SIZE);
+		inflater = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				inflate(input);
+			}
+		}, "gzip-reader");
+		inflater.setDaemon(true);
+		inflater.start();
+	}
+	
+	/*
+	 * This method checks if a file is read as gzip-compressed, by its name
+	 */
+	public static boolean isCompressed(String file)
+	{
+		return file.endsWith(".gz");
+	}
+	
+	/*
+	 * This method opens a text file as FileReader does (with the default charset),
+	 * decompressing it in a background thread if it is gzip-compressed
+	 */
+	public static BufferedReader openReader(String file) throws IOException
+	{
+		if (isCompressed(file))
+		{
+			return new BufferedReader(new InputStreamReader(new BackgroundGzipInputStream(file), Charset.defaultCharset()));
+		}
+		return new BufferedReader(new FileReader(file));
+	}
+	
+	/*
+	 * This method runs in the background thread, decompressing the file until its end, an error, or the stream is closed
+	 */
+	private void inflate(InputStream input)
+	{
+		try
+		{
+			while (true)
+			{
+				Chunk next = freeChunks.take();
+				next.length = 0;
+				int read = 0;
+				while (next.length < CHUNK_SIZE && (read = input.read(next.data, next.length, CHUNK_SIZE - next.length)) != -1)
+				{
+					next.length += read;
+				}
+				if (next.length > 0)
+				{
+					chunks.put(next);
+				}
+				if (read == -1)
+				{
+					break;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			error = e;
+		}
+		catch (InterruptedException e)
+		{
+			// The stream was closed, no one waits for more chunks
+			return;
+		}
+		finally
+		{
+			try
+			{
+				input.close();
+			}
+			catch (IOException e)
+			{
+				if (error == null)
+				{
+					error = e;
+				}
+			}
+		}
+		
+		// There is always room for the end chunk: the queue holds all the chunks and the end one
+		chunks.offer(END);
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		if (!nextChunk())
+		{
+			return -1;
+		}
+		return chunk.data[position++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		if (!nextChunk())
+		{
+			return -1;
+		}
+		int read = Math.min(length, chunk.length - position);
+		System.arraycopy(chunk.data, position, bytes, offset, read);
+		position += read;
+		return read;
+	}
+	
+	/*
+	 * This method takes the next chunk when the current one is read, giving the current one back.
+	 * Returns false at the end of the file.
+	 */
+	private boolean nextChunk() throws IOException
+	{
+		if (chunk != null && position < chunk.length)
+		{
+			return true;
+		}
+		if (chunk == END)
+		{
+			return false;
+		}
+		if (chunk != null)
+		{
+			freeChunks.offer(chunk);
+		}
+		try
+		{
+			chunk = chunks.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Reading of " + file + " interrupted", e);
+		}
+		position = 0;
+		if (chunk == END)
+		{
+			if (error != null)
+			{
+				throw new IOException("Error decompressing " + file + ": " + error.getMessage(), error);
+			}
+			return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public int available()
+	{
+		return chunk == null || chunk == END ? 0 : chunk.length - position;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		inflater.interrupt();
+		try
+		{
+			inflater.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,258 @@
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * This class evaluates many submissions (predictions files) against the same gold standard, as in a shared task leaderboard.
+ * The gold annotations and stop words are loaded once by the given evaluator, and shared by all submissions,
+ * which are evaluated in parallel.
+ * The script displays one ranked table with the ultra-strict, strict and flexible precision, recall and F-Measure 
+ * of each submission. Submissions are ranked by ultra-strict F-Measure, then strict and flexible F-Measure.
+ */
+public class BatchEvaluator
+{
+	private final BARR_Evaluator goldEvaluator;
+	private final int threads;
+	
+	/*
+	 * The result of a submission, or the reason why it could not be evaluated
+	 */
+	public static class SubmissionResult
+	{
+		private final String submission;
+		private final EvaluationResult result;
+		private final String error;
+		
+		SubmissionResult(String submission, EvaluationResult result, String error)
+		{
+			this.submission = submission;
+			this.result = result;
+			this.error = error;
+		}
+		
+		public String getSubmission()
+		{
+			return submission;
+		}
+		
+		public EvaluationResult getResult()
+		{
+			return result;
+		}
+		
+		public String getError()
+		{
+			return error;
+		}
+	}
+	
+	public BatchEvaluator(BARR_Evaluator goldEvaluator, int threads)
+	{
+		this.goldEvaluator = goldEvaluator;
+		this.threads = threads;
+	}
+	
+	/*
+	 * This method returns the submissions to evaluate: the files of a directory (sorted by name), 
+	 * or the paths listed in a file, one per line. Use "#" for comments.
+	 */
+	public static List<String> listSubmissions(String path) throws IOException
+	{
+		List<String> submissions = new ArrayList<String>();
+		File file = new File(path);
+		if (file.isDirectory())
+		{
+			File[] files = file.listFiles();
+			Arrays.sort(files);
+			for (File submission : files)
+			{
+				if (submission.isFile() && !submission.isHidden())
+				{
+					submissions.add(submission.getPath());
+				}
+			}
+		}
+		else
+		{
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			String line = "";
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#"))
+				{
+					submissions.add(line);
+				}
+			}
+			reader.close();
+		}
+		return submissions;
+	}
+	
+	/*
+	 * This method evaluates all the submissions and displays the ranking
+	 */
+	public void start(List<String> submissions) throws IOException
+	{
+		System.out.println("Evaluating " + submissions.size() + " submissions against the Gold Standard...");
+		List<SubmissionResult> results = evaluateAll(submissions);
+		printRanking(results);
+	}
+	
+	/*
+	 * This method evaluates all the submissions in parallel, returning their results in the same order
+	 */
+	public List<SubmissionResult> evaluateAll(List<String> submissions) throws IOException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try
+		{
+			List<Future<SubmissionResult>> futures = new ArrayList<Future<SubmissionResult>>();
+			for (final String submission : submissions)
+			{
+				futures.add(executor.submit(new Callable<SubmissionResult>()
+				{
+					@Override
+					public SubmissionResult call()
+					{
+						return evaluateSubmission(submission);
+					}
+				}));
+			}
+			
+			List<SubmissionResult> results = new ArrayList<SubmissionResult>();
+			for (Future<SubmissionResult> future : futures)
+			{
+				results.add(future.get());
+			}
+			return results;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Evaluation of submissions interrupted", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Error evaluating submissions", e.getCause());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	/*
+	 * This method evaluates a submission. Its errors are returned in its result, so they do not stop the other submissions.
+	 */
+	private SubmissionResult evaluateSubmission(String submission)
+	{
+		try
+		{
+			EvaluationResult result = goldEvaluator.forPredictions(submission).evaluateSubmission();
+			if (result == null)
+			{
+				return new SubmissionResult(submission, null, "wrong file format");
+			}
+			return new SubmissionResult(submission, result, null);
+		}
+		catch (IOException e)
+		{
+			return new SubmissionResult(submission, null, e.getMessage());
+		}
+		catch (RuntimeException e)
+		{
+			// Any other error of the evaluation (as an UncheckedIOException of its threads) only concerns this submission
+			return new SubmissionResult(submission, null, e.toString());
+		}
+	}
+	
+	/*
+	 * This method displays the ranking of the submissions. Submissions with errors are displayed at the end.
+	 */
+	public void printRanking(List<SubmissionResult> results)
+	{
+		List<SubmissionResult> ranked = new ArrayList<SubmissionResult>();
+		List<SubmissionResult> failed = new ArrayList<SubmissionResult>();
+		for (SubmissionResult result : results)
+		{
+			if (result.getResult() != null)
+			{
+				ranked.add(result);
+			}
+			else
+			{
+				failed.add(result);
+			}
+		}
+		Collections.sort(ranked, new Comparator<SubmissionResult>()
+		{
+			@Override
+			public int compare(SubmissionResult a, SubmissionResult b)
+			{
+				for (ScoringType type : ScoringType.values())
+				{
+					int comparison = compareFMeasure(b.getResult().getFMeasure(type), a.getResult().getFMeasure(type));
+					if (comparison != 0)
+					{
+						return comparison;
+					}
+				}
+				return a.getSubmission().compareTo(b.getSubmission());
+			}
+		});
+		
+		System.out.println(); // empty line
+		System.out.println("RANKING:");
+		System.out.println("---------------------------");
+		StringBuilder header = new StringBuilder("RANK\tSUBMISSION");
+		for (ScoringType type : ScoringType.values())
+		{
+			header.append("\t").append(type.getLabel()).append(" P\t").append(type.getLabel()).append(" R\t").append(type.getLabel()).append(" F1");
+		}
+		System.out.println(header);
+		
+		int rank = 0;
+		for (SubmissionResult submission : ranked)
+		{
+			rank++;
+			StringBuilder row = new StringBuilder();
+			row.append(rank).append("\t").append(submission.getSubmission());
+			for (ScoringType type : ScoringType.values())
+			{
+				EvaluationResult result = submission.getResult();
+				row.append("\t").append(result.getPrecision(type)).append("\t").append(result.getRecall(type)).append("\t").append(result.getFMeasure(type));
+			}
+			System.out.println(row);
+		}
+		for (SubmissionResult submission : failed)
+		{
+			System.out.println("-\t" + submission.getSubmission() + "\tERROR: " + submission.getError());
+		}
+		System.out.println("===========================");
+	}
+	
+	/*
+	 * Compares F-Measures, considering NaN (no predictions) lower than any other value
+	 */
+	private static int compareFMeasure(float a, float b)
+	{
+		if (Float.isNaN(a) || Float.isNaN(b))
+		{
+			return Boolean.compare(!Float.isNaN(a), !Float.isNaN(b));
+		}
+		return Float.compare(a, b);
+	}
+}
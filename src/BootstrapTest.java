@@ -0,0 +1,377 @@
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * This class compares two submissions (predictions files) against the same gold standard with a paired bootstrap test,
+ * to know if the difference between their results is significant or could be due to the documents of the gold standard.
+ * Both submissions are scored document by document (see DocumentScoreVector). Then the gold standard documents are
+ * resampled with replacement many times, taking the same documents for both submissions, and the precision, recall
+ * and F-Measure of both submissions are calculated again for each resample.
+ *
+ * The script displays, for each scoring type, the results of both submissions and their difference (B - A),
+ * with their 95% confidence intervals (percentiles 2.5 and 97.5 of the resamples), and the two-sided p-value
+ * of the difference: the fraction of resamples whose difference is as far from the observed difference
+ * as the observed difference is from 0.
+ *
+ * Resamples are calculated in parallel, in blocks which take their random numbers from generators split
+ * from the seed in block order, so results depend on the seed but not on the number of threads.
+ */
+public class BootstrapTest
+{
+	public static final int DEFAULT_RESAMPLES = 10000;
+	public static final long DEFAULT_SEED = 1;
+	private static final int RESAMPLES_PER_TASK = 64;
+	
+	// Values of each document in the resampled array: correct predictions of both submissions
+	// for each scoring type, predictions of both submissions and gold annotations
+	private static final int CORRECT_A = 0;
+	private static final int CORRECT_B = 3;
+	private static final int PREDICTIONS_A = 6;
+	private static final int PREDICTIONS_B = 7;
+	private static final int ANNOTATIONS_GS = 8;
+	private static final int DOCUMENT_VALUES = 9;
+	
+	// Statistics of each resample: precision, recall and F-Measure of both submissions for each scoring type
+	private static final int PRECISION = 0;
+	private static final int RECALL = 1;
+	private static final int F_MEASURE = 2;
+	private static final String[] STATISTIC_LABELS = { "PRECISION", "RECALL", "F-MEASURE" };
+	private static final int STATISTICS = 18;
+	
+	private final BARR_Evaluator goldEvaluator;
+	private final int resamples;
+	private final long seed;
+	private final int threads;
+	
+	public BootstrapTest(BARR_Evaluator goldEvaluator, int resamples, long seed, int threads)
+	{
+		this.goldEvaluator = goldEvaluator;
+		this.resamples = resamples;
+		this.seed = seed;
+		this.threads = threads;
+	}
+	
+	/*
+	 * This method evaluates both submissions, runs the test and displays the results.
+	 * Returns false if one of the predictions files is not correct.
+	 */
+	public boolean start(String submissionA, String submissionB) throws IOException
+	{
+		System.out.println("Evaluating predictions against the Gold Standard...");
+		BARR_Evaluator evaluatorA = goldEvaluator.forPredictions(submissionA);
+		BARR_Evaluator evaluatorB = goldEvaluator.forPredictions(submissionB);
+		DocumentScoreVector scoresA = evaluatorA.evaluateDocuments();
+		DocumentScoreVector scoresB = evaluatorB.evaluateDocuments();
+		if (scoresA == null || scoresB == null)
+		{
+			return false;
+		}
+		
+		System.out.println("Resampling " + scoresA.size() + " documents " + resamples + " times...");
+		float[] documentValues = documentValues(scoresA, scoresB);
+		float[] observed = observe(evaluatorA.getResult(), evaluatorB.getResult());
+		float[] resampled = resample(documentValues);
+		printResults(submissionA, submissionB, scoresA.size(), observed, resampled);
+		return true;
+	}
+	
+	/*
+	 * This method stores the values needed to calculate the results of both submissions in one array,
+	 * with the values of each document in consecutive positions, so a resampled document is read at once
+	 */
+	public static float[] documentValues(DocumentScoreVector scoresA, DocumentScoreVector scoresB)
+	{
+		float[] values = new float[scoresA.size() * DOCUMENT_VALUES];
+		for (int document = 0; document < scoresA.size(); document++)
+		{
+			int position = document * DOCUMENT_VALUES;
+			for (ScoringType type : ScoringType.values())
+			{
+				values[position + CORRECT_A + type.ordinal()] = scoresA.getCorrect(type, document);
+				values[position + CORRECT_B + type.ordinal()] = scoresB.getCorrect(type, document);
+			}
+			values[position + PREDICTIONS_A] = scoresA.getPredictions(document);
+			values[position + PREDICTIONS_B] = scoresB.getPredictions(document);
+			values[position + ANNOTATIONS_GS] = scoresA.getAnnotationsGS(document);
+		}
+		return values;
+	}
+	
+	/*
+	 * This method returns the statistics of all the documents, as displayed by BARR_Evaluator
+	 */
+	private static float[] observe(EvaluationResult resultA, EvaluationResult resultB)
+	{
+		float[] statistics = new float[STATISTICS];
+		for (ScoringType type : ScoringType.values())
+		{
+			int submission = 0;
+			for (EvaluationResult result : new EvaluationResult[] { resultA, resultB })
+			{
+				int position = statistic(type, submission++, 0);
+				statistics[position + PRECISION] = result.getPrecision(type);
+				statistics[position + RECALL] = result.getRecall(type);
+				statistics[position + F_MEASURE] = result.getFMeasure(type);
+			}
+		}
+		return statistics;
+	}
+	
+	/*
+	 * This method resamples the documents, returning the statistics of each resample in consecutive positions
+	 */
+	public float[] resample(float[] documentValues)
+	{
+		float[] statistics = new float[resamples * STATISTICS];
+		
+		// One generator per block, split in block order
+		int blocks = (resamples + RESAMPLES_PER_TASK - 1) / RESAMPLES_PER_TASK;
+		SplittableRandom[] randoms = new SplittableRandom[blocks];
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int block = 0; block < blocks; block++)
+		{
+			randoms[block] = random.split();
+		}
+		
+		if (threads > 1)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				pool.invoke(new ResamplingTask(documentValues, statistics, randoms, 0, blocks));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else
+		{
+			// Blocks are resampled in this thread: a task computed outside a pool would fork its subtasks to the common pool
+			for (int block = 0; block < blocks; block++)
+			{
+				resampleBlock(documentValues, statistics, randoms[block], block);
+			}
+		}
+		return statistics;
+	}
+	
+	/*
+	 * This method calculates the resamples of one block
+	 */
+	private void resampleBlock(float[] documentValues, float[] statistics, SplittableRandom random, int block)
+	{
+		int documents = documentValues.length / DOCUMENT_VALUES;
+		double[] sums = new double[DOCUMENT_VALUES];
+		int last = Math.min(resamples, (block + 1) * RESAMPLES_PER_TASK);
+		for (int resample = block * RESAMPLES_PER_TASK; resample < last; resample++)
+		{
+			// The sums are kept in local variables, which is faster than adding to an array in the inner loop
+			double correctUltraStrictA = 0, correctStrictA = 0, correctFlexibleA = 0;
+			double correctUltraStrictB = 0, correctStrictB = 0, correctFlexibleB = 0;
+			double predictionsA = 0, predictionsB = 0, annotationsGS = 0;
+			for (int i = 0; i < documents; i++)
+			{
+				// A random document, taken from the high bits of a multiplication instead of a slower division (nextInt(documents))
+				int position = (int) (((random.nextInt() & 0xFFFFFFFFL) * documents) >>> 32) * DOCUMENT_VALUES;
+				correctUltraStrictA += documentValues[position + CORRECT_A];
+				correctStrictA += documentValues[position + CORRECT_A + 1];
+				correctFlexibleA += documentValues[position + CORRECT_A + 2];
+				correctUltraStrictB += documentValues[position + CORRECT_B];
+				correctStrictB += documentValues[position + CORRECT_B + 1];
+				correctFlexibleB += documentValues[position + CORRECT_B + 2];
+				predictionsA += documentValues[position + PREDICTIONS_A];
+				predictionsB += documentValues[position + PREDICTIONS_B];
+				annotationsGS += documentValues[position + ANNOTATIONS_GS];
+			}
+			sums[CORRECT_A] = correctUltraStrictA;
+			sums[CORRECT_A + 1] = correctStrictA;
+			sums[CORRECT_A + 2] = correctFlexibleA;
+			sums[CORRECT_B] = correctUltraStrictB;
+			sums[CORRECT_B + 1] = correctStrictB;
+			sums[CORRECT_B + 2] = correctFlexibleB;
+			sums[PREDICTIONS_A] = predictionsA;
+			sums[PREDICTIONS_B] = predictionsB;
+			sums[ANNOTATIONS_GS] = annotationsGS;
+			calculateStatistics(sums, statistics, resample * STATISTICS);
+		}
+	}
+	
+	/*
+	 * This method calculates precision, recall and F-Measure from the sums of the document values,
+	 * as in BARR_Evaluator's printFinalResults methods
+	 */
+	private static void calculateStatistics(double[] sums, float[] statistics, int position)
+	{
+		for (ScoringType type : ScoringType.values())
+		{
+			int typeValue = type.ordinal();
+			calculateStatistics(sums[CORRECT_A + typeValue], sums[PREDICTIONS_A], sums[ANNOTATIONS_GS], statistics, position + statistic(type, 0, 0));
+			calculateStatistics(sums[CORRECT_B + typeValue], sums[PREDICTIONS_B], sums[ANNOTATIONS_GS], statistics, position + statistic(type, 1, 0));
+		}
+	}
+	
+	private static void calculateStatistics(double correct, double predictions, double annotationsGS, float[] statistics, int position)
+	{
+		float precision = (float) correct / (float) predictions;
+		float recall = (float) correct / (float) annotationsGS;
+		statistics[position + PRECISION] = precision;
+		statistics[position + RECALL] = recall;
+		statistics[position + F_MEASURE] = (2 * precision * recall) / (precision + recall);
+	}
+	
+	/*
+	 * This method returns the position of a statistic of a submission (0 for A, 1 for B) in the statistics of a resample
+	 */
+	private static int statistic(ScoringType type, int submission, int statistic)
+	{
+		return (type.ordinal() * 2 + submission) * 3 + statistic;
+	}
+	
+	/*
+	 * This method displays the results of the test. For task 1 only ultra-strict is displayed,
+	 * since the 3 scoring types give the same results.
+	 */
+	private void printResults(String submissionA, String submissionB, int documents, float[] observed, float[] resampled)
+	{
+		System.out.println(); // empty line
+		System.out.println("PAIRED BOOTSTRAP TEST:");
+		System.out.println("---------------------------");
+		System.out.println("A = " + submissionA);
+		System.out.println("B = " + submissionB);
+		System.out.println("DOCUMENTS = " + documents);
+		System.out.println("RESAMPLES = " + resamples + " (SEED = " + seed + ")");
+		
+		for (ScoringType type : ScoringType.values())
+		{
+			if (goldEvaluator.getTaskNumber() == 1 && type != ScoringType.ULTRA_STRICT)
+			{
+				break;
+			}
+			System.out.println(); // empty line
+			System.out.println(type.getLabel() + " EVALUATION:");
+			System.out.println("---------------------------");
+			System.out.println("\tA\tA 95% CI\tB\tB 95% CI\tB - A\tB - A 95% CI\tP-VALUE");
+			for (int statistic = 0; statistic < STATISTIC_LABELS.length; statistic++)
+			{
+				int positionA = statistic(type, 0, statistic);
+				int positionB = statistic(type, 1, statistic);
+				float[] valuesA = new float[resamples];
+				float[] valuesB = new float[resamples];
+				float[] differences = new float[resamples];
+				for (int resample = 0; resample < resamples; resample++)
+				{
+					valuesA[resample] = resampled[resample * STATISTICS + positionA];
+					valuesB[resample] = resampled[resample * STATISTICS + positionB];
+					differences[resample] = valuesB[resample] - valuesA[resample];
+				}
+				float difference = observed[positionB] - observed[positionA];
+				
+				System.out.println(STATISTIC_LABELS[statistic]
+						+ "\t" + observed[positionA] + "\t" + confidenceInterval(valuesA)
+						+ "\t" + observed[positionB] + "\t" + confidenceInterval(valuesB)
+						+ "\t" + difference + "\t" + confidenceInterval(differences)
+						+ "\t" + pValue(differences, difference));
+			}
+		}
+		System.out.println("===========================");
+	}
+	
+	/*
+	 * This method returns the 95% confidence interval of the resampled values.
+	 * Resamples where the value is not a number (for example, without predictions) are not considered.
+	 */
+	private static String confidenceInterval(float[] values)
+	{
+		float[] sorted = finiteValues(values);
+		if (sorted.length == 0)
+		{
+			return "[NaN, NaN]";
+		}
+		Arrays.sort(sorted);
+		int lower = (int) Math.floor(0.025 * (sorted.length - 1));
+		int upper = (int) Math.ceil(0.975 * (sorted.length - 1));
+		return "[" + sorted[lower] + ", " + sorted[upper] + "]";
+	}
+	
+	/*
+	 * This method returns the two-sided p-value of the observed difference, with the resampled differences
+	 * shifted to be centered on 0 (null hypothesis). One is added to both counts, so the p-value is never 0.
+	 */
+	private static double pValue(float[] differences, float difference)
+	{
+		float[] finite = finiteValues(differences);
+		if (finite.length == 0 || Float.isNaN(difference))
+		{
+			return Double.NaN;
+		}
+		int extreme = 0;
+		for (float resampledDifference : finite)
+		{
+			if (Math.abs(resampledDifference - difference) >= Math.abs(difference))
+			{
+				extreme++;
+			}
+		}
+		return (extreme + 1) / (double) (finite.length + 1);
+	}
+	
+	private static float[] finiteValues(float[] values)
+	{
+		float[] finite = new float[values.length];
+		int count = 0;
+		for (float value : values)
+		{
+			if (!Float.isNaN(value) && !Float.isInfinite(value))
+			{
+				finite[count++] = value;
+			}
+		}
+		return Arrays.copyOf(finite, count);
+	}
+	
+	/*
+	 * This task calculates a range of blocks of resamples, splitting it until it has one block
+	 */
+	private class ResamplingTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final float[] documentValues;
+		private final float[] statistics;
+		private final SplittableRandom[] randoms;
+		private final int from;
+		private final int to;
+		
+		ResamplingTask(float[] documentValues, float[] statistics, SplittableRandom[] randoms, int from, int to)
+		{
+			this.documentValues = documentValues;
+			this.statistics = statistics;
+			this.randoms = randoms;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from <= 1)
+			{
+				for (int block = from; block < to; block++)
+				{
+					resampleBlock(documentValues, statistics, randoms[block], block);
+				}
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new ResamplingTask(documentValues, statistics, randoms, from, middle),
+						new ResamplingTask(documentValues, statistics, randoms, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+/*
+ * Kinds of the diagnostic events of an evaluation (see DiagnosticsSink)
+ */
+public enum DiagnosticKind
+{
+	CORRECT,					// correct for the 3 scoring types
+	CORRECT_NON_ULTRA_STRICT,	// correct for strict and flexible, wrong for ultra-strict
+	PARTIALLY_CORRECT,			// partially correct for flexible, wrong for strict and ultra-strict
+	WRONG,						// wrong prediction with the start offset of a gold annotation
+	MISSING,					// gold annotation without prediction
+	SPURIOUS;					// prediction without gold annotation
+}
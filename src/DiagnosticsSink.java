@@ -0,0 +1,306 @@
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * This class writes the diagnostic events of an evaluation (correct, wrong, missing... predictions, see DiagnosticKind)
+ * to a file, without slowing down the evaluation.
+ * The evaluation only records each event (kind, score, gold annotation and prediction) in a batch of its thread,
+ * stored column-wise in arrays. Full batches are handed to a background thread, which renders them and writes them
+ * to the file through a large buffer, then gives the batch back to be reused.
+ * Events are written in the order they are recorded by each thread, so with one thread they are in document order.
+ *
+ * Files are written in UTF-8. If the file name ends with ".jsonl", each event is written as a JSON object per line:
+ * 		{"kind":"PARTIALLY_CORRECT","documentId":"...","startOffset":123,"score":0.5,"prediction":"...","gold":"..."}
+ * Otherwise it is written as a TSV file, with the lines of the annotations as the last 2 columns (escaping their tabs as "\t"):
+ * 		KIND	DOCUMENT_ID	START_OFFSET	SCORE	PREDICTION	GOLD
+ * The score is the flexible score of the prediction. The prediction or gold annotation is empty (null in JSON)
+ * when the event does not have one.
+ */
+public class DiagnosticsSink implements Closeable
+{
+	private static final int EVENTS_PER_BATCH = 4096;
+	private static final int QUEUED_BATCHES = 64;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final DiagnosticKind[] KINDS = DiagnosticKind.values();
+	
+	/*
+	 * Events recorded by a thread, waiting to be written
+	 */
+	private static final class Batch
+	{
+		private final byte[] kinds = new byte[EVENTS_PER_BATCH];
+		private final float[] scores = new float[EVENTS_PER_BATCH];
+		private final Annotation[] gold = new Annotation[EVENTS_PER_BATCH];
+		private final Annotation[] predictions = new Annotation[EVENTS_PER_BATCH];
+		private int size;
+	}
+	
+	// A batch without events, which tells the writer thread to finish
+	private static final Batch END = new Batch();
+	
+	private final String file;
+	private final boolean json;
+	private final BlockingQueue<Batch> queue;
+	private final BlockingQueue<Batch> freeBatches;
+	
+	// Batch of each thread, all of them are kept to write their last events when the sink is closed
+	private final ThreadLocal<Batch> threadBatch;
+	private final List<Batch> currentBatches;
+	
+	private final Thread writer;
+	private volatile IOException error;
+	private long events;
+	
+	public DiagnosticsSink(String file) throws IOException
+	{
+		this.file = file;
+		this.json = file.endsWith(".jsonl");
+		this.queue = new ArrayBlockingQueue<Batch>(QUEUED_BATCHES);
+		this.freeBatches = new ArrayBlockingQueue<Batch>(QUEUED_BATCHES + 1);
+		this.currentBatches = new ArrayList<Batch>();
+		this.threadBatch = new ThreadLocal<Batch>()
+		{
+			@Override
+			protected Batch initialValue()
+			{
+				Batch batch = new Batch();
+				synchronized (currentBatches)
+				{
+					currentBatches.add(batch);
+				}
+				return batch;
+			}
+		};
+		
+		final Writer output = new BufferedWriter(Channels.newWriter(FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+		writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				write(output);
+			}
+		}, "diagnostics-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/*
+	 * This method records an event. Gold or prediction can be null, if the event does not have one.
+	 */
+	public void record(DiagnosticKind kind, Annotation gold, Annotation prediction, float score)
+	{
+		Batch batch = threadBatch.get();
+		int event = batch.size++;
+		batch.kinds[event] = (byte) kind.ordinal();
+		batch.scores[event] = score;
+		batch.gold[event] = gold;
+		batch.predictions[event] = prediction;
+		if (batch.size == EVENTS_PER_BATCH)
+		{
+			Batch next = freeBatches.poll();
+			if (next == null)
+			{
+				next = new Batch();
+			}
+			synchronized (currentBatches)
+			{
+				currentBatches.set(currentBatches.indexOf(batch), next);
+			}
+			threadBatch.set(next);
+			enqueue(batch);
+		}
+	}
+	
+	/*
+	 * This method writes the events which are not written yet and closes the file.
+	 * It must be called when no thread is recording events. Returns the number of events written.
+	 */
+	public long finish() throws IOException
+	{
+		synchronized (currentBatches)
+		{
+			for (Batch batch : currentBatches)
+			{
+				if (batch.size > 0)
+				{
+					enqueue(batch);
+				}
+			}
+			currentBatches.clear();
+		}
+		enqueue(END);
+		try
+		{
+			writer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Writing of diagnostics " + file + " interrupted", e);
+		}
+		if (error != null)
+		{
+			throw error;
+		}
+		return events;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (writer.isAlive())
+		{
+			finish();
+		}
+	}
+	
+	public String getFile()
+	{
+		return file;
+	}
+	
+	private void enqueue(Batch batch)
+	{
+		try
+		{
+			queue.put(batch);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/*
+	 * This method runs in the writer thread, writing batches until the end batch is received.
+	 * After an error, batches are still taken from the queue, so threads recording events are never blocked.
+	 */
+	private void write(Writer output)
+	{
+		StringBuilder line = new StringBuilder(256);
+		try
+		{
+			if (!json)
+			{
+				writeLine(output, line.append("#KIND\tDOCUMENT_ID\tSTART_OFFSET\tSCORE\tPREDICTION\tGOLD\n"));
+			}
+			Batch batch;
+			while ((batch = queue.take()) != END)
+			{
+				for (int event = 0; event < batch.size && error == null; event++)
+				{
+					line.setLength(0);
+					render(line, KINDS[batch.kinds[event]], batch.gold[event], batch.predictions[event], batch.scores[event]);
+					writeLine(output, line);
+				}
+				events += batch.size;
+				recycle(batch);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			error = new IOException("Writing of diagnostics " + file + " interrupted", e);
+		}
+		finally
+		{
+			try
+			{
+				output.close();
+			}
+			catch (IOException e)
+			{
+				if (error == null)
+				{
+					error = e;
+				}
+			}
+		}
+	}
+	
+	private void writeLine(Writer output, StringBuilder line)
+	{
+		try
+		{
+			output.append(line);
+		}
+		catch (IOException e)
+		{
+			error = e;
+		}
+	}
+	
+	private void recycle(Batch batch)
+	{
+		Arrays.fill(batch.gold, 0, batch.size, null);
+		Arrays.fill(batch.predictions, 0, batch.size, null);
+		batch.size = 0;
+		freeBatches.offer(batch);
+	}
+	
+	private void render(StringBuilder line, DiagnosticKind kind, Annotation gold, Annotation prediction, float score)
+	{
+		Annotation annotation = prediction != null ? prediction : gold;
+		String predictionLine = prediction == null ? null : prediction.getLine();
+		String goldLine = gold == null ? null : gold.getLine();
+		if (json)
+		{
+			line.append("{\"kind\":\"").append(kind.name()).append("\",\"documentId\":");
+			JsonText.append(line, annotation.getDocumentId());
+			line.append(",\"startOffset\":").append(annotation.getStartOffset());
+			line.append(",\"score\":").append(score);
+			line.append(",\"prediction\":");
+			JsonText.append(line, predictionLine);
+			line.append(",\"gold\":");
+			JsonText.append(line, goldLine);
+			line.append("}\n");
+		}
+		else
+		{
+			line.append(kind.name()).append('\t').append(annotation.getDocumentId()).append('\t').append(annotation.getStartOffset())
+					.append('\t').append(score).append('\t');
+			appendTsv(line, predictionLine);
+			line.append('\t');
+			appendTsv(line, goldLine);
+			line.append('\n');
+		}
+	}
+	
+	private static void appendTsv(StringBuilder line, String text)
+	{
+		if (text == null)
+		{
+			return;
+		}
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '\t')
+			{
+				line.append("\\t");
+			}
+			else if (c == '\\')
+			{
+				line.append("\\\\");
+			}
+			else
+			{
+				line.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+
+/*
+ * The score of the predictions of one document, for the 3 scoring types (ultra-strict, strict and flexible).
+ * Objects of this class are immutable, so documents can be scored in parallel and their scores added later, in document order (see BARR_Evaluator.addDocumentScore).
+ */
+public final class DocumentScore
+{
+	public static final DocumentScore EMPTY = new DocumentScore(0, 0, 0, 0, 0, 0, 0);
+	
+	private final float correctUltraStrict;
+	private final float correctStrict;
+	private final float correctFlexible;
+	private final int missing;
+	private final int wrongUltraStrict;
+	private final int wrongStrict;
+	private final int wrongFlexible;
+	
+	public DocumentScore(float correctUltraStrict, float correctStrict, float correctFlexible, int missing, 
+			int wrongUltraStrict, int wrongStrict, int wrongFlexible)
+	{
+		this.correctUltraStrict = correctUltraStrict;
+		this.correctStrict = correctStrict;
+		this.correctFlexible = correctFlexible;
+		this.missing = missing;
+		this.wrongUltraStrict = wrongUltraStrict;
+		this.wrongStrict = wrongStrict;
+		this.wrongFlexible = wrongFlexible;
+	}
+	
+	public float getCorrectUltraStrict()
+	{
+		return correctUltraStrict;
+	}
+	
+	public float getCorrectStrict()
+	{
+		return correctStrict;
+	}
+	
+	public float getCorrectFlexible()
+	{
+		return correctFlexible;
+	}
+	
+	public int getMissing()
+	{
+		return missing;
+	}
+	
+	public int getWrongUltraStrict()
+	{
+		return wrongUltraStrict;
+	}
+	
+	public int getWrongStrict()
+	{
+		return wrongStrict;
+	}
+	
+	public int getWrongFlexible()
+	{
+		return wrongFlexible;
+	}
+}
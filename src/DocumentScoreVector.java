@@ -0,0 +1,98 @@
+/*
+ * The scores of one submission for each document of the gold standard, for the 3 scoring types.
+ * Scores are stored in primitive arrays with one position per gold document (see AnnotationIndex.documentNumber),
+ * together with the number of predictions and gold annotations of the document, so the documents can be resampled
+ * many times without creating objects (see BootstrapTest).
+ * Gold documents without predictions keep an empty score.
+ */
+public final class DocumentScoreVector
+{
+	private final float[] correctUltraStrict;
+	private final float[] correctStrict;
+	private final float[] correctFlexible;
+	private final int[] missing;
+	private final int[] wrongUltraStrict;
+	private final int[] wrongStrict;
+	private final int[] wrongFlexible;
+	private final int[] predictions;
+	private final int[] annotationsGS;
+	
+	public DocumentScoreVector(int documents)
+	{
+		correctUltraStrict = new float[documents];
+		correctStrict = new float[documents];
+		correctFlexible = new float[documents];
+		missing = new int[documents];
+		wrongUltraStrict = new int[documents];
+		wrongStrict = new int[documents];
+		wrongFlexible = new int[documents];
+		predictions = new int[documents];
+		annotationsGS = new int[documents];
+	}
+	
+	/*
+	 * This method stores the score and number of predictions of a gold document
+	 */
+	public void setScore(int document, DocumentScore score, int documentPredictions)
+	{
+		correctUltraStrict[document] = score.getCorrectUltraStrict();
+		correctStrict[document] = score.getCorrectStrict();
+		correctFlexible[document] = score.getCorrectFlexible();
+		missing[document] = score.getMissing();
+		wrongUltraStrict[document] = score.getWrongUltraStrict();
+		wrongStrict[document] = score.getWrongStrict();
+		wrongFlexible[document] = score.getWrongFlexible();
+		predictions[document] = documentPredictions;
+	}
+	
+	public void setAnnotationsGS(int document, int documentAnnotations)
+	{
+		annotationsGS[document] = documentAnnotations;
+	}
+	
+	public int size()
+	{
+		return predictions.length;
+	}
+	
+	public float getCorrect(ScoringType type, int document)
+	{
+		switch (type)
+		{
+			case ULTRA_STRICT:
+				return correctUltraStrict[document];
+			case STRICT:
+				return correctStrict[document];
+			default:
+				return correctFlexible[document];
+		}
+	}
+	
+	public int getWrong(ScoringType type, int document)
+	{
+		switch (type)
+		{
+			case ULTRA_STRICT:
+				return wrongUltraStrict[document];
+			case STRICT:
+				return wrongStrict[document];
+			default:
+				return wrongFlexible[document];
+		}
+	}
+	
+	public int getMissing(int document)
+	{
+		return missing[document];
+	}
+	
+	public int getPredictions(int document)
+	{
+		return predictions[document];
+	}
+	
+	public int getAnnotationsGS(int document)
+	{
+		return annotationsGS[document];
+	}
+}
@@ -0,0 +1,326 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * This class gives the texts of the clinical cases of a directory (as training/txt), one file per document
+ * named <DocumentID>.txt, so the offsets of annotations can be checked against them (see OffsetVerifier).
+ *
+ * Text files are memory-mapped instead of read into strings, and only the texts of the checked spans are decoded.
+ * Offsets of annotations count characters, while a mapped file has bytes, so each document computes an index
+ * from characters to bytes the first time one of its spans is needed:
+ * 		- if the text is ASCII, or the charset has one byte per character, offsets are byte positions
+ * 		- in UTF-8, the index keeps the byte position of one character out of CHECKPOINT_INTERVAL, and a span is found
+ * 		  from the checkpoint before it, reading at most CHECKPOINT_INTERVAL characters
+ * 		- in any other charset, the whole text is decoded once
+ * Offsets count UTF-16 characters, as the offsets of Java strings.
+ *
+ * Files are read as UTF-8 by default, the charset of the texts of the corpus, whatever the default charset is:
+ * offsets count the characters of the texts, not of the annotations files.
+ * At most maxMappedDocuments documents stay mapped: the least recently used one is dropped when another one is mapped,
+ * and its mapping is released once it is garbage collected. This class is thread safe.
+ */
+public class DocumentStore
+{
+	public static final int DEFAULT_MAX_MAPPED_DOCUMENTS = 1024;
+	private static final String TEXT_EXTENSION = ".txt";
+	private static final int CHECKPOINT_INTERVAL = 64;
+	
+	/*
+	 * A mapped text file, with the index of its characters computed lazily
+	 */
+	public static final class SourceDocument
+	{
+		private final ByteBuffer bytes;		// read with absolute positions only, so it can be shared by threads
+		private final Charset charset;
+		
+		// Index from characters to bytes, computed by the first call of index()
+		private boolean indexed;
+		private boolean singleByte;
+		private int[] checkpointChars;
+		private int[] checkpointBytes;
+		private String decodedText;
+		private int length;
+		
+		private SourceDocument(ByteBuffer bytes, Charset charset)
+		{
+			this.bytes = bytes;
+			this.charset = charset;
+		}
+		
+		/*
+		 * This method returns the length of the text, in characters
+		 */
+		public int length()
+		{
+			index();
+			return length;
+		}
+		
+		/*
+		 * This method returns the text between two character offsets, or null if they are not inside the text
+		 * (or split a character which takes two UTF-16 characters)
+		 */
+		public String text(int start, int end)
+		{
+			index();
+			if (start < 0 || end < start || end > length)
+			{
+				return null;
+			}
+			if (decodedText != null)
+			{
+				return decodedText.substring(start, end);
+			}
+			if (singleByte)
+			{
+				return decode(start, end);
+			}
+			
+			int startByte = bytePosition(start, 0, 0);
+			int endByte = startByte == -1 ? -1 : bytePosition(end, start, startByte);
+			if (endByte == -1)
+			{
+				return null;
+			}
+			return decode(startByte, endByte);
+		}
+		
+		private String decode(int startByte, int endByte)
+		{
+			ByteBuffer span = bytes.duplicate();
+			span.limit(endByte);
+			span.position(startByte);
+			return charset.decode(span).toString();
+		}
+		
+		/*
+		 * This method returns the byte position of a character of a UTF-8 text, reading from the checkpoint before it,
+		 * or from the given character and byte position if they are closer. Returns -1 if the character is not found.
+		 */
+		private int bytePosition(int character, int fromChar, int fromByte)
+		{
+			int checkpoint = character / CHECKPOINT_INTERVAL;
+			if (checkpointChars[checkpoint] > fromChar)
+			{
+				fromChar = checkpointChars[checkpoint];
+				fromByte = checkpointBytes[checkpoint];
+			}
+			int size = bytes.limit();
+			while (fromChar < character && fromByte < size)
+			{
+				int length = sequenceLength(fromByte, size);
+				fromByte += length;
+				fromChar += length == 4 ? 2 : 1;
+			}
+			return fromChar == character ? fromByte : -1;
+		}
+		
+		/*
+		 * This method computes the index of the text. The text is only read once, by the first thread which needs it.
+		 */
+		private synchronized void index()
+		{
+			if (indexed)
+			{
+				return;
+			}
+			int size = bytes.limit();
+			int firstNonAscii = 0;
+			while (firstNonAscii < size && bytes.get(firstNonAscii) >= 0)
+			{
+				firstNonAscii++;
+			}
+			
+			if (firstNonAscii == size || charset.newEncoder().maxBytesPerChar() == 1)
+			{
+				singleByte = true;
+				length = size;
+			}
+			else if (charset.name().equals("UTF-8"))
+			{
+				indexUtf8(size);
+			}
+			else
+			{
+				decodedText = decode(0, size);
+				length = decodedText.length();
+			}
+			indexed = true;
+		}
+		
+		private void indexUtf8(int size)
+		{
+			// Each character takes at least one byte, so there are at most size / CHECKPOINT_INTERVAL + 1 checkpoints
+			checkpointChars = new int[size / CHECKPOINT_INTERVAL + 2];
+			checkpointBytes = new int[checkpointChars.length];
+			int checkpoints = 0;
+			int characters = 0;
+			int position = 0;
+			while (position < size)
+			{
+				// A character which takes two UTF-16 characters can go past a checkpoint, which then points to it
+				while (characters >= checkpoints * CHECKPOINT_INTERVAL)
+				{
+					checkpointChars[checkpoints] = characters;
+					checkpointBytes[checkpoints] = position;
+					checkpoints++;
+				}
+				int length = sequenceLength(position, size);
+				position += length;
+				characters += length == 4 ? 2 : 1;
+			}
+			while (characters >= checkpoints * CHECKPOINT_INTERVAL)
+			{
+				checkpointChars[checkpoints] = characters;
+				checkpointBytes[checkpoints] = position;
+				checkpoints++;
+			}
+			length = characters;
+		}
+		
+		/*
+		 * This method returns the number of bytes of the UTF-8 character at a byte position, reading up to the given limit.
+		 * Only a sequence of 4 bytes takes two UTF-16 characters. Malformed bytes count as one character each,
+		 * as the decoder replaces them: a sequence ends at its first byte which can not continue it, and an incomplete
+		 * sequence at the end of the text is one character.
+		 */
+		private int sequenceLength(int position, int limit)
+		{
+			int lead = bytes.get(position) & 0xFF;
+			int length;
+			int minSecond = 0x80;
+			int maxSecond = 0xBF;
+			if (lead >= 0xC2 && lead <= 0xDF)
+			{
+				length = 2;
+			}
+			else if (lead >= 0xE0 && lead <= 0xEF)
+			{
+				length = 3;
+				if (lead == 0xE0)
+				{
+					minSecond = 0xA0;	// overlong
+				}
+			}
+			else if (lead >= 0xF0 && lead <= 0xF4)
+			{
+				length = 4;
+				if (lead == 0xF0)
+				{
+					minSecond = 0x90;	// overlong
+				}
+				else if (lead == 0xF4)
+				{
+					maxSecond = 0x8F;	// above U+10FFFF
+				}
+			}
+			else
+			{
+				return 1;	// ASCII, continuation byte or invalid lead
+			}
+			
+			// Encoded surrogates (0xED 0xA0-0xBF) are not checked here: the decoder replaces their 3 bytes with one character
+			int valid = 1;
+			while (valid < length && position + valid < limit)
+			{
+				int next = bytes.get(position + valid) & 0xFF;
+				if (valid == 1 ? next < minSecond || next > maxSecond : (next & 0xC0) != 0x80)
+				{
+					break;
+				}
+				valid++;
+			}
+			return valid;
+		}
+	}
+	
+	private final File directory;
+	private final Charset charset;
+	private final Map<String, SourceDocument> documents;
+	
+	public DocumentStore(String directory)
+	{
+		this(directory, StandardCharsets.UTF_8, DEFAULT_MAX_MAPPED_DOCUMENTS);
+	}
+	
+	public DocumentStore(String directory, Charset charset, final int maxMappedDocuments)
+	{
+		this.directory = new File(directory);
+		this.charset = charset;
+		
+		// Documents in access order, so the eldest one is the least recently used
+		this.documents = new LinkedHashMap<String, SourceDocument>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SourceDocument> eldest)
+			{
+				return size() > maxMappedDocuments;
+			}
+		};
+	}
+	
+	/*
+	 * This method returns the text of a document, mapping its file if it is not mapped yet.
+	 * Returns null if the directory does not have a text file for the document.
+	 */
+	public SourceDocument getDocument(String documentId) throws IOException
+	{
+		synchronized (documents)
+		{
+			SourceDocument document = documents.get(documentId);
+			if (document != null)
+			{
+				return document;
+			}
+		}
+		
+		File file = new File(directory, documentId + TEXT_EXTENSION);
+		if (!file.isFile())
+		{
+			return null;
+		}
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		SourceDocument document;
+		try
+		{
+			// The mapping stays valid after the file is closed
+			document = new SourceDocument(input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length()), charset);
+		}
+		finally
+		{
+			input.close();
+		}
+		
+		synchronized (documents)
+		{
+			// Another thread may have mapped the same document meanwhile, keep only one of them
+			SourceDocument previous = documents.get(documentId);
+			if (previous != null)
+			{
+				return previous;
+			}
+			documents.put(documentId, document);
+		}
+		return document;
+	}
+	
+	public Charset getCharset()
+	{
+		return charset;
+	}
+	
+	public String getDirectory()
+	{
+		return directory.getPath();
+	}
+}
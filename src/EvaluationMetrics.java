@@ -0,0 +1,278 @@
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * This class collects performance metrics of an evaluation, to find out where the time of a slow run goes:
+ * 		- for each phase (checking the gold standard, loading stop words, checking predictions, evaluating...):
+ * 		  number of calls, wall time, bytes allocated by the thread which runs it, lines and bytes read, and lines per second.
+ * 		  Parsing lines includes the accent removal of their texts, so both are measured in the checking phases.
+ * 		- for the scoring of each document: a latency histogram, the number of gold annotations compared with a prediction,
+ * 		  and the number of definitions scored by token overlap (task 2).
+ * Phases are started and ended by the thread which runs them. Documents can be scored by many threads,
+ * so each thread records them in its own histogram, which are added when the metrics are displayed.
+ *
+ * Metrics are only collected if the evaluator has an EvaluationMetrics (see BARR_Evaluator.setMetrics),
+ * otherwise the evaluation only checks that it is null.
+ */
+public final class EvaluationMetrics
+{
+	// Document latencies are counted in buckets of powers of 2 nanoseconds: bucket b counts latencies below 2^b ns
+	private static final int LATENCY_BUCKETS = 64;
+	private static final double[] PERCENTILES = { 0.50, 0.90, 0.99 };
+	
+	/*
+	 * Metrics of a phase of the evaluation
+	 */
+	public static final class Phase
+	{
+		private final String name;
+		private int calls;
+		private long wallNanos;
+		private long allocatedBytes;
+		private long lines;
+		private long bytes;
+		
+		// Start of the current call
+		private long startTime;
+		private long startAllocated;
+		
+		private Phase(String name)
+		{
+			this.name = name;
+		}
+	}
+	
+	/*
+	 * Metrics of the documents scored by a thread
+	 */
+	private static final class DocumentMetrics
+	{
+		private final long[] latencies = new long[LATENCY_BUCKETS];
+		private long documents;
+		private long totalNanos;
+		private long maxNanos;
+		private long comparisons;
+		private long tokenOverlaps;
+		
+		private void add(DocumentMetrics other)
+		{
+			for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++)
+			{
+				latencies[bucket] += other.latencies[bucket];
+			}
+			documents += other.documents;
+			totalNanos += other.totalNanos;
+			maxNanos = Math.max(maxNanos, other.maxNanos);
+			comparisons += other.comparisons;
+			tokenOverlaps += other.tokenOverlaps;
+		}
+	}
+	
+	private final Map<String, Phase> phases;
+	private final com.sun.management.ThreadMXBean allocations;	// null if the JVM does not measure allocated bytes
+	
+	// Document metrics of each thread (all of them are kept to add them later)
+	private final List<DocumentMetrics> threadDocumentMetrics;
+	private final ThreadLocal<DocumentMetrics> documentMetrics;
+	
+	public EvaluationMetrics()
+	{
+		phases = new LinkedHashMap<String, Phase>();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+		{
+			allocations = (com.sun.management.ThreadMXBean) threads;
+			allocations.setThreadAllocatedMemoryEnabled(true);
+		}
+		else
+		{
+			allocations = null;
+		}
+		threadDocumentMetrics = new ArrayList<DocumentMetrics>();
+		documentMetrics = new ThreadLocal<DocumentMetrics>()
+		{
+			@Override
+			protected DocumentMetrics initialValue()
+			{
+				DocumentMetrics metrics = new DocumentMetrics();
+				synchronized (threadDocumentMetrics)
+				{
+					threadDocumentMetrics.add(metrics);
+				}
+				return metrics;
+			}
+		};
+	}
+	
+	/*
+	 * This method starts a call of a phase, which must be ended by the same thread with endPhase.
+	 * Phases are displayed in the order they are first started.
+	 */
+	public Phase startPhase(String name)
+	{
+		Phase phase = phases.get(name);
+		if (phase == null)
+		{
+			phase = new Phase(name);
+			phases.put(name, phase);
+		}
+		phase.startAllocated = allocatedBytes();
+		phase.startTime = System.nanoTime();
+		return phase;
+	}
+	
+	/*
+	 * This method ends the current call of a phase, adding the lines and bytes it read
+	 */
+	public void endPhase(Phase phase, long lines, long bytes)
+	{
+		phase.wallNanos += System.nanoTime() - phase.startTime;
+		phase.allocatedBytes += allocatedBytes() - phase.startAllocated;
+		phase.calls++;
+		phase.lines += lines;
+		phase.bytes += bytes;
+	}
+	
+	/*
+	 * This method records the scoring of a document: its latency, and the gold annotations compared with a prediction
+	 */
+	public void recordDocument(long nanos, int comparisons)
+	{
+		DocumentMetrics metrics = documentMetrics.get();
+		metrics.latencies[LATENCY_BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 1))]++;
+		metrics.documents++;
+		metrics.totalNanos += nanos;
+		metrics.maxNanos = Math.max(metrics.maxNanos, nanos);
+		metrics.comparisons += comparisons;
+	}
+	
+	/*
+	 * This method counts a definition scored by token overlap (task 2)
+	 */
+	public void recordTokenOverlap()
+	{
+		documentMetrics.get().tokenOverlaps++;
+	}
+	
+	private long allocatedBytes()
+	{
+		return allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	private DocumentMetrics documents()
+	{
+		DocumentMetrics total = new DocumentMetrics();
+		synchronized (threadDocumentMetrics)
+		{
+			for (DocumentMetrics metrics : threadDocumentMetrics)
+			{
+				total.add(metrics);
+			}
+		}
+		return total;
+	}
+	
+	/*
+	 * This method returns the upper bound of the latency bucket of a percentile of the documents, in nanoseconds
+	 */
+	private static long percentile(DocumentMetrics documents, double percentile)
+	{
+		long rank = (long) Math.ceil(percentile * documents.documents);
+		long count = 0;
+		for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++)
+		{
+			count += documents.latencies[bucket];
+			if (count >= rank)
+			{
+				return Math.min(1L << bucket, documents.maxNanos);
+			}
+		}
+		return documents.maxNanos;
+	}
+	
+	private static double linesPerSecond(Phase phase)
+	{
+		return phase.wallNanos == 0 ? 0 : phase.lines * 1e9 / phase.wallNanos;
+	}
+	
+	/*
+	 * This method displays the metrics as tables
+	 */
+	public void print(PrintStream out)
+	{
+		out.println(); // empty line
+		out.println("PHASE METRICS:");
+		out.println("---------------------------");
+		out.println("PHASE\tCALLS\tWALL MS\tALLOCATED MB\tLINES\tMB READ\tLINES/S");
+		for (Phase phase : phases.values())
+		{
+			out.println(String.format("%s\t%d\t%.1f\t%s\t%d\t%.1f\t%.0f", phase.name, phase.calls, phase.wallNanos / 1e6,
+					allocations == null ? "n/a" : String.format("%.1f", phase.allocatedBytes / 1048576.0),
+					phase.lines, phase.bytes / 1048576.0, linesPerSecond(phase)));
+		}
+		
+		DocumentMetrics documents = documents();
+		out.println(); // empty line
+		out.println("DOCUMENT SCORING METRICS:");
+		out.println("---------------------------");
+		out.println("DOCUMENTS\tMEAN US\tP50 US\tP90 US\tP99 US\tMAX US\tCOMPARISONS\tTOKEN OVERLAPS");
+		out.println(String.format("%d\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%d\t%d", documents.documents,
+				documents.documents == 0 ? 0 : documents.totalNanos / 1e3 / documents.documents,
+				percentile(documents, PERCENTILES[0]) / 1e3, percentile(documents, PERCENTILES[1]) / 1e3,
+				percentile(documents, PERCENTILES[2]) / 1e3, documents.maxNanos / 1e3, documents.comparisons, documents.tokenOverlaps));
+		out.println("===========================");
+	}
+	
+	/*
+	 * This method writes the metrics to a JSON file, with the counts of the non empty buckets of the latency histogram
+	 */
+	public void writeJson(String file) throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try
+		{
+			writer.write("{\"phases\":[");
+			boolean first = true;
+			for (Phase phase : phases.values())
+			{
+				writer.write((first ? "" : ",") + "\n\t{\"name\":\"" + phase.name + "\",\"calls\":" + phase.calls
+						+ ",\"wallNanos\":" + phase.wallNanos + ",\"allocatedBytes\":" + (allocations == null ? "null" : String.valueOf(phase.allocatedBytes))
+						+ ",\"lines\":" + phase.lines + ",\"bytesRead\":" + phase.bytes + ",\"linesPerSecond\":" + Math.round(linesPerSecond(phase)) + "}");
+				first = false;
+			}
+			
+			DocumentMetrics documents = documents();
+			writer.write("\n],\n\"documents\":{\"count\":" + documents.documents + ",\"totalNanos\":" + documents.totalNanos);
+			for (double percentile : PERCENTILES)
+			{
+				writer.write(",\"p" + Math.round(percentile * 100) + "Nanos\":" + percentile(documents, percentile));
+			}
+			writer.write(",\"maxNanos\":" + documents.maxNanos + ",\"comparisons\":" + documents.comparisons
+					+ ",\"tokenOverlaps\":" + documents.tokenOverlaps + ",\"latencyHistogram\":[");
+			first = true;
+			for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++)
+			{
+				if (documents.latencies[bucket] > 0)
+				{
+					writer.write((first ? "" : ",") + "{\"belowNanos\":" + (bucket == LATENCY_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket)
+							+ ",\"count\":" + documents.latencies[bucket] + "}");
+					first = false;
+				}
+			}
+			writer.write("]}}\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
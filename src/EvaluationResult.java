@@ -0,0 +1,82 @@
+
+/*
+ * The final results of the evaluation of a predictions file: correct, wrong and missing predictions
+ * for each scoring type, and the precision, recall and F-Measure obtained from them.
+ * Precision, recall and F-Measure are calculated as in BARR_Evaluator's printFinalResults methods.
+ */
+public final class EvaluationResult
+{
+	private final DocumentScore score;
+	private final int totalPredictions;
+	private final int totalAnnotationsGS;
+	
+	public EvaluationResult(DocumentScore score, int totalPredictions, int totalAnnotationsGS)
+	{
+		this.score = score;
+		this.totalPredictions = totalPredictions;
+		this.totalAnnotationsGS = totalAnnotationsGS;
+	}
+	
+	public float getCorrect(ScoringType type)
+	{
+		switch (type)
+		{
+			case ULTRA_STRICT:
+				return score.getCorrectUltraStrict();
+			case STRICT:
+				return score.getCorrectStrict();
+			default:
+				return score.getCorrectFlexible();
+		}
+	}
+	
+	public int getWrong(ScoringType type)
+	{
+		switch (type)
+		{
+			case ULTRA_STRICT:
+				return score.getWrongUltraStrict();
+			case STRICT:
+				return score.getWrongStrict();
+			default:
+				return score.getWrongFlexible();
+		}
+	}
+	
+	public int getMissing()
+	{
+		return score.getMissing();
+	}
+	
+	public int getTotalPredictions()
+	{
+		return totalPredictions;
+	}
+	
+	public int getTotalAnnotationsGS()
+	{
+		return totalAnnotationsGS;
+	}
+	
+	public DocumentScore getScore()
+	{
+		return score;
+	}
+	
+	public float getPrecision(ScoringType type)
+	{
+		return getCorrect(type) / (float) totalPredictions;
+	}
+	
+	public float getRecall(ScoringType type)
+	{
+		return getCorrect(type) / (float) totalAnnotationsGS;
+	}
+	
+	public float getFMeasure(ScoringType type)
+	{
+		float precision = getPrecision(type);
+		float recall = getRecall(type);
+		return (2 * precision * recall) / (precision + recall);
+	}
+}
@@ -0,0 +1,313 @@
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * This class runs the evaluator as a local HTTP service, so predictions can be evaluated many times
+ * without starting the JVM and checking the gold standard again in each evaluation.
+ * The gold standards and their stop words are loaded once, when the service starts (see BARR_Evaluator.loadGoldStandard),
+ * and each request is evaluated by an evaluator which shares them (see BARR_Evaluator.forPredictions).
+ *
+ * USAGE:
+ * 		java -cp BARR2_Evaluator.jar EvaluationServer <PORT> <GOLD_SETS_FILE> [OPTIONS]
+ *
+ * GOLD_SETS_FILE: file with one gold standard per line, with 4 columns separated by tabs:
+ * 				NAME	GOLD_ANNOTATIONS_FILE_PATH	TASK_NUMBER	STOP_WORDS_FILE
+ * 				Use "#" for comments. Gold standard snapshots (see GoldSnapshot) can also be used, and must not be modified
+ * 				while the service runs.
+ *
+ * OPTIONS:
+ * 		--threads N: number of requests evaluated at the same time, one per processor by default.
+ * 		--legacy-token-matching: as in BARR_Evaluator.
+ *
+ * The service only listens on the loopback address. Requests:
+ * 		GET  /                      names and tasks of the loaded gold standards
+ * 		POST /evaluate/<NAME>       evaluates the predictions file sent as request body against the gold standard NAME.
+ * 		                            The body is decoded with the default charset, as the files read by BARR_Evaluator.
+ * 		                            Add "?stream=true" to evaluate it while it is received, document by document,
+ * 		                            if predictions of the same document are on consecutive lines.
+ * The body is read line by line while it is received, so it is never stored whole in memory.
+ * Results are returned as JSON, with the precision, recall and F-Measure of each scoring type.
+ */
+public class EvaluationServer
+{
+	private final HttpServer server;
+	private final ExecutorService executor;
+	
+	// Evaluators with the gold standard loaded, by name
+	private final Map<String, BARR_Evaluator> goldSets;
+	
+	public EvaluationServer(int port, int threads) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+		goldSets = new LinkedHashMap<String, BARR_Evaluator>();
+		
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleRequest(exchange);
+			}
+		});
+	}
+	
+	public static void main(String[] args) throws IOException
+	{
+		String port = null;
+		String goldSetsFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean countRepeatedTokens = false;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--threads") && i + 1 < args.length)
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--legacy-token-matching"))
+				{
+					countRepeatedTokens = true;
+				}
+				else if (port == null)
+				{
+					port = args[i];
+				}
+				else if (goldSetsFile == null)
+				{
+					goldSetsFile = args[i];
+				}
+			}
+			if (port == null || goldSetsFile == null || threads < 1)
+			{
+				throw new NumberFormatException();
+			}
+			Integer.parseInt(port);
+		}
+		catch (NumberFormatException e)
+		{
+			System.err.println("USAGE:");
+			System.err.println("\tjava -cp BARR2_Evaluator.jar EvaluationServer <PORT> <GOLD_SETS_FILE> [--threads N] [--legacy-token-matching]");
+			System.err.println("GOLD_SETS_FILE: file with one gold standard per line: NAME, GOLD_STANDARD_FILE_PATH, TASK_NUMBER and STOP_WORDS_FILE,"
+						+ " separated by tabs.");
+			System.exit(1);
+		}
+		
+		EvaluationServer evaluationServer = new EvaluationServer(Integer.parseInt(port), threads);
+		BufferedReader reader = new BufferedReader(new FileReader(goldSetsFile));
+		String line = "";
+		int numLine = 0;
+		while ((line = reader.readLine()) != null)
+		{
+			numLine++;
+			if (line.trim().isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			String[] columns = line.split("\t");
+			if (columns.length != 4 || !columns[2].matches("[12]"))
+			{
+				System.err.println("ERROR IN LINE " + numLine + " OF " + goldSetsFile + " : " + line);
+				System.exit(1);
+			}
+			if (!evaluationServer.addGoldSet(columns[0], columns[1], Integer.parseInt(columns[2]), columns[3], countRepeatedTokens))
+			{
+				System.err.println("There are errors in the gold standard file " + columns[1] + ".");
+				System.exit(1);
+			}
+		}
+		reader.close();
+		
+		evaluationServer.start();
+		System.out.println("Evaluation service listening on http://localhost:" + port + "/");
+	}
+	
+	/*
+	 * This method checks and loads a gold standard, which can be used later in requests with the given name.
+	 * Returns false if the gold standard file is not correct.
+	 */
+	public boolean addGoldSet(String name, String goldStandard, int taskNumber, String stopWordsFile, boolean countRepeatedTokens) throws IOException
+	{
+		BARR_Evaluator evaluator = new BARR_Evaluator(goldStandard, null, taskNumber, stopWordsFile, false);
+		evaluator.setCountRepeatedTokens(countRepeatedTokens);
+		System.out.println("Loading gold standard " + name + " ...");
+		if (!evaluator.loadGoldStandard())
+		{
+			return false;
+		}
+		goldSets.put(name, evaluator);
+		return true;
+	}
+	
+	public void start()
+	{
+		server.start();
+	}
+	
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdown();
+	}
+	
+	private void handleRequest(HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			String path = exchange.getRequestURI().getPath();
+			String method = exchange.getRequestMethod();
+			if (path.equals("/") && method.equals("GET"))
+			{
+				sendJson(exchange, 200, goldSetsJson());
+			}
+			else if (path.startsWith("/evaluate/") && method.equals("POST"))
+			{
+				String name = path.substring("/evaluate/".length());
+				BARR_Evaluator goldEvaluator = goldSets.get(name);
+				if (goldEvaluator == null)
+				{
+					sendJson(exchange, 404, errorJson("Unknown gold standard: " + name));
+					return;
+				}
+				String stream = queryParameter(exchange.getRequestURI().getRawQuery(), "stream");
+				evaluate(exchange, name, goldEvaluator, "true".equals(stream));
+			}
+			else if (path.equals("/") || path.startsWith("/evaluate/"))
+			{
+				sendJson(exchange, 405, errorJson("Method not allowed: " + method));
+			}
+			else
+			{
+				sendJson(exchange, 404, errorJson("Not found: " + path));
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+	
+	/*
+	 * This method returns the value of a parameter of a query ("name=value" pairs separated by "&"),
+	 * or null if the parameter is not in the query. A parameter without "=" has an empty value.
+	 */
+	static String queryParameter(String query, String name)
+	{
+		if (query == null)
+		{
+			return null;
+		}
+		for (String parameter : query.split("&"))
+		{
+			int separator = parameter.indexOf('=');
+			String key = separator < 0 ? parameter : parameter.substring(0, separator);
+			if (key.equals(name))
+			{
+				return separator < 0 ? "" : parameter.substring(separator + 1);
+			}
+		}
+		return null;
+	}
+	
+	/*
+	 * This method evaluates the predictions of the request body, reading them while they are received
+	 */
+	private void evaluate(HttpExchange exchange, String name, BARR_Evaluator goldEvaluator, boolean streaming) throws IOException
+	{
+		BARR_Evaluator evaluator = goldEvaluator.forPredictions("request");
+		evaluator.setStreaming(streaming);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), Charset.defaultCharset()));
+		EvaluationResult result = evaluator.evaluateSubmission(reader);
+		if (result == null)
+		{
+			sendJson(exchange, 400, errorJson(evaluator.getError()));
+		}
+		else
+		{
+			sendJson(exchange, 200, resultJson(name, evaluator.getTaskNumber(), result));
+		}
+	}
+	
+	private String goldSetsJson()
+	{
+		StringBuilder json = new StringBuilder("{\"goldStandards\":[");
+		boolean first = true;
+		for (Map.Entry<String, BARR_Evaluator> goldSet : goldSets.entrySet())
+		{
+			if (!first)
+			{
+				json.append(",");
+			}
+			first = false;
+			json.append("{\"name\":").append(JsonText.quote(goldSet.getKey())).append(",\"task\":").append(goldSet.getValue().getTaskNumber()).append("}");
+		}
+		return json.append("]}").toString();
+	}
+	
+	/*
+	 * This method returns the results as JSON. Precision, recall and F-Measure are null when they are not a number
+	 * (for example, when there are no predictions), as JSON has no NaN value.
+	 */
+	private static String resultJson(String name, int taskNumber, EvaluationResult result)
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\"goldStandard\":").append(JsonText.quote(name));
+		json.append(",\"task\":").append(taskNumber);
+		json.append(",\"totalPredictions\":").append(result.getTotalPredictions());
+		json.append(",\"totalAnnotationsGS\":").append(result.getTotalAnnotationsGS());
+		json.append(",\"missing\":").append(result.getMissing());
+		for (ScoringType type : ScoringType.values())
+		{
+			json.append(",").append(JsonText.quote(type.getLabel())).append(":{");
+			json.append("\"correct\":").append(result.getCorrect(type));
+			json.append(",\"wrong\":").append(result.getWrong(type));
+			json.append(",\"precision\":").append(number(result.getPrecision(type)));
+			json.append(",\"recall\":").append(number(result.getRecall(type)));
+			json.append(",\"fMeasure\":").append(number(result.getFMeasure(type)));
+			json.append("}");
+		}
+		return json.append("}").toString();
+	}
+	
+	private static String errorJson(String error)
+	{
+		return "{\"error\":" + JsonText.quote(error) + "}";
+	}
+	
+	private static String number(float value)
+	{
+		if (Float.isNaN(value) || Float.isInfinite(value))
+		{
+			return "null";
+		}
+		return String.valueOf(value);
+	}
+	
+	private static void sendJson(HttpExchange exchange, int status, String json) throws IOException
+	{
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(body);
+		output.close();
+	}
+}
@@ -0,0 +1,176 @@
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * This class stores the state of an incremental evaluation: for each document of the predictions file,
+ * a hash of its prediction lines, the number of predictions counted for it and its score.
+ * In the next evaluation, only documents whose lines have a different hash need to be evaluated again.
+ *
+ * The state is saved in a text file with a key line, then one document per line, with tab separated columns:
+ * 		DocumentID	Hash	Predictions	CorrectUltraStrict	CorrectStrict	CorrectFlexible	Missing	WrongUltraStrict	WrongStrict	WrongFlexible
+ * The key describes the gold standard, task and options the scores were obtained with: a state with another key is not used.
+ * Float scores are written with Float.toString, which is read back by Float.parseFloat to the same value.
+ */
+public class EvaluationState
+{
+	private static final String KEY_PREFIX = "#BARR_EVALUATION_STATE\t";
+	
+	// FNV-1a 64 bits hash constants, the hash is calculated over the characters of the lines
+	public static final long INITIAL_HASH = 0xcbf29ce484222325L;
+	private static final long HASH_PRIME = 0x100000001b3L;
+	
+	private final String key;
+	private final Map<String, Long> hashes;
+	private final Map<String, Integer> predictions;
+	private final Map<String, DocumentScore> scores;
+	
+	public EvaluationState(String key)
+	{
+		this.key = key;
+		this.hashes = new LinkedHashMap<String, Long>();
+		this.predictions = new HashMap<String, Integer>();
+		this.scores = new HashMap<String, DocumentScore>();
+	}
+	
+	/*
+	 * This method returns the hash of the lines of a document after adding another line,
+	 * starting with INITIAL_HASH for the first line. The order of the lines changes the hash.
+	 */
+	public static long hash(long hash, String line)
+	{
+		for (int i = 0; i < line.length(); i++)
+		{
+			hash = (hash ^ line.charAt(i)) * HASH_PRIME;
+		}
+		return (hash ^ '\n') * HASH_PRIME;
+	}
+	
+	public void put(String documentId, long hash, int documentPredictions, DocumentScore score)
+	{
+		hashes.put(documentId, hash);
+		predictions.put(documentId, documentPredictions);
+		scores.put(documentId, score);
+	}
+	
+	/*
+	 * This method checks if a document was evaluated with lines of the same hash
+	 */
+	public boolean contains(String documentId, long hash)
+	{
+		Long stored = hashes.get(documentId);
+		return stored != null && stored == hash;
+	}
+	
+	public int getPredictions(String documentId)
+	{
+		return predictions.get(documentId);
+	}
+	
+	public DocumentScore getScore(String documentId)
+	{
+		return scores.get(documentId);
+	}
+	
+	public int size()
+	{
+		return hashes.size();
+	}
+	
+	/*
+	 * This method reads a state file. If the file does not exist, or it was saved with another key, the returned state is empty.
+	 */
+	public static EvaluationState read(String file, String key) throws IOException
+	{
+		EvaluationState state = new EvaluationState(key);
+		if (!new File(file).exists())
+		{
+			return state;
+		}
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try
+		{
+			if (!(KEY_PREFIX + key).equals(reader.readLine()))
+			{
+				return state;
+			}
+			String line = "";
+			int numLine = 1;
+			while ((line = reader.readLine()) != null)
+			{
+				numLine++;
+				String[] columns = line.split("\t");
+				if (columns.length != 10)
+				{
+					throw new IOException("Wrong line " + numLine + " in evaluation state " + file);
+				}
+				try
+				{
+					DocumentScore score = new DocumentScore(Float.parseFloat(columns[3]), Float.parseFloat(columns[4]), Float.parseFloat(columns[5]),
+							Integer.parseInt(columns[6]), Integer.parseInt(columns[7]), Integer.parseInt(columns[8]), Integer.parseInt(columns[9]));
+					state.put(columns[0], Long.parseUnsignedLong(columns[1], 16), Integer.parseInt(columns[2]), score);
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException("Wrong line " + numLine + " in evaluation state " + file, e);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return state;
+	}
+	
+	/*
+	 * This method saves the state. It is written to a temporary file first, which then replaces the state atomically,
+	 * so an interrupted write does not leave a broken or missing state.
+	 */
+	public void write(String file) throws IOException
+	{
+		File target = new File(file);
+		File temporary = new File(target.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8));
+		try
+		{
+			writer.write(KEY_PREFIX + key + "\n");
+			for (Map.Entry<String, Long> document : hashes.entrySet())
+			{
+				String documentId = document.getKey();
+				DocumentScore score = scores.get(documentId);
+				writer.write(documentId + "\t" + Long.toHexString(document.getValue()) + "\t" + predictions.get(documentId)
+						+ "\t" + score.getCorrectUltraStrict() + "\t" + score.getCorrectStrict() + "\t" + score.getCorrectFlexible()
+						+ "\t" + score.getMissing() + "\t" + score.getWrongUltraStrict() + "\t" + score.getWrongStrict()
+						+ "\t" + score.getWrongFlexible() + "\n");
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		try
+		{
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			// The file system can not replace the state atomically, it is replaced in two steps
+			Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+
+/*
+ * The results of each fold of a k-fold evaluation (see Folds), for the 3 scoring types, and their averages:
+ * 		- micro-average: precision, recall and F-Measure of the predictions and gold annotations of all the folds together,
+ * 		  which are the usual results if every gold document is in a fold
+ * 		- macro-average: mean of the precision, recall and F-Measure of the folds
+ * 		- variance: sample variance of the precision, recall and F-Measure of the folds (0 with one fold)
+ * The results of the folds are added from the scores of their gold documents (see DocumentScoreVector),
+ * so the documents are scored once for all the folds.
+ */
+public final class FoldResults
+{
+	// Results averaged over the folds
+	public static final int PRECISION = 0;
+	public static final int RECALL = 1;
+	public static final int F_MEASURE = 2;
+	
+	private final Folds folds;
+	private final int[] predictions;
+	private final int[] annotationsGS;
+	private final double[][] correct;	// scoring type, fold
+	
+	public FoldResults(Folds folds, DocumentScoreVector documentScores)
+	{
+		this.folds = folds;
+		this.predictions = new int[folds.size()];
+		this.annotationsGS = new int[folds.size()];
+		this.correct = new double[ScoringType.values().length][folds.size()];
+		for (int document = 0; document < documentScores.size(); document++)
+		{
+			int fold = folds.getFold(document);
+			if (fold == -1)
+			{
+				continue;
+			}
+			predictions[fold] += documentScores.getPredictions(document);
+			annotationsGS[fold] += documentScores.getAnnotationsGS(document);
+			for (ScoringType type : ScoringType.values())
+			{
+				correct[type.ordinal()][fold] += documentScores.getCorrect(type, document);
+			}
+		}
+	}
+	
+	public int getPredictions(int fold)
+	{
+		return predictions[fold];
+	}
+	
+	public int getAnnotationsGS(int fold)
+	{
+		return annotationsGS[fold];
+	}
+	
+	public float getCorrect(ScoringType type, int fold)
+	{
+		return (float) correct[type.ordinal()][fold];
+	}
+	
+	public float getPrecision(ScoringType type, int fold)
+	{
+		return getCorrect(type, fold) / (float) predictions[fold];
+	}
+	
+	public float getRecall(ScoringType type, int fold)
+	{
+		return getCorrect(type, fold) / (float) annotationsGS[fold];
+	}
+	
+	public float getFMeasure(ScoringType type, int fold)
+	{
+		return fMeasure(getPrecision(type, fold), getRecall(type, fold));
+	}
+	
+	/*
+	 * These methods return the micro-averaged results, of all the folds together
+	 */
+	public float getMicroPrecision(ScoringType type)
+	{
+		return (float) sum(correct[type.ordinal()]) / (float) sum(predictions);
+	}
+	
+	public float getMicroRecall(ScoringType type)
+	{
+		return (float) sum(correct[type.ordinal()]) / (float) sum(annotationsGS);
+	}
+	
+	public float getMicroFMeasure(ScoringType type)
+	{
+		return fMeasure(getMicroPrecision(type), getMicroRecall(type));
+	}
+	
+	/*
+	 * These methods return the mean and the sample variance of a result of the folds (PRECISION, RECALL or F_MEASURE)
+	 */
+	public float getMacroAverage(ScoringType type, int result)
+	{
+		double mean = 0;
+		for (int fold = 0; fold < folds.size(); fold++)
+		{
+			mean += result(type, fold, result);
+		}
+		return (float) (mean / folds.size());
+	}
+	
+	public float getVariance(ScoringType type, int result)
+	{
+		if (folds.size() < 2)
+		{
+			return 0;
+		}
+		double mean = getMacroAverage(type, result);
+		double variance = 0;
+		for (int fold = 0; fold < folds.size(); fold++)
+		{
+			double difference = result(type, fold, result) - mean;
+			variance += difference * difference;
+		}
+		return (float) (variance / (folds.size() - 1));
+	}
+	
+	private float result(ScoringType type, int fold, int result)
+	{
+		switch (result)
+		{
+			case PRECISION:
+				return getPrecision(type, fold);
+			case RECALL:
+				return getRecall(type, fold);
+			default:
+				return getFMeasure(type, fold);
+		}
+	}
+	
+	private static float fMeasure(float precision, float recall)
+	{
+		return (2 * precision * recall) / (precision + recall);
+	}
+	
+	private static double sum(double[] values)
+	{
+		double sum = 0;
+		for (double value : values)
+		{
+			sum += value;
+		}
+		return sum;
+	}
+	
+	private static long sum(int[] values)
+	{
+		long sum = 0;
+		for (int value : values)
+		{
+			sum += value;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,169 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * This class assigns the documents to the folds of a k-fold (or per-split) evaluation, whose results are displayed
+ * separately and averaged (see FoldResults). All the folds are evaluated in the same evaluation: each document is scored once,
+ * and its score is added to the results of its fold.
+ * Documents are assigned to folds:
+ * 		- by the hash of their ID, for k folds numbered from 0 to k - 1. String.hashCode is the same in any JVM,
+ * 		  so a document is always in the same fold.
+ * 		- or by an assignment file, with a document ID and a fold label per line ("S1130-01082009000400014-1	train").
+ * 		  Folds are numbered in the order they are found, and documents which are not in the file are not in any fold.
+ * The fold of each gold document is found once, before the evaluation (see prepareGold).
+ */
+public class Folds
+{
+	private final Map<String, Integer> assignment;	// document ID -> fold, null if folds are assigned by hash
+	private final List<String> labels;
+	
+	// Fold of each gold document (-1 if it is not in any fold), and gold documents of each fold
+	private int[] documentFolds;
+	private int[] documents;
+	private int unassignedDocuments;
+	
+	/*
+	 * This constructor assigns the documents to the given number of folds by the hash of their ID
+	 */
+	public Folds(int folds)
+	{
+		this.assignment = null;
+		this.labels = new ArrayList<String>();
+		for (int fold = 0; fold < folds; fold++)
+		{
+			labels.add(String.valueOf(fold));
+		}
+	}
+	
+	/*
+	 * This constructor creates folds without documents, which are assigned by readAssignment
+	 */
+	public Folds()
+	{
+		this.assignment = new HashMap<String, Integer>();
+		this.labels = new ArrayList<String>();
+	}
+	
+	/*
+	 * This method reads the folds of the documents from an assignment file.
+	 * Document IDs may have the ".txt" extension, as in the metadata files.
+	 * Returns false if a line does not have 2 columns, a document is assigned twice, or there are no folds.
+	 */
+	public boolean readAssignment(String file) throws IOException
+	{
+		Map<String, Integer> folds = new HashMap<String, Integer>();
+		BufferedReader reader = BackgroundGzipInputStream.openReader(file);
+		try
+		{
+			String line = "";
+			int numLine = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				numLine++;
+				if (line.startsWith("#") || line.isEmpty())
+				{
+					continue;
+				}
+				
+				String[] columns = line.split("\t");
+				String documentId = columns[0];
+				if (documentId.endsWith(".txt"))
+				{
+					documentId = documentId.substring(0, documentId.length() - 4);
+				}
+				if (columns.length != 2 || columns[1].trim().isEmpty() || assignment.containsKey(documentId))
+				{
+					System.err.println("ERROR IN LINE " + numLine + " OF " + file + " : " + line);
+					return false;
+				}
+				
+				String label = columns[1].trim();
+				Integer fold = folds.get(label);
+				if (fold == null)
+				{
+					fold = labels.size();
+					labels.add(label);
+					folds.put(label, fold);
+				}
+				assignment.put(documentId, fold);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		if (labels.isEmpty())
+		{
+			System.err.println("THERE ARE NO FOLDS IN " + file);
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * This method finds the fold of each gold document, and counts the documents of each fold
+	 */
+	public void prepareGold(AnnotationIndex goldAnnotations)
+	{
+		documentFolds = new int[goldAnnotations.documentCount()];
+		documents = new int[labels.size()];
+		unassignedDocuments = 0;
+		for (int document = 0; document < documentFolds.length; document++)
+		{
+			int fold = fold(goldAnnotations.documentId(document));
+			documentFolds[document] = fold;
+			if (fold == -1)
+			{
+				unassignedDocuments++;
+			}
+			else
+			{
+				documents[fold]++;
+			}
+		}
+	}
+	
+	private int fold(String documentId)
+	{
+		if (assignment == null)
+		{
+			int hash = documentId.hashCode();
+			return Math.floorMod(hash ^ (hash >>> 16), labels.size());
+		}
+		Integer fold = assignment.get(documentId);
+		return fold == null ? -1 : fold;
+	}
+	
+	/*
+	 * This method returns the fold of a gold document, or -1 if it is not in any fold
+	 */
+	public int getFold(int goldDocument)
+	{
+		return documentFolds[goldDocument];
+	}
+	
+	public int size()
+	{
+		return labels.size();
+	}
+	
+	public String getLabel(int fold)
+	{
+		return labels.get(fold);
+	}
+	
+	public int getDocuments(int fold)
+	{
+		return documents[fold];
+	}
+	
+	public int getUnassignedDocuments()
+	{
+		return unassignedDocuments;
+	}
+}
@@ -0,0 +1,380 @@
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/*
+ * This class writes and reads gold standard snapshots: binary files with the gold annotations already checked and parsed,
+ * and the stop words, so they can be loaded without reading and checking the gold standard file again.
+ * 
+ * Snapshots are read through a memory-mapped buffer. Their format is:
+ * 		- magic "BARRGOLD" (8 bytes), format version (int), task number (int), 
+ * 		  CRC32 checksum of the content (long), content length (int)
+ * 		- content: number of annotations in the gold standard file, including repeated ones (int),
+ * 		  stop words (int count, then strings), structure of the annotation index (see AnnotationIndex.writeStructure),
+ * 		  position of the record of each entry of the index (int count, then ints), 
+ * 		  records (int length, then the fields of each annotation, in entry order)
+ * Strings are stored as their UTF-8 length (int) followed by their UTF-8 bytes.
+ *
+ * Reading a snapshot does not parse its annotations: the index is read with bulk copies of its arrays, and each annotation
+ * is created from its record the first time it is needed (in task 2, with its gold tokens already prepared).
+ * The checksum is checked when a snapshot is read, so a damaged snapshot is rejected before any of its annotations is used.
+ * Snapshots are mapped in one buffer, so they can not be larger than 2 GB.
+ */
+public class GoldSnapshot
+{
+	private static final byte[] MAGIC = "BARRGOLD".getBytes(StandardCharsets.US_ASCII);
+	private static final int FORMAT_VERSION = 3;
+	private static final int HEADER_LENGTH = MAGIC.length + 4 + 4 + 8 + 4;
+	private static final int CHECKSUM_POSITION = MAGIC.length + 4 + 4;
+	
+	/*
+	 * This method checks if a file is a gold standard snapshot, looking at its first bytes
+	 */
+	public static boolean isSnapshot(String file) throws IOException
+	{
+		FileInputStream input = new FileInputStream(file);
+		try
+		{
+			byte[] magic = new byte[MAGIC.length];
+			int read = 0;
+			while (read < magic.length)
+			{
+				int count = input.read(magic, read, magic.length - read);
+				if (count == -1)
+				{
+					return false;
+				}
+				read += count;
+			}
+			return Arrays.equals(magic, MAGIC);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	/*
+	 * This method writes a snapshot with the given gold annotations and stop words.
+	 * The content is written to the file as it is built, updating its checksum, and the header is completed at the end.
+	 */
+	public static void write(String file, int taskNumber, AnnotationIndex goldAnnotations, int totalAnnotationsGS, 
+			Map<String, Integer> stopWordsMap) throws IOException
+	{
+		FileOutputStream fileOutput = new FileOutputStream(file);
+		CRC32 checksum = new CRC32();
+		long contentLength;
+		try
+		{
+			// Checksum and content length are not known yet, they are written at the end
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.put(MAGIC).putInt(FORMAT_VERSION).putInt(taskNumber);
+			fileOutput.write(header.array());
+			
+			DataOutputStream content = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOutput, checksum)));
+			content.writeInt(totalAnnotationsGS);
+			
+			content.writeInt(stopWordsMap.size());
+			for (String stopWord : stopWordsMap.keySet())
+			{
+				writeString(content, stopWord);
+			}
+			
+			goldAnnotations.writeStructure(content);
+			
+			// Records are written in entry order, after their positions: a first pass measures them one by one
+			ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(recordBytes);
+			content.writeInt(goldAnnotations.size());
+			long recordsLength = 0;
+			for (int entry = 0; entry < goldAnnotations.size(); entry++)
+			{
+				content.writeInt((int) recordsLength);
+				recordBytes.reset();
+				writeAnnotation(record, goldAnnotations.annotation(entry));
+				recordsLength += recordBytes.size();
+				if (recordsLength > Integer.MAX_VALUE)
+				{
+					throw new IOException("snapshot is larger than 2 GB");
+				}
+			}
+			content.writeInt((int) recordsLength);
+			for (int entry = 0; entry < goldAnnotations.size(); entry++)
+			{
+				writeAnnotation(content, goldAnnotations.annotation(entry));
+			}
+			content.flush();
+			contentLength = fileOutput.getChannel().position() - HEADER_LENGTH;
+		}
+		finally
+		{
+			fileOutput.close();
+		}
+		
+		// Snapshots are mapped in one buffer when they are read (see mapContent)
+		if (contentLength > Integer.MAX_VALUE - HEADER_LENGTH)
+		{
+			new File(file).delete();
+			throw new IOException("snapshot is larger than 2 GB");
+		}
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try
+		{
+			output.seek(CHECKSUM_POSITION);
+			output.writeLong(checksum.getValue());
+			output.writeInt((int) contentLength);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	/*
+	 * This method reads a snapshot, storing its annotations and stop words in the given structures.
+	 * The annotations are created from the snapshot when they are needed, so the file must not be modified meanwhile.
+	 * The checksum of the whole content is checked first, unless verify is false.
+	 * Returns the number of annotations of the original gold standard file.
+	 * Throws an IOException if the file is not a valid snapshot for the task, or its content is damaged.
+	 */
+	public static int read(String file, int taskNumber, AnnotationIndex goldAnnotations, Map<String, Integer> stopWordsMap, 
+			boolean verify) throws IOException
+	{
+		MappedByteBuffer buffer = mapContent(file, taskNumber);
+		ByteBuffer content = buffer.slice();
+		if (verify)
+		{
+			CRC32 checksum = new CRC32();
+			checksum.update(content.duplicate());
+			if (checksum.getValue() != buffer.getLong(CHECKSUM_POSITION))
+			{
+				throw new IOException("wrong snapshot checksum");
+			}
+		}
+		try
+		{
+			int totalAnnotationsGS = content.getInt();
+			
+			int stopWordCount = content.getInt();
+			for (int i = 0; i < stopWordCount; i++)
+			{
+				stopWordsMap.put(readString(content), 1);
+			}
+			StopWordSet stopWords = new StopWordSet(stopWordsMap.keySet());
+			
+			SnapshotRecords records = new SnapshotRecords(taskNumber, stopWords);
+			goldAnnotations.readStructure(content, records);
+			records.read(content);
+			if (records.size() != goldAnnotations.size() || content.hasRemaining())
+			{
+				goldAnnotations.clear();
+				throw new IOException("wrong snapshot content");
+			}
+			return totalAnnotationsGS;
+		}
+		catch (RuntimeException e)
+		{
+			// Sizes out of the buffer, or negative
+			goldAnnotations.clear();
+			throw new IOException("wrong snapshot content", e);
+		}
+	}
+	
+	/*
+	 * This method maps a snapshot and checks its header, returning the buffer at the start of the content
+	 */
+	private static MappedByteBuffer mapContent(String file, int taskNumber) throws IOException
+	{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("wrong snapshot size");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC))
+			{
+				throw new IOException("file is not a gold standard snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != FORMAT_VERSION)
+			{
+				throw new IOException("snapshot format version " + version + " is not supported, compile the snapshot again");
+			}
+			int snapshotTask = buffer.getInt();
+			if (snapshotTask != taskNumber)
+			{
+				throw new IOException("snapshot was compiled for task " + snapshotTask);
+			}
+			buffer.getLong();	// checksum, see read
+			int contentLength = buffer.getInt();
+			if (contentLength != buffer.remaining())
+			{
+				throw new IOException("snapshot is truncated");
+			}
+			return buffer;
+		}
+		finally
+		{
+			// The mapping stays valid after the file is closed
+			randomAccessFile.close();
+		}
+	}
+	
+	/*
+	 * The records of the annotations of a snapshot, which create each annotation the first time it is needed
+	 */
+	private static class SnapshotRecords implements AnnotationIndex.AnnotationSource
+	{
+		private final int taskNumber;
+		private final StopWordSet stopWords;
+		private int[] positions;
+		private ByteBuffer records;		// read with duplicates only, so it can be shared by threads
+		
+		SnapshotRecords(int taskNumber, StopWordSet stopWords)
+		{
+			this.taskNumber = taskNumber;
+			this.stopWords = stopWords;
+		}
+		
+		void read(ByteBuffer content)
+		{
+			positions = new int[content.getInt()];
+			content.asIntBuffer().get(positions);
+			content.position(content.position() + positions.length * 4);
+			int length = content.getInt();
+			records = content.slice();
+			records.limit(length);
+			content.position(content.position() + length);
+		}
+		
+		int size()
+		{
+			return positions.length;
+		}
+		
+		@Override
+		public Annotation createAnnotation(int entry)
+		{
+			ByteBuffer record = records.duplicate();
+			record.position(positions[entry]);
+			Annotation annotation = readAnnotation(record, taskNumber);
+			if (annotation instanceof AbbreviationAnnotation)
+			{
+				((AbbreviationAnnotation) annotation).prepareGoldTokens(stopWords);
+			}
+			return annotation;
+		}
+	}
+	
+	private static void writeAnnotation(DataOutputStream output, Annotation annotation) throws IOException
+	{
+		writeString(output, annotation.getDocumentId());
+		if (annotation instanceof RelationAnnotation)
+		{
+			RelationAnnotation relation = (RelationAnnotation) annotation;
+			output.writeByte(relation.getMentionAType().ordinal());
+			output.writeInt(relation.getMentionAStart());
+			writeString(output, relation.getMentionAText());
+			output.writeByte(relation.getRelationType().ordinal());
+			output.writeByte(relation.getMentionBType().ordinal());
+			output.writeInt(relation.getMentionBStart());
+			writeOffsetText(output, relation.getMentionBStartText());
+			output.writeInt(relation.getMentionBEnd());
+			writeOffsetText(output, relation.getMentionBEndText());
+			writeString(output, relation.getMentionBText());
+		}
+		else
+		{
+			AbbreviationAnnotation abbreviation = (AbbreviationAnnotation) annotation;
+			output.writeInt(abbreviation.getStartOffset());
+			output.writeInt(abbreviation.getEndOffset());
+			writeOffsetText(output, abbreviation.getEndOffsetText());
+			writeString(output, abbreviation.getAbbreviation());
+			writeString(output, abbreviation.getDefinition());
+			writeString(output, abbreviation.getLemmatizedDefinition());
+		}
+		writeString(output, annotation.getLine());
+	}
+	
+	private static Annotation readAnnotation(ByteBuffer input, int taskNumber)
+	{
+		String documentId = readString(input);
+		if (taskNumber == 1)
+		{
+			MentionType mentionAType = MentionType.values()[input.get()];
+			int mentionAStart = input.getInt();
+			String mentionAText = readString(input);
+			RelationType relationType = RelationType.values()[input.get()];
+			MentionType mentionBType = MentionType.values()[input.get()];
+			int mentionBStart = input.getInt();
+			String mentionBStartText = readOffsetText(input);
+			int mentionBEnd = input.getInt();
+			String mentionBEndText = readOffsetText(input);
+			String mentionBText = readString(input);
+			String line = readString(input);
+			return new RelationAnnotation(documentId, mentionAType, mentionAStart, mentionAText, relationType, 
+					mentionBType, mentionBStart, mentionBStartText, mentionBEnd, mentionBEndText, mentionBText, Float.POSITIVE_INFINITY, line);
+		}
+		else
+		{
+			int start = input.getInt();
+			int end = input.getInt();
+			String endText = readOffsetText(input);
+			String abbreviation = readString(input);
+			String definition = readString(input);
+			String lemmatizedDefinition = readString(input);
+			String line = readString(input);
+			return new AbbreviationAnnotation(documentId, start, end, endText, abbreviation, definition, lemmatizedDefinition, 
+					Float.POSITIVE_INFINITY, line);
+		}
+	}
+	
+	/*
+	 * Offset texts are only kept if they are not plain numbers (see AnnotationParser.offsetText), which are never empty,
+	 * so a missing text is stored as an empty string
+	 */
+	private static void writeOffsetText(DataOutputStream output, String offsetText) throws IOException
+	{
+		writeString(output, offsetText == null ? "" : offsetText);
+	}
+	
+	private static String readOffsetText(ByteBuffer input)
+	{
+		String offsetText = readString(input);
+		return offsetText.isEmpty() ? null : offsetText;
+	}
+	
+	static void writeString(DataOutputStream output, String text) throws IOException
+	{
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+	
+	static String readString(ByteBuffer input)
+	{
+		byte[] bytes = new byte[input.getInt()];
+		input.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * This class writes texts as JSON strings, for the JSON outputs of DiagnosticsSink and EvaluationServer.
+ * Quotes, backslashes and control characters are escaped, and a null text is written as null.
+ */
+final class JsonText
+{
+	private JsonText()
+	{
+	}
+	
+	static void append(StringBuilder json, String text)
+	{
+		if (text == null)
+		{
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				json.append('\\').append(c);
+			}
+			else if (c == '\t')
+			{
+				json.append("\\t");
+			}
+			else if (c < 0x20)
+			{
+				json.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+	
+	static String quote(String text)
+	{
+		StringBuilder json = new StringBuilder();
+		append(json, text);
+		return json.toString();
+	}
+}
@@ -0,0 +1,59 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/*
+ * This class reads annotation lines from a reader, checking each line with AnnotationParser.
+ * Used for predictions which are not read from a file, like the requests of EvaluationServer.
+ */
+public class LineAnnotationReader implements AnnotationReader
+{
+	private final BufferedReader reader;
+	private final AnnotationParser parser;
+	private String line;
+	private int numLine;
+	
+	public LineAnnotationReader(BufferedReader reader, AnnotationParser parser)
+	{
+		this.reader = reader;
+		this.parser = parser;
+	}
+	
+	@Override
+	public boolean nextLine() throws IOException
+	{
+		while ((line = reader.readLine()) != null)
+		{
+			numLine++;
+			if (!line.startsWith("#"))	// Avoid first line
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public Annotation parse()
+	{
+		return parser.parse(line);
+	}
+	
+	@Override
+	public int getLineNumber()
+	{
+		return numLine;
+	}
+	
+	@Override
+	public String getLine()
+	{
+		return line;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+}
@@ -0,0 +1,582 @@
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * This class reads annotation lines from a memory-mapped file, without decoding whole lines.
+ * Line ends and tabs are found directly on the bytes of the file, offsets are parsed from the bytes,
+ * and mention types are compared with the bytes. Only the document ID and the texts compared by the evaluation
+ * are decoded, and the bytes of the line are kept to decode it only if the annotation is displayed.
+ *
+ * Files are mapped in windows of WINDOW_SIZE bytes, so files of any size can be read.
+ * Lines can also be read from a stream (as a decompressed file, see BackgroundGzipInputStream): its bytes are then
+ * copied to a reused window of STREAM_WINDOW_SIZE bytes, keeping the unfinished last line at its start.
+ * The checks are the same as in AnnotationParser, and they give the same results:
+ * 		- lines end with "\n", "\r" or "\r\n", as in BufferedReader.readLine
+ * 		- trailing empty columns are ignored, as in String.split
+ * 		- numbers which are not just digits are parsed with Integer.parseInt
+ * Bytes are decoded with the default charset, as FileReader does. This is only possible for charsets where tabs,
+ * line ends and ASCII characters are always single bytes (see supports).
+ */
+public class MappedAnnotationReader implements AnnotationReader
+{
+	private static final int WINDOW_SIZE = 64 << 20;
+	private static final int STREAM_WINDOW_SIZE = 1 << 20;
+	private static final MentionType[] MENTION_TYPES = MentionType.values();
+	private static final RelationType[] RELATION_TYPES = RelationType.values();
+	
+	// Constants to find tabs and line ends in 8 bytes at a time
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long TABS = '\t' * ONES;
+	private static final long LINE_FEEDS = '\n' * ONES;
+	private static final long CARRIAGE_RETURNS = '\r' * ONES;
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final InputStream input;	// or the stream which is read, with file and channel null
+	private final int windowSize;
+	private long fileSize;				// for a stream, unknown (Long.MAX_VALUE) until its end is read
+	private final int taskNumber;
+	private final boolean confidenceColumn;
+	private final Charset charset;
+	
+	// Mapped window of the file, or the window copied from the stream
+	private ByteBuffer window;
+	private byte[] streamWindow;
+	private long windowStart;
+	private int windowLength;
+	
+	// Current line: its bounds in the window and the bounds of its columns, and the start of the next line in the file
+	private int lineFrom;
+	private int lineTo;
+	private int numLine;
+	private int[] fieldFrom;
+	private int[] fieldTo;
+	private int fieldCount;
+	private long nextLineStart;
+	
+	// Buffer to decode columns, and the last document ID, reused while next lines have the same one
+	private byte[] buffer;
+	private byte[] documentIdBytes;
+	private String documentId;
+	
+	public MappedAnnotationReader(String file, AnnotationParser parser) throws IOException
+	{
+		this(file, 0, -1, parser);
+	}
+	
+	/*
+	 * This constructor reads the lines of a part of a file, from the start of a line to the end of a line
+	 * (or of the file, with end -1). Line numbers start at 1 at the start of the part (see ParallelAnnotationChecker).
+	 */
+	public MappedAnnotationReader(String file, long start, long end, AnnotationParser parser) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.input = null;
+		this.windowSize = WINDOW_SIZE;
+		this.fileSize = end == -1 ? channel.size() : end;
+		this.nextLineStart = start;
+		this.taskNumber = parser.getTaskNumber();
+		this.confidenceColumn = parser.hasConfidenceColumn();
+		this.charset = Charset.defaultCharset();
+		
+		fieldFrom = new int[16];
+		fieldTo = new int[16];
+		buffer = new byte[256];
+		documentIdBytes = new byte[0];
+	}
+	
+	/*
+	 * This constructor reads the lines of a stream, which is closed with this reader
+	 */
+	public MappedAnnotationReader(InputStream input, AnnotationParser parser)
+	{
+		this.file = null;
+		this.channel = null;
+		this.input = input;
+		this.windowSize = STREAM_WINDOW_SIZE;
+		this.fileSize = Long.MAX_VALUE;
+		this.taskNumber = parser.getTaskNumber();
+		this.confidenceColumn = parser.hasConfidenceColumn();
+		this.charset = Charset.defaultCharset();
+		
+		fieldFrom = new int[16];
+		fieldTo = new int[16];
+		buffer = new byte[256];
+		documentIdBytes = new byte[0];
+	}
+	
+	/*
+	 * This method checks if files in a charset can be read by this class
+	 */
+	public static boolean supports(Charset charset)
+	{
+		String name = charset.name();
+		return name.equals("UTF-8") || name.equals("US-ASCII") || name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+	}
+	
+	@Override
+	public boolean nextLine() throws IOException
+	{
+		while (hasMoreLines())
+		{
+			findLine();
+			numLine++;
+			if (lineFrom == lineTo || window.get(lineFrom) != '#')	// Avoid first line
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/*
+	 * This method checks if there are more bytes after the current line. For a stream, they are read if needed.
+	 */
+	private boolean hasMoreLines() throws IOException
+	{
+		if (input != null && nextLineStart < fileSize && (window == null || nextLineStart >= windowStart + windowLength))
+		{
+			map(nextLineStart, windowSize);
+		}
+		return nextLineStart < fileSize;
+	}
+	
+	/*
+	 * This method finds the bounds of the line which starts at nextLineStart, and the bounds of its columns,
+	 * in a single pass over its bytes. A new window is mapped if the line is not whole in the current one (including its "\r\n" end).
+	 */
+	private void findLine() throws IOException
+	{
+		if (window == null || nextLineStart >= windowStart + windowLength)
+		{
+			map(nextLineStart, windowSize);
+		}
+		while (true)
+		{
+			int from = (int) (nextLineStart - windowStart);
+			int end = from;
+			int fieldStart = from;
+			fieldCount = 0;
+			while (end < windowLength)
+			{
+				// Read 8 bytes at a time, jumping to the first tab or line end among them
+				if (end + 8 <= windowLength)
+				{
+					long separators = separators(window.getLong(end));
+					if (separators == 0)
+					{
+						end += 8;
+						continue;
+					}
+					end += Long.numberOfTrailingZeros(separators) >>> 3;
+				}
+				byte b = window.get(end);
+				if (b == '\t')
+				{
+					addField(fieldStart, end);
+					fieldStart = end + 1;
+				}
+				else if (b == '\n' || b == '\r')
+				{
+					break;
+				}
+				end++;
+			}
+			
+			if (end >= windowLength - 1 && windowStart + windowLength < fileSize)
+			{
+				// Map a window starting at the line, larger than the current one if the line is longer
+				if (from == 0 && windowLength == Integer.MAX_VALUE)
+				{
+					throw new IOException("Line " + (numLine + 1) + " is too long");
+				}
+				map(nextLineStart, from == 0 ? 2L * windowLength : windowSize);
+				continue;
+			}
+			
+			lineFrom = from;
+			lineTo = end;
+			addField(fieldStart, end);
+			removeTrailingEmptyFields();
+			nextLineStart = windowStart + end;
+			if (end < windowLength)
+			{
+				nextLineStart += window.get(end) == '\r' && end + 1 < windowLength && window.get(end + 1) == '\n' ? 2 : 1;
+			}
+			return;
+		}
+	}
+	
+	/*
+	 * This method returns the high bit of the bytes which are tabs or line ends, among 8 bytes read in little-endian order.
+	 * Only the lowest bit is exact: bytes after a separator may be marked too, so only the first separator is used.
+	 */
+	private static long separators(long bytes)
+	{
+		return zeroBytes(bytes ^ TABS) | zeroBytes(bytes ^ LINE_FEEDS) | zeroBytes(bytes ^ CARRIAGE_RETURNS);
+	}
+	
+	private static long zeroBytes(long bytes)
+	{
+		return (bytes - ONES) & ~bytes & HIGH_BITS;
+	}
+	
+	private void map(long start, long length) throws IOException
+	{
+		if (input != null)
+		{
+			copyWindow(start, (int) Math.min(length, Integer.MAX_VALUE));
+			return;
+		}
+		length = Math.min(Math.min(length, fileSize - start), Integer.MAX_VALUE);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+		windowLength = (int) length;
+	}
+	
+	/*
+	 * This method reads a window of the stream which starts at the given position, which must be in the current window
+	 * or at its end. The bytes of the current window from that position are moved to the start of the window.
+	 * If the stream ends before the window is full, its size is known.
+	 */
+	private void copyWindow(long start, int length) throws IOException
+	{
+		int kept = window == null ? 0 : (int) (windowStart + windowLength - start);
+		if (streamWindow == null || streamWindow.length < length)
+		{
+			byte[] larger = new byte[length];
+			if (kept > 0)
+			{
+				System.arraycopy(streamWindow, (int) (start - windowStart), larger, 0, kept);
+			}
+			streamWindow = larger;
+		}
+		else if (kept > 0)
+		{
+			System.arraycopy(streamWindow, (int) (start - windowStart), streamWindow, 0, kept);
+		}
+		
+		int filled = kept;
+		while (filled < length)
+		{
+			int read = input.read(streamWindow, filled, length - filled);
+			if (read == -1)
+			{
+				fileSize = start + filled;
+				break;
+			}
+			filled += read;
+		}
+		window = ByteBuffer.wrap(streamWindow, 0, filled).order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+		windowLength = filled;
+	}
+	
+	/*
+	 * As String.split, trailing empty columns are ignored, but an empty line has one column
+	 */
+	private void removeTrailingEmptyFields()
+	{
+		while (fieldCount > 0 && fieldFrom[fieldCount - 1] == fieldTo[fieldCount - 1])
+		{
+			fieldCount--;
+		}
+		if (lineFrom == lineTo)
+		{
+			fieldCount = 1;
+		}
+	}
+	
+	private void addField(int from, int to)
+	{
+		if (fieldCount == fieldFrom.length)
+		{
+			fieldFrom = Arrays.copyOf(fieldFrom, fieldCount * 2);
+			fieldTo = Arrays.copyOf(fieldTo, fieldCount * 2);
+		}
+		fieldFrom[fieldCount] = from;
+		fieldTo[fieldCount] = to;
+		fieldCount++;
+	}
+	
+	@Override
+	public Annotation parse()
+	{
+		if (taskNumber == 1)
+		{
+			return parseShortLongTaskLine();
+		}
+		else
+		{
+			return parseAbbreviationTaskLine();
+		}
+	}
+	
+	private AbbreviationAnnotation parseAbbreviationTaskLine()
+	{
+		// first, check if the tabular file has 6 columns (or 7, with the confidence)
+		if (fieldCount != 6 && !(confidenceColumn && fieldCount == 7))
+		{
+			return null;
+		}
+		
+		// check if the element in the first column looks like the document ID
+		String documentID = decodeDocumentId();
+		if (!AnnotationParser.isDocumentId(documentID))
+		{
+			return null;
+		}
+		
+		// then, check if the second and third columns contain numerical content
+		int start;
+		int end;
+		float confidence = Float.POSITIVE_INFINITY;
+		try
+		{
+			start = parseInt(1);
+			end = parseInt(2);
+			if (fieldCount == 7)
+			{
+				confidence = AnnotationParser.parseConfidence(decode(6));
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		
+		return new AbbreviationAnnotation(documentID, start, end, offsetText(2), fold(3), fold(4), fold(5), confidence, lineBytes());
+	}
+	
+	private RelationAnnotation parseShortLongTaskLine()
+	{
+		// first, check if the tabular file has 9 columns (or 10, with the confidence)
+		if (fieldCount != 9 && !(confidenceColumn && fieldCount == 10))
+		{
+			return null;
+		}
+		
+		// check if the element in the first column looks like the document ID
+		String documentID = decodeDocumentId();
+		if (!AnnotationParser.isDocumentId(documentID))
+		{
+			return null;
+		}
+		
+		// then, check if the third, seventh and eighth columns contain numerical content
+		int startA;
+		int startB;
+		int endB;
+		float confidence = Float.POSITIVE_INFINITY;
+		try
+		{
+			startA = parseInt(2);
+			startB = parseInt(6);
+			endB = parseInt(7);
+			if (fieldCount == 10)
+			{
+				confidence = AnnotationParser.parseConfidence(decode(9));
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		
+		// finally, check if mention types (columns 2 and 6) and relation types (column 5) are correct
+		MentionType mentionAType = mentionType(1);
+		MentionType mentionBType = mentionType(5);
+		if (mentionAType == null || mentionBType == null)
+		{
+			return null;
+		}
+		RelationType relationType = relationType(4);
+		if (relationType == null)
+		{
+			return null;
+		}
+		
+		return new RelationAnnotation(documentID, mentionAType, startA, fold(3), relationType,
+				mentionBType, startB, offsetText(6), endB, offsetText(7), fold(8), confidence, lineBytes());
+	}
+	
+	/*
+	 * This method returns the document ID of the current line, decoding it only if it changed from the previous line
+	 */
+	private String decodeDocumentId()
+	{
+		int length = fieldTo[0] - fieldFrom[0];
+		boolean same = documentId != null && length == documentIdBytes.length;
+		for (int i = 0; same && i < length; i++)
+		{
+			same = window.get(fieldFrom[0] + i) == documentIdBytes[i];
+		}
+		if (!same)
+		{
+			documentIdBytes = new byte[length];
+			boolean ascii = copy(fieldFrom[0], documentIdBytes, length);
+			documentId = new String(documentIdBytes, ascii ? StandardCharsets.US_ASCII : charset);
+		}
+		return documentId;
+	}
+	
+	/*
+	 * This method parses a number column. Columns which are not just digits are parsed with Integer.parseInt,
+	 * to accept and reject the same numbers.
+	 */
+	private int parseInt(int field)
+	{
+		int from = fieldFrom[field];
+		int to = fieldTo[field];
+		if (to - from == 0 || to - from > 9)
+		{
+			return Integer.parseInt(decode(field));
+		}
+		int value = 0;
+		for (int i = from; i < to; i++)
+		{
+			byte b = window.get(i);
+			if (b < '0' || b > '9')
+			{
+				return Integer.parseInt(decode(field));
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+	
+	/*
+	 * This method returns the text of a parsed offset field, if it is not the plain number of its offset
+	 * (see AnnotationParser.offsetText). Plain numbers are found without decoding the field.
+	 */
+	private String offsetText(int field)
+	{
+		byte first = window.get(fieldFrom[field]);
+		if ((first >= '1' && first <= '9') || fieldTo[field] - fieldFrom[field] == 1)
+		{
+			return null;
+		}
+		return AnnotationParser.offsetText(decode(field));
+	}
+	
+	private MentionType mentionType(int field)
+	{
+		for (MentionType type : MENTION_TYPES)
+		{
+			if (fieldEquals(field, type.name()))
+			{
+				return type;
+			}
+		}
+		return null;
+	}
+	
+	private RelationType relationType(int field)
+	{
+		for (RelationType type : RELATION_TYPES)
+		{
+			if (fieldEquals(field, type.getLabel()))
+			{
+				return type;
+			}
+		}
+		return null;
+	}
+	
+	/*
+	 * This method compares a column with an ASCII text
+	 */
+	private boolean fieldEquals(int field, String text)
+	{
+		int from = fieldFrom[field];
+		if (fieldTo[field] - from != text.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (window.get(from + i) != text.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * This method decodes a text column and removes its accents, as it is compared in the evaluation
+	 */
+	private String fold(int field)
+	{
+		return AnnotationParser.eliminoAcentos(decode(field));
+	}
+	
+	private String decode(int field)
+	{
+		int length = fieldTo[field] - fieldFrom[field];
+		if (length > buffer.length)
+		{
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		}
+		boolean ascii = copy(fieldFrom[field], buffer, length);
+		return new String(buffer, 0, length, ascii ? StandardCharsets.US_ASCII : charset);
+	}
+	
+	private byte[] lineBytes()
+	{
+		byte[] line = new byte[lineTo - lineFrom];
+		copy(lineFrom, line, line.length);
+		return line;
+	}
+	
+	/*
+	 * This method copies bytes of the window, returning true if all of them are ASCII characters
+	 */
+	private boolean copy(int from, byte[] target, int length)
+	{
+		int bits = 0;
+		for (int i = 0; i < length; i++)
+		{
+			byte b = window.get(from + i);
+			target[i] = b;
+			bits |= b;
+		}
+		return bits >= 0;
+	}
+	
+	@Override
+	public int getLineNumber()
+	{
+		return numLine;
+	}
+	
+	@Override
+	public String getLine()
+	{
+		return new String(lineBytes(), charset);
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		if (input != null)
+		{
+			input.close();
+		}
+		else
+		{
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+
+/*
+ * Mention types of the abbreviation-definition (short-long forms) relations task
+ */
+public enum MentionType
+{
+	SHORT_FORM,
+	LONG_FORM,
+	NESTED;
+	
+	/*
+	 * This method returns the mention type written in an annotation file, or null if it is not a valid type
+	 */
+	public static MentionType parse(String name)
+	{
+		for (MentionType type : values())
+		{
+			if (type.name().equals(name))
+			{
+				return type;
+			}
+		}
+		return null;
+	}
+}
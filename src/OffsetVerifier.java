@@ -0,0 +1,288 @@
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * This class checks that the spans of the annotations of a gold standard or predictions file cover their texts
+ * in the clinical cases (see DocumentStore). Wrong offsets are not format errors, so they would only show up
+ * as predictions which do not match: this check finds them without a gold standard.
+ *
+ * The spans checked are mention A (A_Start and the length of its text) and mention B (B_Start, B_End) in task 1,
+ * and the abbreviation (start and end offsets) in task 2. A span is right if the text of the document between its offsets,
+ * without accents, is the text of the annotation (which is stored without accents).
+ * Mention A has no end offset, and removing accents can change the length of its text, so if the span does not match,
+ * it is also right if the text from its start offset matches with any end up to twice the length of the mention.
+ * Annotations files are read with the default charset, so if it is not the charset of the texts, the span is also compared
+ * as its bytes would be read from an annotations file.
+ *
+ * Documents are checked in parallel, with the annotations of each one checked together, so each text is mapped
+ * and indexed once even if it is dropped from the store later. Results are kept per document and added in document order,
+ * so the displayed spans are the same with any number of threads.
+ */
+public class OffsetVerifier
+{
+	private static final int DOCUMENTS_PER_TASK = 16;
+	
+	private final DocumentStore store;
+	private final int threads;
+	
+	// Results of the last verification, per document
+	private AnnotationIndex annotations;
+	private int[] documentSpans;
+	private int[] documentWrongSpans;
+	private boolean[] documentWithoutText;
+	private List<List<String>> documentErrors;
+	
+	// Results of the last verification
+	private long spans;
+	private long wrongSpans;
+	private int documentsWithoutText;
+	private List<String> errors;
+	
+	public OffsetVerifier(DocumentStore store, int threads)
+	{
+		this.store = store;
+		this.threads = threads;
+	}
+	
+	/*
+	 * This method checks the spans of all the annotations, returning true if all of them are right.
+	 * Annotations of documents without text are not checked.
+	 */
+	public boolean verify(AnnotationIndex annotations) throws IOException
+	{
+		this.annotations = annotations;
+		int documents = annotations.documentCount();
+		documentSpans = new int[documents];
+		documentWrongSpans = new int[documents];
+		documentWithoutText = new boolean[documents];
+		documentErrors = new ArrayList<List<String>>(documents);
+		for (int document = 0; document < documents; document++)
+		{
+			documentErrors.add(null);
+		}
+		
+		if (threads > 1)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				pool.invoke(new VerificationTask(0, documents));
+			}
+			catch (RuntimeException e)
+			{
+				// The exception can be rethrown by the pool wrapped again, find the error of the document
+				for (Throwable cause = e; cause != null; cause = cause.getCause())
+				{
+					if (cause instanceof IOException)
+					{
+						throw (IOException) cause;
+					}
+				}
+				throw e;
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else
+		{
+			for (int document = 0; document < documents; document++)
+			{
+				verifyDocument(document);
+			}
+		}
+		
+		// Add the results in document order, keeping the first errors
+		spans = 0;
+		wrongSpans = 0;
+		documentsWithoutText = 0;
+		errors = new ArrayList<String>();
+		for (int document = 0; document < documents; document++)
+		{
+			spans += documentSpans[document];
+			wrongSpans += documentWrongSpans[document];
+			if (documentWithoutText[document])
+			{
+				documentsWithoutText++;
+			}
+			List<String> messages = documentErrors.get(document);
+			for (int i = 0; messages != null && i < messages.size() && errors.size() < ValidationReport.MAX_REPORTED_ERRORS; i++)
+			{
+				errors.add(messages.get(i));
+			}
+		}
+		this.annotations = null;
+		documentErrors = null;
+		return wrongSpans == 0;
+	}
+	
+	/*
+	 * This method checks the spans of the annotations of a document
+	 */
+	private void verifyDocument(int document) throws IOException
+	{
+		String documentId = annotations.documentId(document);
+		DocumentStore.SourceDocument text = store.getDocument(documentId);
+		if (text == null)
+		{
+			documentWithoutText[document] = true;
+			addError(document, "NO TEXT FOR DOCUMENT " + documentId);
+			return;
+		}
+		
+		for (int entry = annotations.firstEntry(document); entry != -1; entry = annotations.nextEntry(entry))
+		{
+			Annotation annotation = annotations.annotation(entry);
+			if (annotation instanceof RelationAnnotation)
+			{
+				RelationAnnotation relation = (RelationAnnotation) annotation;
+				verifySpan(document, text, relation.getMentionAStart(), relation.getMentionAEnd(), relation.getMentionAText(), false, annotation);
+				verifySpan(document, text, relation.getMentionBStart(), relation.getMentionBEnd(), relation.getMentionBText(), true, annotation);
+			}
+			else
+			{
+				AbbreviationAnnotation abbreviation = (AbbreviationAnnotation) annotation;
+				verifySpan(document, text, abbreviation.getStartOffset(), abbreviation.getEndOffset(), abbreviation.getAbbreviation(), true, annotation);
+			}
+		}
+	}
+	
+	private void verifySpan(int document, DocumentStore.SourceDocument text, int start, int end, String expected, boolean knownEnd, 
+			Annotation annotation)
+	{
+		documentSpans[document]++;
+		String span = text.text(start, end);
+		if (span == null && (knownEnd || text.text(start, start) == null))
+		{
+			documentWrongSpans[document]++;
+			addError(document, "OFFSETS " + start + "-" + end + " OUT OF THE TEXT (LENGTH " + text.length() + ") : " + annotation.getLine());
+		}
+		else if ((span == null || !matches(span, expected)) && (knownEnd || !matchesAnyEnd(text, start, expected)))
+		{
+			documentWrongSpans[document]++;
+			addError(document, "OFFSETS " + start + "-" + end + " COVER \"" + span + "\" : " + annotation.getLine());
+		}
+	}
+	
+	private boolean matchesAnyEnd(DocumentStore.SourceDocument text, int start, String expected)
+	{
+		int maxEnd = (int) Math.min(text.length(), start + 2L * expected.length());
+		for (int end = start + 1; end <= maxEnd; end++)
+		{
+			String span = text.text(start, end);
+			if (span != null && matches(span, expected))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean matches(String span, String expected)
+	{
+		if (AccentFolder.fold(span).equals(expected))
+		{
+			return true;
+		}
+		Charset charset = store.getCharset();
+		return !charset.equals(Charset.defaultCharset()) 
+				&& AccentFolder.fold(new String(span.getBytes(charset), Charset.defaultCharset())).equals(expected);
+	}
+	
+	/*
+	 * This method keeps an error of a document, if it can still be displayed
+	 */
+	private void addError(int document, String message)
+	{
+		List<String> messages = documentErrors.get(document);
+		if (messages == null)
+		{
+			messages = new ArrayList<String>();
+			documentErrors.set(document, messages);
+		}
+		if (messages.size() < ValidationReport.MAX_REPORTED_ERRORS)
+		{
+			messages.add(message);
+		}
+	}
+	
+	public long getSpans()
+	{
+		return spans;
+	}
+	
+	public long getWrongSpans()
+	{
+		return wrongSpans;
+	}
+	
+	public int getDocumentsWithoutText()
+	{
+		return documentsWithoutText;
+	}
+	
+	/*
+	 * This method displays the kept errors of the last verification, one per line, and how many there are
+	 */
+	public void printErrors(PrintStream out)
+	{
+		for (String error : errors)
+		{
+			out.println(error);
+		}
+		long total = wrongSpans + documentsWithoutText;
+		if (total > errors.size())
+		{
+			out.println(total + " ERRORS, ONLY THE FIRST " + errors.size() + " ARE DISPLAYED");
+		}
+	}
+	
+	/*
+	 * This task checks a range of documents, splitting it until ranges are small enough
+	 */
+	private class VerificationTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int from;
+		private final int to;
+		
+		VerificationTask(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from <= DOCUMENTS_PER_TASK)
+			{
+				try
+				{
+					for (int document = from; document < to; document++)
+					{
+						verifyDocument(document);
+					}
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new VerificationTask(from, middle), new VerificationTask(middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * This class checks and parses an annotations file in parallel, collecting all its format errors (see ValidationReport).
+ * The file is split into chunks which start and end at line ends, and each chunk is read by its own
+ * MappedAnnotationReader. The annotations of each chunk are kept in order, so they can be loaded afterwards
+ * in the same order as if the file was read by one reader.
+ * Line numbers of each chunk start at 1, and are moved by the lines of the previous chunks once all of them are read.
+ */
+public class ParallelAnnotationChecker
+{
+	// Chunks are not smaller than this, so small files are read by one thread
+	private static final long MIN_CHUNK_SIZE = 4 << 20;
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int BOUNDARY_BUFFER_SIZE = 4096;
+	
+	private final String file;
+	private final AnnotationParser parser;
+	private final int threads;
+	
+	// Bounds of each chunk, and what was read from it
+	private long[] chunkStart;
+	private long[] chunkEnd;
+	private List<List<Annotation>> chunkAnnotations;
+	private ValidationReport[] chunkReports;
+	private int[] chunkLines;
+	
+	public ParallelAnnotationChecker(String file, AnnotationParser parser, int threads)
+	{
+		this.file = file;
+		this.parser = parser;
+		this.threads = threads;
+	}
+	
+	/*
+	 * This method reads all the chunks of the file, and returns the report with the errors of the whole file
+	 */
+	public ValidationReport check() throws IOException
+	{
+		split();
+		int chunks = chunkStart.length;
+		chunkAnnotations = new ArrayList<List<Annotation>>(chunks);
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			chunkAnnotations.add(null);
+		}
+		chunkReports = new ValidationReport[chunks];
+		chunkLines = new int[chunks];
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			pool.invoke(new ChunkTask(0, chunks));
+		}
+		catch (RuntimeException e)
+		{
+			// The exception can be rethrown by the pool wrapped again, find the error of the chunk
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof IOException)
+				{
+					throw (IOException) cause;
+				}
+			}
+			throw e;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		ValidationReport report = new ValidationReport();
+		int previousLines = 0;
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			report.add(chunkReports[chunk], previousLines);
+			previousLines += chunkLines[chunk];
+		}
+		return report;
+	}
+	
+	/*
+	 * This method returns the annotations of the file, in order, chunk by chunk
+	 */
+	public List<List<Annotation>> getAnnotations()
+	{
+		return chunkAnnotations;
+	}
+	
+	/*
+	 * This method returns the number of lines of the file, counting comment lines
+	 */
+	public int getLines()
+	{
+		int lines = 0;
+		for (int chunkLine : chunkLines)
+		{
+			lines += chunkLine;
+		}
+		return lines;
+	}
+	
+	/*
+	 * This method splits the file in chunks of similar size, moving each boundary after the next line end
+	 */
+	private void split() throws IOException
+	{
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try
+		{
+			long size = input.length();
+			int chunks = (int) Math.max(1, Math.min((long) threads * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE));
+			List<Long> boundaries = new ArrayList<Long>();
+			boundaries.add(0L);
+			for (int chunk = 1; chunk < chunks; chunk++)
+			{
+				long boundary = lineStart(input, size * chunk / chunks);
+				if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size)
+				{
+					boundaries.add(boundary);
+				}
+			}
+			boundaries.add(size);
+			
+			chunkStart = new long[boundaries.size() - 1];
+			chunkEnd = new long[boundaries.size() - 1];
+			for (int chunk = 0; chunk < chunkStart.length; chunk++)
+			{
+				chunkStart[chunk] = boundaries.get(chunk);
+				chunkEnd[chunk] = boundaries.get(chunk + 1);
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	/*
+	 * This method returns the start of the first line which starts at the given position or after it.
+	 * Lines end with "\n", "\r" or "\r\n", as in BufferedReader.readLine.
+	 */
+	private static long lineStart(RandomAccessFile input, long position) throws IOException
+	{
+		byte[] buffer = new byte[BOUNDARY_BUFFER_SIZE];
+		long bufferStart = position - 1;
+		boolean carriageReturn = false;
+		while (true)
+		{
+			input.seek(bufferStart);
+			int read = input.read(buffer);
+			if (read == -1)
+			{
+				return input.length();
+			}
+			for (int i = 0; i < read; i++)
+			{
+				if (carriageReturn)
+				{
+					return bufferStart + i + (buffer[i] == '\n' ? 1 : 0);
+				}
+				if (buffer[i] == '\n')
+				{
+					return bufferStart + i + 1;
+				}
+				carriageReturn = buffer[i] == '\r';
+			}
+			bufferStart += read;
+		}
+	}
+	
+	/*
+	 * This method reads the lines of a chunk, keeping its annotations and errors
+	 */
+	private void readChunk(int chunk) throws IOException
+	{
+		List<Annotation> annotations = new ArrayList<Annotation>();
+		ValidationReport report = new ValidationReport();
+		MappedAnnotationReader reader = new MappedAnnotationReader(file, chunkStart[chunk], chunkEnd[chunk], parser);
+		try
+		{
+			while (reader.nextLine())	// Comment lines are skipped by the reader
+			{
+				Annotation annotation = reader.parse();
+				if (annotation == null)
+				{
+					report.add(reader.getLineNumber(), reader.getLine());
+				}
+				else if (!report.hasErrors())	// annotations are not needed once the file has errors
+				{
+					annotations.add(annotation);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		chunkAnnotations.set(chunk, annotations);
+		chunkReports[chunk] = report;
+		chunkLines[chunk] = reader.getLineNumber();
+	}
+	
+	/*
+	 * This task reads a range of chunks, splitting it until there is one chunk per task
+	 */
+	private class ChunkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int from;
+		private final int to;
+		
+		ChunkTask(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from == 1)
+			{
+				try
+				{
+					readChunk(from);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkTask(from, middle), new ChunkTask(middle, to));
+			}
+		}
+	}
+}
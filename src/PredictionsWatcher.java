@@ -0,0 +1,343 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * This class watches a predictions file, or a directory of predictions files, and evaluates them again each time they change,
+ * displaying their results together with the difference from the previous evaluation of the same file.
+ * As in BatchEvaluator, the gold annotations and stop words are loaded once by the given evaluator, and they stay in memory
+ * between evaluations (see BARR_Evaluator.forPredictions), so each evaluation only checks and scores the changed file.
+ *
+ * Changes are notified by a WatchService on the directory of the predictions, without reading the files until they change.
+ * A file written in many steps sends many notifications, so it is only evaluated once it has been QUIET_PERIOD_MILLIS
+ * without notifications, and its size and modification time are the same as in the last one.
+ * A file which is still incomplete after that is reported as a wrong predictions file, and evaluated again when it changes.
+ * Hidden files are not evaluated, so predictions can also be written to a hidden file (as ".predictions.tsv.tmp")
+ * and renamed when they are complete.
+ */
+public class PredictionsWatcher
+{
+	public static final long QUIET_PERIOD_MILLIS = 100;
+	
+	private final BARR_Evaluator goldEvaluator;
+	private final int threads;
+	
+	// Watched directory, and name of the watched file in it (null if all the files of the directory are watched)
+	private final Path directory;
+	private final Path fileName;
+	
+	// Results of the last evaluation of each file, and files changed since their last evaluation
+	private final Map<Path, EvaluationResult> previousResults;
+	private final Map<Path, PendingFile> pendingFiles;
+	
+	/*
+	 * A changed file which is not evaluated yet: its size and modification time, and when its last change was notified
+	 */
+	private static class PendingFile
+	{
+		private final long size;
+		private final long lastModified;
+		private final long notified;
+		
+		PendingFile(File file, long notified)
+		{
+			this.size = file.length();
+			this.lastModified = file.lastModified();
+			this.notified = notified;
+		}
+		
+		boolean isModified(File file)
+		{
+			return file.length() != size || file.lastModified() != lastModified;
+		}
+	}
+	
+	public PredictionsWatcher(BARR_Evaluator goldEvaluator, String predictions, int threads)
+	{
+		this.goldEvaluator = goldEvaluator;
+		this.threads = threads;
+		File file = new File(predictions).getAbsoluteFile();
+		if (file.isDirectory())
+		{
+			this.directory = file.toPath();
+			this.fileName = null;
+		}
+		else
+		{
+			this.directory = file.getParentFile().toPath();
+			this.fileName = file.toPath().getFileName();
+		}
+		this.previousResults = new HashMap<Path, EvaluationResult>();
+		this.pendingFiles = new LinkedHashMap<Path, PendingFile>();
+	}
+	
+	/*
+	 * This method returns true if the given predictions path can be watched: it is a directory,
+	 * or a file (which may not exist yet) of an existing directory
+	 */
+	public static boolean canWatch(String predictions)
+	{
+		File file = new File(predictions).getAbsoluteFile();
+		return file.isDirectory() || (file.getParentFile() != null && file.getParentFile().isDirectory());
+	}
+	
+	/*
+	 * This method evaluates the predictions which already exist, and then evaluates them again each time they change.
+	 * It only returns if the thread is interrupted or the directory can not be watched anymore.
+	 */
+	public void start() throws IOException
+	{
+		WatchService watchService = FileSystems.getDefault().newWatchService();
+		try
+		{
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			for (Path file : listPredictions())
+			{
+				evaluate(file);
+			}
+			System.out.println(); // empty line
+			System.out.println("Watching " + (fileName == null ? directory : directory.resolve(fileName)) + " for changes...");
+			
+			while (true)
+			{
+				WatchKey key = pendingFiles.isEmpty() ? watchService.take() : watchService.poll(timeToNextEvaluation(), TimeUnit.MILLISECONDS);
+				if (key != null)
+				{
+					for (WatchEvent<?> event : key.pollEvents())
+					{
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+						{
+							// Some notifications were lost, any file could have changed
+							for (Path file : listPredictions())
+							{
+								notifyChange(file);
+							}
+						}
+						else
+						{
+							notifyChange(directory.resolve((Path) event.context()));
+						}
+					}
+					if (!key.reset())
+					{
+						System.err.println("THE DIRECTORY " + directory + " CAN NOT BE WATCHED ANYMORE");
+						return;
+					}
+				}
+				evaluatePendingFiles();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			watchService.close();
+		}
+	}
+	
+	/*
+	 * This method returns the watched predictions files which exist, sorted by name
+	 */
+	private List<Path> listPredictions() throws IOException
+	{
+		List<Path> files = new ArrayList<Path>();
+		if (fileName == null)
+		{
+			for (String submission : BatchEvaluator.listSubmissions(directory.toString()))
+			{
+				files.add(new File(submission).toPath());
+			}
+		}
+		else if (Files.isRegularFile(directory.resolve(fileName)))
+		{
+			files.add(directory.resolve(fileName));
+		}
+		return files;
+	}
+	
+	private boolean isWatched(Path file) throws IOException
+	{
+		if (fileName != null)
+		{
+			return file.getFileName().equals(fileName);
+		}
+		return Files.isRegularFile(file) && !Files.isHidden(file);
+	}
+	
+	/*
+	 * This method records a change of a file, which is evaluated once the file stops changing
+	 */
+	private void notifyChange(Path file) throws IOException
+	{
+		if (isWatched(file))
+		{
+			pendingFiles.remove(file);	// keep the files in the order of their last change
+			pendingFiles.put(file, new PendingFile(file.toFile(), System.currentTimeMillis()));
+		}
+	}
+	
+	private long timeToNextEvaluation()
+	{
+		long next = Long.MAX_VALUE;
+		for (PendingFile pending : pendingFiles.values())
+		{
+			next = Math.min(next, pending.notified + QUIET_PERIOD_MILLIS);
+		}
+		return Math.max(1, next - System.currentTimeMillis());
+	}
+	
+	/*
+	 * This method evaluates the changed files which have not changed during the quiet period.
+	 * A file whose size or modification time changed without a notification yet waits for another quiet period.
+	 */
+	private void evaluatePendingFiles()
+	{
+		long now = System.currentTimeMillis();
+		List<Path> stableFiles = new ArrayList<Path>();
+		List<Path> modifiedFiles = new ArrayList<Path>();
+		Iterator<Map.Entry<Path, PendingFile>> iterator = pendingFiles.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Map.Entry<Path, PendingFile> entry = iterator.next();
+			if (now - entry.getValue().notified < QUIET_PERIOD_MILLIS)
+			{
+				continue;
+			}
+			iterator.remove();
+			File file = entry.getKey().toFile();
+			if (!file.isFile())
+			{
+				continue;	// deleted or renamed
+			}
+			if (entry.getValue().isModified(file))
+			{
+				modifiedFiles.add(entry.getKey());
+			}
+			else
+			{
+				stableFiles.add(entry.getKey());
+			}
+		}
+		for (Path file : modifiedFiles)
+		{
+			pendingFiles.put(file, new PendingFile(file.toFile(), now));
+		}
+		for (Path file : stableFiles)
+		{
+			evaluate(file);
+		}
+	}
+	
+	/*
+	 * This method evaluates a predictions file and displays its results. If the file is not correct, or its evaluation fails,
+	 * its errors are displayed and its previous results are kept to compare the next evaluation with them.
+	 */
+	private void evaluate(Path file)
+	{
+		long start = System.nanoTime();
+		EvaluationResult result;
+		try
+		{
+			BARR_Evaluator evaluator = goldEvaluator.forPredictions(file.toString());
+			evaluator.setThreads(threads);
+			result = evaluator.evaluateSubmission();
+		}
+		catch (IOException e)
+		{
+			System.err.println("ERROR READING " + file + " : " + e.getMessage());
+			return;
+		}
+		catch (RuntimeException e)
+		{
+			// Any other error of the evaluation (as an UncheckedIOException of its threads) only concerns this file
+			System.err.println("ERROR EVALUATING " + file + " : " + e);
+			System.err.println("There are errors in the predictions file " + file + ", it will be evaluated again when it changes.");
+			return;
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+		
+		if (result == null)
+		{
+			System.err.println("There are errors in the predictions file " + file + ", it will be evaluated again when it changes.");
+			return;
+		}
+		printResult(file, result, previousResults.get(file), millis);
+		previousResults.put(file, result);
+	}
+	
+	/*
+	 * This method displays the results of a file, and their difference from its previous results if it was evaluated before.
+	 * For task 1, only ultra-strict results are displayed, as in BARR_Evaluator.
+	 */
+	private void printResult(Path file, EvaluationResult result, EvaluationResult previous, long millis)
+	{
+		System.out.println(); // empty line
+		System.out.println("RESULTS OF " + file + " (EVALUATED IN " + millis + " MS):");
+		System.out.println("---------------------------");
+		System.out.println("TOTAL PREDICTIONS = " + result.getTotalPredictions()
+				+ (previous == null ? "" : " (" + difference(result.getTotalPredictions(), previous.getTotalPredictions()) + ")"));
+		System.out.println("TOTAL ANNOTATIONS GS = " + result.getTotalAnnotationsGS());
+		System.out.println(previous == null ? "TYPE\tCORRECT\tPRECISION\tRECALL\tF-MEASURE"
+				: "TYPE\tCORRECT\tCHANGE\tPRECISION\tCHANGE\tRECALL\tCHANGE\tF-MEASURE\tCHANGE");
+		for (ScoringType type : ScoringType.values())
+		{
+			if (goldEvaluator.getTaskNumber() == 1 && type != ScoringType.ULTRA_STRICT)
+			{
+				continue;
+			}
+			StringBuilder row = new StringBuilder(type.getLabel());
+			row.append("\t").append(result.getCorrect(type));
+			if (previous != null)
+			{
+				row.append("\t").append(difference(result.getCorrect(type), previous.getCorrect(type)));
+			}
+			row.append("\t").append(result.getPrecision(type));
+			if (previous != null)
+			{
+				row.append("\t").append(difference(result.getPrecision(type), previous.getPrecision(type)));
+			}
+			row.append("\t").append(result.getRecall(type));
+			if (previous != null)
+			{
+				row.append("\t").append(difference(result.getRecall(type), previous.getRecall(type)));
+			}
+			row.append("\t").append(result.getFMeasure(type));
+			if (previous != null)
+			{
+				row.append("\t").append(difference(result.getFMeasure(type), previous.getFMeasure(type)));
+			}
+			System.out.println(row);
+		}
+		System.out.println("===========================");
+	}
+	
+	/*
+	 * These methods return the difference between a result and its previous value, with its sign
+	 */
+	private static String difference(float current, float previous)
+	{
+		float difference = current - previous;
+		return (difference > 0 ? "+" : "") + difference;
+	}
+	
+	private static String difference(int current, int previous)
+	{
+		return (current > previous ? "+" : "") + (current - previous);
+	}
+}
@@ -0,0 +1,121 @@
+
+/*
+ * An annotation of the abbreviation-definition (short-long forms) relations task (task 1).
+ * Mention texts are stored without accents, as they are compared.
+ */
+public class RelationAnnotation extends Annotation
+{
+	private final MentionType mentionAType;
+	private final String mentionAText;
+	private final RelationType relationType;
+	private final MentionType mentionBType;
+	private final int mentionBStart;
+	private final String mentionBStartText;		// text of the offset columns of mention B, only if they are not plain numbers
+	private final int mentionBEnd;
+	private final String mentionBEndText;
+	private final String mentionBText;
+	
+	public RelationAnnotation(String documentId, MentionType mentionAType, int mentionAStart, String mentionAText, RelationType relationType, 
+			MentionType mentionBType, int mentionBStart, String mentionBStartText, int mentionBEnd, String mentionBEndText, String mentionBText, 
+			float confidence, String line)
+	{
+		super(documentId, mentionAStart, confidence, line);
+		this.mentionAType = mentionAType;
+		this.mentionAText = mentionAText;
+		this.relationType = relationType;
+		this.mentionBType = mentionBType;
+		this.mentionBStart = mentionBStart;
+		this.mentionBStartText = mentionBStartText;
+		this.mentionBEnd = mentionBEnd;
+		this.mentionBEndText = mentionBEndText;
+		this.mentionBText = mentionBText;
+	}
+	
+	public RelationAnnotation(String documentId, MentionType mentionAType, int mentionAStart, String mentionAText, RelationType relationType, 
+			MentionType mentionBType, int mentionBStart, String mentionBStartText, int mentionBEnd, String mentionBEndText, String mentionBText, 
+			float confidence, byte[] encodedLine)
+	{
+		super(documentId, mentionAStart, confidence, encodedLine);
+		this.mentionAType = mentionAType;
+		this.mentionAText = mentionAText;
+		this.relationType = relationType;
+		this.mentionBType = mentionBType;
+		this.mentionBStart = mentionBStart;
+		this.mentionBStartText = mentionBStartText;
+		this.mentionBEnd = mentionBEnd;
+		this.mentionBEndText = mentionBEndText;
+		this.mentionBText = mentionBText;
+	}
+	
+	public MentionType getMentionAType()
+	{
+		return mentionAType;
+	}
+	
+	public int getMentionAStart()
+	{
+		return getStartOffset();
+	}
+	
+	public String getMentionAText()
+	{
+		return mentionAText;
+	}
+	
+	/*
+	 * The files do not have the end offset of mention A, it is calculated with the length of its text
+	 * (which has the same length as in the file, unless the removal of accents dropped a character)
+	 */
+	public int getMentionAEnd()
+	{
+		return getStartOffset() + mentionAText.length();
+	}
+	
+	public RelationType getRelationType()
+	{
+		return relationType;
+	}
+	
+	public MentionType getMentionBType()
+	{
+		return mentionBType;
+	}
+	
+	public int getMentionBStart()
+	{
+		return mentionBStart;
+	}
+	
+	public String getMentionBStartText()
+	{
+		return mentionBStartText;
+	}
+	
+	public int getMentionBEnd()
+	{
+		return mentionBEnd;
+	}
+	
+	public String getMentionBEndText()
+	{
+		return mentionBEndText;
+	}
+	
+	/*
+	 * These methods check if the offsets of mention B of another annotation are written as the ones of this annotation
+	 */
+	public boolean sameMentionBStart(RelationAnnotation other)
+	{
+		return sameOffset(mentionBStart, mentionBStartText, other.mentionBStart, other.mentionBStartText);
+	}
+	
+	public boolean sameMentionBEnd(RelationAnnotation other)
+	{
+		return sameOffset(mentionBEnd, mentionBEndText, other.mentionBEnd, other.mentionBEndText);
+	}
+	
+	public String getMentionBText()
+	{
+		return mentionBText;
+	}
+}
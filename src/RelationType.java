@@ -0,0 +1,38 @@
+
+/*
+ * Relation types of the abbreviation-definition (short-long forms) relations task
+ */
+public enum RelationType
+{
+	SHORT_LONG("SHORT-LONG"),
+	SHORT_NESTED("SHORT-NESTED"),
+	NESTED_LONG("NESTED-LONG");
+	
+	// Name of the relation type in annotation files
+	private final String label;
+	
+	private RelationType(String label)
+	{
+		this.label = label;
+	}
+	
+	public String getLabel()
+	{
+		return label;
+	}
+	
+	/*
+	 * This method returns the relation type written in an annotation file, or null if it is not a valid type
+	 */
+	public static RelationType parse(String label)
+	{
+		for (RelationType type : values())
+		{
+			if (type.label.equals(label))
+			{
+				return type;
+			}
+		}
+		return null;
+	}
+}
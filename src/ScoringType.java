@@ -0,0 +1,23 @@
+
+/*
+ * The 3 scoring types of the evaluation.
+ * For task 1 only ultra-strict is displayed, since the 3 of them give the same results.
+ */
+public enum ScoringType
+{
+	ULTRA_STRICT("ULTRA-STRICT"),
+	STRICT("STRICT"),
+	FLEXIBLE("FLEXIBLE");
+	
+	private final String label;
+	
+	private ScoringType(String label)
+	{
+		this.label = label;
+	}
+	
+	public String getLabel()
+	{
+		return label;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * The scores of the slices of the sliced evaluation (see Slices), for the 3 scoring types.
+ * The counters of all the slices are stored in one array, with the counters of each slice in consecutive positions,
+ * so each annotation only updates the counters of its own slices.
+ *
+ * Correct predictions are counted twice: by the slices of the gold annotation, for the recall, and by the slices of
+ * the prediction, for the precision, since they can be different (the relation type of task 1 is not compared).
+ *
+ * Each thread adds to its own SliceScores, which are added at the end. Counters are doubles, so the sums of the float
+ * scores of the predictions are order-independent in practice: the order of the threads can only change their last bits,
+ * far below the precision of the displayed float results.
+ */
+public final class SliceScores
+{
+	// Counters of each slice
+	private static final int CORRECT_GOLD = 0;			// 3 scoring types
+	private static final int CORRECT_PREDICTIONS = 3;	// 3 scoring types
+	private static final int PREDICTIONS = 6;
+	private static final int COUNTERS = 7;
+	
+	private final Slices slices;
+	private final double[] counters;
+	
+	// Slices of the current gold annotation and prediction
+	private final int[] goldSlices;
+	private final int[] predictionSlices;
+	
+	public SliceScores(Slices slices)
+	{
+		this.slices = slices;
+		this.counters = new double[slices.size() * COUNTERS];
+		this.goldSlices = new int[slices.maxSlices()];
+		this.predictionSlices = new int[slices.maxSlices()];
+	}
+	
+	/*
+	 * This method counts a prediction of the given gold document in its slices
+	 */
+	public void addPrediction(Annotation prediction, int goldDocument)
+	{
+		int count = slices.slices(prediction, goldDocument, predictionSlices);
+		for (int i = 0; i < count; i++)
+		{
+			counters[predictionSlices[i] * COUNTERS + PREDICTIONS]++;
+		}
+	}
+	
+	/*
+	 * This method adds the score of a prediction with the same start offset as a gold annotation,
+	 * as returned by BARR_Evaluator's evaluateRelation and evaluateAbbreviationRecognition methods:
+	 * 1 if it is correct, 2 if it is correct except for ultra-strict, between 0 and 1 if it is partially correct (flexible)
+	 */
+	public void addMatch(Annotation gold, Annotation prediction, int goldDocument, float guessed)
+	{
+		if (guessed == 0)
+		{
+			return;
+		}
+		float ultraStrict = guessed == 1 ? 1 : 0;
+		float strict = guessed == 1 || guessed == 2 ? 1 : 0;
+		float flexible = guessed == 1 || guessed == 2 ? 1 : guessed;
+		
+		int count = slices.slices(gold, goldDocument, goldSlices);
+		for (int i = 0; i < count; i++)
+		{
+			add(goldSlices[i] * COUNTERS + CORRECT_GOLD, ultraStrict, strict, flexible);
+		}
+		count = slices.slices(prediction, goldDocument, predictionSlices);
+		for (int i = 0; i < count; i++)
+		{
+			add(predictionSlices[i] * COUNTERS + CORRECT_PREDICTIONS, ultraStrict, strict, flexible);
+		}
+	}
+	
+	private void add(int position, float ultraStrict, float strict, float flexible)
+	{
+		counters[position + ScoringType.ULTRA_STRICT.ordinal()] += ultraStrict;
+		counters[position + ScoringType.STRICT.ordinal()] += strict;
+		counters[position + ScoringType.FLEXIBLE.ordinal()] += flexible;
+	}
+	
+	/*
+	 * This method adds the counters of another SliceScores (of another thread) to this one
+	 */
+	public void add(SliceScores other)
+	{
+		for (int i = 0; i < counters.length; i++)
+		{
+			counters[i] += other.counters[i];
+		}
+	}
+	
+	/*
+	 * Correct predictions of the gold annotations of a slice, used for the recall
+	 */
+	public float getCorrect(ScoringType type, int slice)
+	{
+		return (float) counters[slice * COUNTERS + CORRECT_GOLD + type.ordinal()];
+	}
+	
+	/*
+	 * Correct predictions of the predictions of a slice, used for the precision
+	 */
+	public float getCorrectPredictions(ScoringType type, int slice)
+	{
+		return (float) counters[slice * COUNTERS + CORRECT_PREDICTIONS + type.ordinal()];
+	}
+	
+	public int getPredictions(int slice)
+	{
+		return (int) counters[slice * COUNTERS + PREDICTIONS];
+	}
+	
+	public float getPrecision(ScoringType type, int slice)
+	{
+		return getCorrectPredictions(type, slice) / (float) getPredictions(slice);
+	}
+	
+	public float getRecall(ScoringType type, int slice)
+	{
+		return getCorrect(type, slice) / (float) slices.getAnnotationsGS(slice);
+	}
+	
+	public float getFMeasure(ScoringType type, int slice)
+	{
+		float precision = getPrecision(type, slice);
+		float recall = getRecall(type, slice);
+		return (2 * precision * recall) / (precision + recall);
+	}
+}
@@ -0,0 +1,266 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * This class defines the slices of the sliced evaluation: groups of annotations whose precision, recall and F-Measure
+ * are displayed separately (see SliceScores).
+ * For task 1, annotations are grouped by relation type, mention A type and mention B type.
+ * If a metadata file is read (with the columns of clinical_cases.metadata.training_set.tsv), annotations are also grouped
+ * by the ISSN, journal (Source column without volume and number) and year (Date column) of their document.
+ * Documents are joined with the metadata by their ID, without the ".txt" extension used in the metadata file.
+ * Documents which are not in the metadata file are grouped in "UNKNOWN" slices.
+ *
+ * The gold annotations of a slice are the distinct ones: like the correct predictions, a gold line replaced by a later line
+ * with the same document and start offset is not counted, so slice recalls are computed over the distinct gold annotations.
+ *
+ * Slices are numbered with dense integers, and the metadata slices of each gold document are found once,
+ * so finding the slices of an annotation does not create any object.
+ */
+public class Slices
+{
+	public static final String UNKNOWN = "UNKNOWN";
+	private static final String[] METADATA_DIMENSIONS = { "ISSN", "JOURNAL", "YEAR" };
+	
+	private final int taskNumber;
+	private Map<String, String[]> metadata;	// document ID -> ISSN, journal and year, null if there is no metadata file
+	
+	// Slice labels ("DIMENSION = VALUE") by number
+	private final List<String> labels;
+	
+	// Number of the first slice of each type dimension (task 1), the slice of a type is this number plus its ordinal
+	private final int relationTypeSlices;
+	private final int mentionATypeSlices;
+	private final int mentionBTypeSlices;
+	
+	// Metadata slices of each gold document, and gold annotations of each slice
+	private int[][] documentSlices;
+	private int[] annotationsGS;
+	
+	// Gold lines replaced by a later line with the same document and start offset, which are not counted in any slice
+	private int repeatedLinesGS;
+	
+	public Slices(int taskNumber)
+	{
+		this.taskNumber = taskNumber;
+		this.labels = new ArrayList<String>();
+		
+		relationTypeSlices = labels.size();
+		mentionATypeSlices = relationTypeSlices + RelationType.values().length;
+		mentionBTypeSlices = mentionATypeSlices + MentionType.values().length;
+		if (taskNumber == 1)
+		{
+			for (RelationType type : RelationType.values())
+			{
+				addSlice("RELATION TYPE = " + type.getLabel());
+			}
+			for (MentionType type : MentionType.values())
+			{
+				addSlice("MENTION A TYPE = " + type.name());
+			}
+			for (MentionType type : MentionType.values())
+			{
+				addSlice("MENTION B TYPE = " + type.name());
+			}
+		}
+	}
+	
+	/*
+	 * This method reads the metadata of the documents. Use "#" for comments.
+	 * Returns false if a line does not have the ISSN, date and source columns.
+	 */
+	public boolean readMetadata(String file) throws IOException
+	{
+		metadata = new HashMap<String, String[]>();
+		Map<String, String> values = new HashMap<String, String>();
+		BufferedReader reader = BackgroundGzipInputStream.openReader(file);
+		try
+		{
+			String line = "";
+			int numLine = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				numLine++;
+				if (line.startsWith("#") || line.isEmpty())
+				{
+					continue;
+				}
+				
+				// Document_ID	Case_ID	ISSN	Date	Source	Full_Text_Link
+				// Only the first 5 columns are needed, they are found without splitting the whole line
+				int[] tabs = new int[5];
+				int columns = 0;
+				for (int tab = line.indexOf('\t'); tab != -1 && columns < tabs.length; tab = line.indexOf('\t', tab + 1))
+				{
+					tabs[columns++] = tab;
+				}
+				if (columns < 4 || tabs[3] - tabs[2] - 1 < 4)
+				{
+					System.err.println("ERROR IN LINE " + numLine + " OF " + file + " : " + line);
+					return false;
+				}
+				if (columns == 4)
+				{
+					tabs[4] = line.length();
+				}
+				String documentId = line.substring(0, tabs[0]);
+				if (documentId.endsWith(".txt"))
+				{
+					documentId = documentId.substring(0, documentId.length() - 4);
+				}
+				
+				// Values are shared between documents, there are few different ones
+				String issn = value(values, line.substring(tabs[1] + 1, tabs[2]).trim());
+				String year = value(values, line.substring(tabs[2] + 1, tabs[2] + 5));
+				String journal = value(values, journal(line.substring(tabs[3] + 1, tabs[4])));
+				metadata.put(documentId, new String[] { issn, journal, year });
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return true;
+	}
+	
+	/*
+	 * This method returns the journal of a source, without its volume and number ("Medicina Intensiva  v.32 n.3 2008")
+	 */
+	private static String journal(String source)
+	{
+		for (int i = 1; i + 1 < source.length(); i++)
+		{
+			char c = source.charAt(i);
+			if ((c == 'v' || c == 'n') && source.charAt(i + 1) == '.' && Character.isWhitespace(source.charAt(i - 1)))
+			{
+				return source.substring(0, i).trim();
+			}
+		}
+		return source.trim();
+	}
+	
+	private static String value(Map<String, String> values, String value)
+	{
+		String shared = values.get(value);
+		if (shared == null)
+		{
+			values.put(value, value);
+			return value;
+		}
+		return shared;
+	}
+	
+	/*
+	 * This method finds the metadata slices of the gold documents, and counts the gold annotations of each slice.
+	 * It must be called once the gold standard is loaded, and before creating any SliceScores.
+	 */
+	public void prepareGold(AnnotationIndex goldAnnotations)
+	{
+		// Metadata slices are numbered by dimension, with the values of each dimension sorted
+		String[][] documentValues = new String[goldAnnotations.documentCount()][];
+		for (int document = 0; document < goldAnnotations.documentCount(); document++)
+		{
+			String[] values = metadata == null ? null : metadata.get(goldAnnotations.documentId(document));
+			documentValues[document] = values != null ? values : new String[] { UNKNOWN, UNKNOWN, UNKNOWN };
+		}
+		int dimensions = metadata == null ? 0 : METADATA_DIMENSIONS.length;
+		documentSlices = new int[goldAnnotations.documentCount()][dimensions];
+		for (int dimension = 0; dimension < dimensions; dimension++)
+		{
+			Set<String> values = new TreeSet<String>();
+			for (String[] documentValue : documentValues)
+			{
+				values.add(documentValue[dimension]);
+			}
+			Map<String, Integer> valueSlices = new HashMap<String, Integer>();
+			for (String value : values)
+			{
+				valueSlices.put(value, addSlice(METADATA_DIMENSIONS[dimension] + " = " + value));
+			}
+			for (int document = 0; document < goldAnnotations.documentCount(); document++)
+			{
+				documentSlices[document][dimension] = valueSlices.get(documentValues[document][dimension]);
+			}
+		}
+		
+		annotationsGS = new int[size()];
+		repeatedLinesGS = 0;
+		int[] slices = new int[maxSlices()];
+		for (int document = 0; document < goldAnnotations.documentCount(); document++)
+		{
+			repeatedLinesGS += goldAnnotations.documentLines(document);
+			for (int entry = goldAnnotations.firstEntry(document); entry != -1; entry = goldAnnotations.nextEntry(entry))
+			{
+				int count = slices(goldAnnotations.annotation(entry), document, slices);
+				for (int i = 0; i < count; i++)
+				{
+					annotationsGS[slices[i]]++;
+				}
+				repeatedLinesGS--;
+			}
+		}
+	}
+	
+	/*
+	 * This method stores the slices of an annotation of the given gold document in the slices array,
+	 * which must have maxSlices positions, and returns how many there are
+	 */
+	public int slices(Annotation annotation, int goldDocument, int[] slices)
+	{
+		int count = 0;
+		if (taskNumber == 1)
+		{
+			RelationAnnotation relation = (RelationAnnotation) annotation;
+			slices[count++] = relationTypeSlices + relation.getRelationType().ordinal();
+			slices[count++] = mentionATypeSlices + relation.getMentionAType().ordinal();
+			slices[count++] = mentionBTypeSlices + relation.getMentionBType().ordinal();
+		}
+		for (int slice : documentSlices[goldDocument])
+		{
+			slices[count++] = slice;
+		}
+		return count;
+	}
+	
+	public int maxSlices()
+	{
+		return (taskNumber == 1 ? 3 : 0) + METADATA_DIMENSIONS.length;
+	}
+	
+	public int size()
+	{
+		return labels.size();
+	}
+	
+	public String getLabel(int slice)
+	{
+		return labels.get(slice);
+	}
+	
+	public int getAnnotationsGS(int slice)
+	{
+		return annotationsGS[slice];
+	}
+	
+	/*
+	 * This method returns the number of gold lines which are counted in TOTAL ANNOTATIONS GS but not in the slices,
+	 * because a later line of the same document has the same start offset and replaces them
+	 */
+	public int getRepeatedLinesGS()
+	{
+		return repeatedLinesGS;
+	}
+	
+	private int addSlice(String label)
+	{
+		int slice = labels.size();
+		labels.add(label);
+		return slice;
+	}
+}
@@ -0,0 +1,259 @@
+
+import java.util.Arrays;
+
+/*
+ * This class matches the gold annotations and predictions of a document by the overlap of their spans,
+ * for a lenient evaluation which is displayed next to the usual one (see BARR_Evaluator.printMatchingResults).
+ * The usual evaluation only compares a gold annotation with the prediction at the same start offset,
+ * so a prediction which is one character off is both missing and wrong; here it can still match.
+ *
+ * The span of a task 2 annotation is its abbreviation (start and end offsets). The span of a task 1 annotation
+ * is its mention A, which only has a start offset in the files, so it ends after the length of the mention A text.
+ * Spans of task 1 only match if their mention A types are the same.
+ *
+ * A gold span and a predicted span can match if they overlap in at least minGoldOverlap of the gold span length
+ * and minPredictionOverlap of the predicted span length (any overlap if both are 0). Identical spans always match.
+ * Each gold annotation matches at most one prediction and the other way round: identical spans are assigned first,
+ * then the pairs with the longest overlap, then the pairs found first.
+ *
+ * Candidate pairs are found with a sweep over the spans of both sides sorted by start offset: when a span starts,
+ * the spans of the other side which already ended are removed from its active list, and the remaining ones
+ * overlap it. Each active span is either paired or removed, so a document with n gold annotations, m predictions
+ * and k overlapping pairs takes O((n + m) log(n + m) + k log k), instead of comparing all n * m pairs.
+ *
+ * Scratch arrays are reused between documents. Objects of this class are not thread safe: use one per thread.
+ * Each one also counts the matches of the documents it matched, which are added at the end of the evaluation.
+ */
+public class SpanMatcher
+{
+	private final float minGoldOverlap;
+	private final float minPredictionOverlap;
+	
+	// Spans of the current document: gold spans are 0..goldCount-1, predicted spans follow them
+	private int[] spanStart = new int[16];
+	private int[] spanEnd = new int[16];
+	private int[] spanType = new int[16];
+	private boolean[] spanMatched = new boolean[16];
+	private int goldCount;
+	private int spanCount;
+	
+	// Spans sorted by start offset, packed as (start << 32 | span)
+	private long[] sorted = new long[16];
+	
+	// Spans which started and may not have ended yet, of each side
+	private int[] activeGold = new int[16];
+	private int[] activePredictions = new int[16];
+	
+	// Candidate pairs, and their order of assignment packed as (priority << 32 | candidate)
+	private int[] candidateGold = new int[16];
+	private int[] candidatePrediction = new int[16];
+	private long[] candidateOrder = new long[16];
+	private int candidateCount;
+	
+	// Matches counted by this object
+	private long exactMatches;
+	private long overlapMatches;
+	
+	public SpanMatcher(float minGoldOverlap, float minPredictionOverlap)
+	{
+		this.minGoldOverlap = minGoldOverlap;
+		this.minPredictionOverlap = minPredictionOverlap;
+	}
+	
+	/*
+	 * This method matches the gold annotations of a gold document with the predictions of a document,
+	 * counting the predictions at the same start offset and the same type (as the usual evaluation matches them),
+	 * and the matches by overlap
+	 */
+	public void match(AnnotationIndex gold, int goldDocument, AnnotationIndex predictions, int predictionDocument)
+	{
+		spanCount = 0;
+		for (int entry = gold.firstEntry(goldDocument); entry != -1; entry = gold.nextEntry(entry))
+		{
+			Annotation annotation = gold.annotation(entry);
+			addSpan(annotation);
+			int predictionEntry = predictions.find(predictionDocument, annotation.getStartOffset());
+			if (predictionEntry != -1 && type(predictions.annotation(predictionEntry)) == spanType[spanCount - 1])
+			{
+				exactMatches++;
+			}
+		}
+		goldCount = spanCount;
+		for (int entry = predictions.firstEntry(predictionDocument); entry != -1; entry = predictions.nextEntry(entry))
+		{
+			addSpan(predictions.annotation(entry));
+		}
+		if (goldCount == 0 || goldCount == spanCount)
+		{
+			return;
+		}
+		
+		findCandidates();
+		
+		// Assign candidates in order of priority, skipping the ones whose spans are already matched
+		Arrays.sort(candidateOrder, 0, candidateCount);
+		Arrays.fill(spanMatched, 0, spanCount, false);
+		for (int i = 0; i < candidateCount; i++)
+		{
+			int candidate = (int) candidateOrder[i];
+			int goldSpan = candidateGold[candidate];
+			int predictionSpan = candidatePrediction[candidate];
+			if (!spanMatched[goldSpan] && !spanMatched[predictionSpan])
+			{
+				spanMatched[goldSpan] = true;
+				spanMatched[predictionSpan] = true;
+				overlapMatches++;
+			}
+		}
+	}
+	
+	/*
+	 * This method finds the pairs of overlapping gold and predicted spans which can match, sweeping the spans by start offset.
+	 * At the same start offset, gold spans are handled first, so they are active when the predictions start.
+	 */
+	private void findCandidates()
+	{
+		for (int span = 0; span < spanCount; span++)
+		{
+			sorted[span] = ((long) spanStart[span] << 32) | span;
+		}
+		Arrays.sort(sorted, 0, spanCount);
+		
+		candidateCount = 0;
+		int activeGoldCount = 0;
+		int activePredictionCount = 0;
+		for (int i = 0; i < spanCount; i++)
+		{
+			int span = (int) sorted[i];
+			int start = spanStart[span];
+			if (span < goldCount)
+			{
+				activePredictionCount = pairActive(span, start, activePredictions, activePredictionCount, true);
+				activeGold[activeGoldCount++] = span;
+			}
+			else
+			{
+				activeGoldCount = pairActive(span, start, activeGold, activeGoldCount, false);
+				activePredictions[activePredictionCount++] = span;
+			}
+		}
+	}
+	
+	/*
+	 * This method removes the active spans of the other side which ended before the given start offset,
+	 * and adds the pairs of the given span with the remaining ones. Returns the new number of active spans.
+	 */
+	private int pairActive(int span, int start, int[] active, int activeCount, boolean isGold)
+	{
+		int remaining = 0;
+		for (int i = 0; i < activeCount; i++)
+		{
+			int other = active[i];
+			if (spanEnd[other] <= start && !(spanStart[other] == start && spanEnd[other] == start))
+			{
+				continue;	// ended before this span starts, it will not overlap any later span
+			}
+			active[remaining++] = other;
+			if (isGold)
+			{
+				addCandidate(span, other);
+			}
+			else
+			{
+				addCandidate(other, span);
+			}
+		}
+		return remaining;
+	}
+	
+	private void addCandidate(int goldSpan, int predictionSpan)
+	{
+		if (spanType[goldSpan] != spanType[predictionSpan])
+		{
+			return;
+		}
+		boolean identical = spanStart[goldSpan] == spanStart[predictionSpan] && spanEnd[goldSpan] == spanEnd[predictionSpan];
+		int overlap = Math.min(spanEnd[goldSpan], spanEnd[predictionSpan]) - Math.max(spanStart[goldSpan], spanStart[predictionSpan]);
+		if (!identical && (overlap <= 0 || overlap < minGoldOverlap * (spanEnd[goldSpan] - spanStart[goldSpan])
+				|| overlap < minPredictionOverlap * (spanEnd[predictionSpan] - spanStart[predictionSpan])))
+		{
+			return;
+		}
+		
+		if (candidateCount == candidateGold.length)
+		{
+			int capacity = candidateGold.length * 2;
+			candidateGold = Arrays.copyOf(candidateGold, capacity);
+			candidatePrediction = Arrays.copyOf(candidatePrediction, capacity);
+			candidateOrder = Arrays.copyOf(candidateOrder, capacity);
+		}
+		int candidate = candidateCount++;
+		candidateGold[candidate] = goldSpan;
+		candidatePrediction[candidate] = predictionSpan;
+		long priority = identical ? 0 : Integer.MAX_VALUE - overlap;
+		candidateOrder[candidate] = (priority << 32) | candidate;
+	}
+	
+	private void addSpan(Annotation annotation)
+	{
+		if (spanCount == spanStart.length)
+		{
+			int capacity = spanStart.length * 2;
+			spanStart = Arrays.copyOf(spanStart, capacity);
+			spanEnd = Arrays.copyOf(spanEnd, capacity);
+			spanType = Arrays.copyOf(spanType, capacity);
+			spanMatched = Arrays.copyOf(spanMatched, capacity);
+			sorted = Arrays.copyOf(sorted, capacity);
+			activeGold = Arrays.copyOf(activeGold, capacity);
+			activePredictions = Arrays.copyOf(activePredictions, capacity);
+		}
+		int span = spanCount++;
+		spanStart[span] = annotation.getStartOffset();
+		spanEnd[span] = end(annotation);
+		spanType[span] = type(annotation);
+	}
+	
+	private static int end(Annotation annotation)
+	{
+		if (annotation instanceof RelationAnnotation)
+		{
+			return ((RelationAnnotation) annotation).getMentionAEnd();
+		}
+		return ((AbbreviationAnnotation) annotation).getEndOffset();
+	}
+	
+	private static int type(Annotation annotation)
+	{
+		if (annotation instanceof RelationAnnotation)
+		{
+			return ((RelationAnnotation) annotation).getMentionAType().ordinal();
+		}
+		return 0;
+	}
+	
+	/*
+	 * Gold annotations with a prediction at the same start offset and of the same type, in the documents matched by this object
+	 */
+	public long getExactMatches()
+	{
+		return exactMatches;
+	}
+	
+	/*
+	 * Gold annotations matched with a prediction by overlap, in the documents matched by this object
+	 */
+	public long getOverlapMatches()
+	{
+		return overlapMatches;
+	}
+	
+	public float getMinGoldOverlap()
+	{
+		return minGoldOverlap;
+	}
+	
+	public float getMinPredictionOverlap()
+	{
+		return minPredictionOverlap;
+	}
+}
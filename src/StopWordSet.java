@@ -0,0 +1,70 @@
+
+import java.util.Collection;
+
+/*
+ * This class stores the stop words in an open-addressing hash table, so a token can be looked up
+ * directly in the text that contains it, without creating a substring.
+ * Once created it is not modified, so it can be used by many threads.
+ */
+public final class StopWordSet
+{
+	private final String[] table;
+	private final int mask;
+	
+	public StopWordSet(Collection<String> stopWords)
+	{
+		int capacity = 16;
+		while (capacity < stopWords.size() * 2)
+		{
+			capacity *= 2;
+		}
+		table = new String[capacity];
+		mask = capacity - 1;
+		for (String stopWord : stopWords)
+		{
+			int slot = hash(stopWord, 0, stopWord.length()) & mask;
+			while (table[slot] != null && !table[slot].equals(stopWord))
+			{
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = stopWord;
+		}
+	}
+	
+	public boolean contains(String word)
+	{
+		return contains(word, 0, word.length());
+	}
+	
+	/*
+	 * This method checks if the characters of text between start (included) and end (excluded) are a stop word
+	 */
+	public boolean contains(String text, int start, int end)
+	{
+		int length = end - start;
+		int slot = hash(text, start, end) & mask;
+		while (table[slot] != null)
+		{
+			String stopWord = table[slot];
+			if (stopWord.length() == length && stopWord.regionMatches(0, text, start, length))
+			{
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+	
+	/*
+	 * Hash of a range of characters, the same used by TokenOverlap
+	 */
+	static int hash(String text, int start, int end)
+	{
+		int hash = 0;
+		for (int i = start; i < end; i++)
+		{
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash ^ (hash >>> 16) ^ (hash >>> 7);
+	}
+}
@@ -0,0 +1,229 @@
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The precision/recall curve of the predictions by confidence threshold, for the 3 scoring types.
+ * Predictions may have an extra last column with their confidence (see AnnotationParser), and the curve gives the results
+ * which would be obtained keeping only the predictions with a confidence equal to or higher than each threshold,
+ * without filtering the predictions file and evaluating it again for each threshold.
+ *
+ * Each prediction is scored once, as in the usual evaluation: its score is recorded with its confidence by the thread
+ * which evaluates its document. Then all the predictions are sorted by confidence, highest first, and the curve is calculated
+ * in one pass, adding the predictions and their correct scores until each distinct confidence. The recall of all the points
+ * is calculated with all the gold annotations. A sweep of n predictions takes O(n log n), instead of O(n) per threshold.
+ *
+ * The evaluation adds the float scores of each document, and then the documents in document order (see addDocumentScore),
+ * while the curve adds them in double by confidence. The point with all the predictions is the evaluation itself,
+ * so it takes the correct predictions of its results, and is the same as the final results. The flexible correct predictions
+ * of the other points can differ from filtering the file and evaluating it again by the rounding of the float sums
+ * of the evaluation (about one millionth of their value), the other counts are the same.
+ *
+ * Predictions without confidence are kept at any threshold. As in the usual evaluation, predictions of documents
+ * which are not in the gold standard are not counted, and a prediction replaced by a later line with the same document
+ * and start offset is not in the curve: filtering the file could keep the replaced one instead.
+ *
+ * Each thread records to its own ThresholdSweep, which are added at the end (see compute).
+ */
+public final class ThresholdSweep
+{
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	// Scored predictions: confidence, and score as returned by BARR_Evaluator's evaluateRelation and evaluateAbbreviationRecognition
+	private float[] confidences;
+	private float[] scores;
+	private int size;
+	
+	// Points of the curve, from the highest threshold: predictions kept, and correct predictions of each scoring type
+	private float[] thresholds;
+	private int[] predictions;
+	private double[][] correct;
+	private int points;
+	private int totalAnnotationsGS;
+	
+	public ThresholdSweep()
+	{
+		confidences = new float[INITIAL_CAPACITY];
+		scores = new float[INITIAL_CAPACITY];
+	}
+	
+	/*
+	 * This method records a prediction with its score:
+	 * 0 if it is wrong or spurious, 1 if it is correct, 2 if it is correct except for ultra-strict,
+	 * between 0 and 1 if it is partially correct (flexible)
+	 */
+	public void add(float confidence, float score)
+	{
+		if (size == confidences.length)
+		{
+			confidences = Arrays.copyOf(confidences, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		confidences[size] = confidence;
+		scores[size] = score;
+		size++;
+	}
+	
+	/*
+	 * This method calculates the curve of the predictions recorded by the given sweeps (one per thread),
+	 * with the results of the evaluation which recorded them
+	 */
+	public static ThresholdSweep compute(List<ThresholdSweep> threadSweeps, EvaluationResult result)
+	{
+		ThresholdSweep sweep = new ThresholdSweep();
+		for (ThresholdSweep threadSweep : threadSweeps)
+		{
+			for (int i = 0; i < threadSweep.size; i++)
+			{
+				sweep.add(threadSweep.confidences[i], threadSweep.scores[i]);
+			}
+		}
+		sweep.computeCurve(result);
+		return sweep;
+	}
+	
+	private void computeCurve(EvaluationResult result)
+	{
+		this.totalAnnotationsGS = result.getTotalAnnotationsGS();
+		
+		// Sort the predictions by confidence, packed as (sortable confidence bits << 32 | prediction)
+		long[] order = new long[size];
+		for (int i = 0; i < size; i++)
+		{
+			int bits = Float.floatToIntBits(confidences[i]);
+			bits ^= (bits >> 31) & 0x7FFFFFFF;	// negative floats sort in reverse order of their bits
+			order[i] = ((long) bits << 32) | i;
+		}
+		Arrays.sort(order);
+		
+		thresholds = new float[size];
+		predictions = new int[size];
+		correct = new double[ScoringType.values().length][size];
+		points = 0;
+		int kept = 0;
+		double[] sums = new double[ScoringType.values().length];
+		for (int i = size - 1; i >= 0; i--)
+		{
+			int prediction = (int) order[i];
+			float score = scores[prediction];
+			kept++;
+			sums[ScoringType.ULTRA_STRICT.ordinal()] += score == 1 ? 1 : 0;
+			sums[ScoringType.STRICT.ordinal()] += score == 1 || score == 2 ? 1 : 0;
+			sums[ScoringType.FLEXIBLE.ordinal()] += score == 1 || score == 2 ? 1 : score;
+			
+			// A point is added after the last prediction of each distinct confidence
+			if (i == 0 || confidences[(int) order[i - 1]] != confidences[prediction])
+			{
+				thresholds[points] = confidences[prediction];
+				predictions[points] = kept;
+				for (ScoringType type : ScoringType.values())
+				{
+					correct[type.ordinal()][points] = sums[type.ordinal()];
+				}
+				points++;
+			}
+		}
+		
+		// The point with all the predictions, added as in the evaluation
+		if (points > 0)
+		{
+			for (ScoringType type : ScoringType.values())
+			{
+				correct[type.ordinal()][points - 1] = result.getCorrect(type);
+			}
+		}
+	}
+	
+	public int getPoints()
+	{
+		return points;
+	}
+	
+	public float getThreshold(int point)
+	{
+		return thresholds[point];
+	}
+	
+	public int getPredictions(int point)
+	{
+		return predictions[point];
+	}
+	
+	public float getCorrect(ScoringType type, int point)
+	{
+		return (float) correct[type.ordinal()][point];
+	}
+	
+	public float getPrecision(ScoringType type, int point)
+	{
+		return getCorrect(type, point) / (float) predictions[point];
+	}
+	
+	public float getRecall(ScoringType type, int point)
+	{
+		return getCorrect(type, point) / (float) totalAnnotationsGS;
+	}
+	
+	public float getFMeasure(ScoringType type, int point)
+	{
+		float precision = getPrecision(type, point);
+		float recall = getRecall(type, point);
+		return (2 * precision * recall) / (precision + recall);
+	}
+	
+	/*
+	 * This method returns the point with the highest F-Measure of a scoring type (the highest threshold if there are many),
+	 * or -1 if there are no predictions
+	 */
+	public int getBestPoint(ScoringType type)
+	{
+		int best = -1;
+		float bestFMeasure = 0;
+		for (int point = 0; point < points; point++)
+		{
+			float fMeasure = getFMeasure(type, point);
+			if (best == -1 || fMeasure > bestFMeasure)
+			{
+				best = point;
+				bestFMeasure = Float.isNaN(fMeasure) ? 0 : fMeasure;
+			}
+		}
+		return best;
+	}
+	
+	/*
+	 * This method writes all the points of the curve to a TSV file, from the highest threshold,
+	 * with the results of the given scoring types
+	 */
+	public void write(String file, List<ScoringType> types) throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try
+		{
+			writer.write("#THRESHOLD\tPREDICTIONS");
+			for (ScoringType type : types)
+			{
+				writer.write("\t" + type.getLabel() + " CORRECT\t" + type.getLabel() + " PRECISION\t"
+						+ type.getLabel() + " RECALL\t" + type.getLabel() + " F-MEASURE");
+			}
+			writer.newLine();
+			for (int point = 0; point < points; point++)
+			{
+				writer.write(thresholds[point] + "\t" + predictions[point]);
+				for (ScoringType type : types)
+				{
+					writer.write("\t" + getCorrect(type, point) + "\t" + getPrecision(type, point)
+							+ "\t" + getRecall(type, point) + "\t" + getFMeasure(type, point));
+				}
+				writer.newLine();
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
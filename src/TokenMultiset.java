@@ -0,0 +1,112 @@
+
+/*
+ * The tokens of a gold definition (or lemmatized definition) without stop words, prepared once when the 
+ * gold standard is loaded so TokenOverlap only needs to process the predicted side.
+ * 
+ * Repeated tokens are stored once with their number of repetitions, in an open-addressing table
+ * which is looked up with ranges of the predicted text. Objects of this class are immutable.
+ */
+public final class TokenMultiset
+{
+	private final String text;
+	private final int size;				// number of tokens which are not stop words, counting repetitions
+	private final int[] tokenStart;		// range in text of each distinct token
+	private final int[] tokenEnd;
+	private final int[] tokenCount;		// repetitions of each distinct token
+	private final int distinctTokens;
+	private final int[] table;			// each slot stores (distinct token + 1), 0 means empty
+	private final int mask;
+	
+	public TokenMultiset(String text, StopWordSet stopWords)
+	{
+		this.text = text;
+		
+		int maxTokens = TokenOverlap.maxTokens(text);
+		int[] starts = new int[maxTokens];
+		int[] ends = new int[maxTokens];
+		int tokens = TokenOverlap.tokenize(text, starts, ends);
+		
+		int capacity = 4;
+		while (capacity < tokens * 2)
+		{
+			capacity *= 2;
+		}
+		table = new int[capacity];
+		mask = capacity - 1;
+		tokenStart = new int[tokens];
+		tokenEnd = new int[tokens];
+		tokenCount = new int[tokens];
+		
+		int count = 0;
+		int distinct = 0;
+		for (int token = 0; token < tokens; token++)
+		{
+			int start = starts[token];
+			int end = ends[token];
+			if (stopWords.contains(text, start, end))
+			{
+				continue;
+			}
+			count++;
+			int found = find(text, start, end);
+			if (found == -1)
+			{
+				tokenStart[distinct] = start;
+				tokenEnd[distinct] = end;
+				tokenCount[distinct] = 1;
+				table[emptySlot(text, start, end)] = distinct + 1;
+				distinct++;
+			}
+			else
+			{
+				tokenCount[found]++;
+			}
+		}
+		size = count;
+		distinctTokens = distinct;
+	}
+	
+	/*
+	 * This method returns the distinct token equal to the characters of other between start and end, or -1
+	 */
+	public int find(String other, int start, int end)
+	{
+		int length = end - start;
+		int slot = StopWordSet.hash(other, start, end) & mask;
+		while (table[slot] != 0)
+		{
+			int token = table[slot] - 1;
+			if (tokenEnd[token] - tokenStart[token] == length && text.regionMatches(tokenStart[token], other, start, length))
+			{
+				return token;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	private int emptySlot(String other, int start, int end)
+	{
+		int slot = StopWordSet.hash(other, start, end) & mask;
+		while (table[slot] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public int distinctTokens()
+	{
+		return distinctTokens;
+	}
+	
+	public int count(int token)
+	{
+		return tokenCount[token];
+	}
+}
@@ -0,0 +1,294 @@
+
+import java.util.Arrays;
+
+/*
+ * This class calculates the token overlap score between a predicted definition and a gold definition 
+ * of an abbreviation (see BARR_Evaluator.analizeTokens).
+ * 
+ * Tokens are separated by spaces, as with String.split(" "). Stop words are removed from gold tokens and 
+ * predicted tokens are matched against a multiset of the remaining gold tokens, so each gold token can only 
+ * match one predicted token. The score is the number of matching tokens divided by the maximum between 
+ * the number of gold tokens (without stop words) and the number of predicted tokens.
+ * The calculation is done for the definition and the lemmatized definition, and the highest score is returned.
+ * 
+ * Tokens are handled as ranges of the original texts, and scratch arrays are reused between calls,
+ * so no object is created. Objects of this class are not thread safe: use one per thread.
+ * 
+ * Previous versions of this script matched each predicted token against the gold tokens with a list search,
+ * so a repeated predicted token matched the same gold token many times. That counting can be kept
+ * with countRepeatedTokens.
+ */
+public class TokenOverlap
+{
+	private final StopWordSet stopWords;
+	private final boolean countRepeatedTokens;
+	
+	// Token ranges of the predicted text
+	private int[] predStart = new int[16];
+	private int[] predEnd = new int[16];
+	private int predCount;
+	
+	// Token ranges of the gold text
+	private int[] gsStart = new int[16];
+	private int[] gsEnd = new int[16];
+	private int gsCount;
+	
+	// Multiset of gold tokens: each slot stores a gold token and how many times it is still available.
+	// Slots are valid only if their stamp is the current one, so the table does not need to be cleared.
+	private int[] slotToken = new int[32];
+	private int[] slotCount = new int[32];
+	private int[] slotStamp = new int[32];
+	private int stamp;
+	
+	// Repetitions still available of each distinct token of a precomputed gold multiset
+	private int[] available = new int[16];
+	
+	public TokenOverlap(StopWordSet stopWords, boolean countRepeatedTokens)
+	{
+		this.stopWords = stopWords;
+		this.countRepeatedTokens = countRepeatedTokens;
+	}
+	
+	/*
+	 * This method returns the highest token overlap score between the definitions and the lemmatized definitions
+	 */
+	public float score(String pred, String gs, String predLemma, String gsLemma)
+	{
+		float matchingScore = score(pred, gs);
+		float matchingScoreLemma = score(predLemma, gsLemma);
+		if (matchingScoreLemma > matchingScore)
+		{
+			return matchingScoreLemma;
+		}
+		else
+		{
+			return matchingScore;
+		}
+	}
+	
+	/*
+	 * This method returns the token overlap score between a predicted text and a gold text
+	 */
+	public float score(String pred, String gs)
+	{
+		tokenize(pred, true);
+		tokenize(gs, false);
+		
+		// Store gold tokens which are not stop words
+		nextStamp(gsCount);
+		int gsTokens = 0;
+		for (int token = 0; token < gsCount; token++)
+		{
+			if (!stopWords.contains(gs, gsStart[token], gsEnd[token]))
+			{
+				gsTokens++;
+				int slot = findSlot(gs, gsStart[token], gsEnd[token], gs);
+				if (slotStamp[slot] != stamp)
+				{
+					slotStamp[slot] = stamp;
+					slotToken[slot] = token;
+					slotCount[slot] = 0;
+				}
+				slotCount[slot]++;
+			}
+		}
+		
+		// Match predicted tokens which are not stop words
+		float matchingTokens = 0;
+		for (int token = 0; token < predCount; token++)
+		{
+			if (!stopWords.contains(pred, predStart[token], predEnd[token]))
+			{
+				int slot = findSlot(pred, predStart[token], predEnd[token], gs);
+				if (slotStamp[slot] == stamp && slotCount[slot] > 0)
+				{
+					matchingTokens++;
+					if (!countRepeatedTokens)
+					{
+						slotCount[slot]--;
+					}
+				}
+			}
+		}
+		
+		// check which has most tokens, if gold annotation, or prediction
+		return matchingTokens / Math.max(gsTokens, predCount);
+	}
+	
+	/*
+	 * This method returns the highest token overlap score, using gold tokens prepared when the gold standard was loaded
+	 */
+	public float score(String pred, TokenMultiset gs, String predLemma, TokenMultiset gsLemma)
+	{
+		float matchingScore = score(pred, gs);
+		float matchingScoreLemma = score(predLemma, gsLemma);
+		if (matchingScoreLemma > matchingScore)
+		{
+			return matchingScoreLemma;
+		}
+		else
+		{
+			return matchingScore;
+		}
+	}
+	
+	/*
+	 * This method returns the token overlap score between a predicted text and prepared gold tokens
+	 */
+	public float score(String pred, TokenMultiset gs)
+	{
+		tokenize(pred, true);
+		
+		int distinctTokens = gs.distinctTokens();
+		if (distinctTokens > available.length)
+		{
+			available = new int[distinctTokens * 2];
+		}
+		for (int token = 0; token < distinctTokens; token++)
+		{
+			available[token] = gs.count(token);
+		}
+		
+		// Match predicted tokens which are not stop words
+		float matchingTokens = 0;
+		for (int token = 0; token < predCount; token++)
+		{
+			if (!stopWords.contains(pred, predStart[token], predEnd[token]))
+			{
+				int gsToken = gs.find(pred, predStart[token], predEnd[token]);
+				if (gsToken != -1 && available[gsToken] > 0)
+				{
+					matchingTokens++;
+					if (!countRepeatedTokens)
+					{
+						available[gsToken]--;
+					}
+				}
+			}
+		}
+		
+		// check which has most tokens, if gold annotation, or prediction
+		return matchingTokens / Math.max(gs.size(), predCount);
+	}
+	
+	/*
+	 * This method returns the slot of the multiset for a token: the slot which stores it, 
+	 * or the empty slot where it should be stored
+	 */
+	private int findSlot(String text, int start, int end, String gs)
+	{
+		int length = end - start;
+		int mask = slotToken.length - 1;
+		int slot = StopWordSet.hash(text, start, end) & mask;
+		while (slotStamp[slot] == stamp)
+		{
+			int token = slotToken[slot];
+			if (gsEnd[token] - gsStart[token] == length && gs.regionMatches(gsStart[token], text, start, length))
+			{
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/*
+	 * This method starts a new multiset, able to store the given number of tokens
+	 */
+	private void nextStamp(int tokens)
+	{
+		if (tokens * 2 > slotToken.length)
+		{
+			int capacity = slotToken.length;
+			while (tokens * 2 > capacity)
+			{
+				capacity *= 2;
+			}
+			slotToken = new int[capacity];
+			slotCount = new int[capacity];
+			slotStamp = new int[capacity];
+			stamp = 0;
+		}
+		stamp++;
+		if (stamp == 0)		// all stamps were used, clear the table
+		{
+			Arrays.fill(slotStamp, 0);
+			stamp = 1;
+		}
+	}
+	
+	/*
+	 * This method finds the tokens of a text and stores them in the prediction or gold scratch arrays
+	 */
+	private void tokenize(String text, boolean isPrediction)
+	{
+		int maxTokens = maxTokens(text);
+		if (isPrediction)
+		{
+			if (maxTokens > predStart.length)
+			{
+				predStart = new int[maxTokens * 2];
+				predEnd = new int[maxTokens * 2];
+			}
+			predCount = tokenize(text, predStart, predEnd);
+		}
+		else
+		{
+			if (maxTokens > gsStart.length)
+			{
+				gsStart = new int[maxTokens * 2];
+				gsEnd = new int[maxTokens * 2];
+			}
+			gsCount = tokenize(text, gsStart, gsEnd);
+		}
+	}
+	
+	/*
+	 * This method returns the maximum number of tokens of a text: its number of spaces plus one
+	 */
+	static int maxTokens(String text)
+	{
+		int tokens = 1;
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (text.charAt(i) == ' ')
+			{
+				tokens++;
+			}
+		}
+		return tokens;
+	}
+	
+	/*
+	 * This method finds the tokens of a text, the same ones String.split(" ") returns:
+	 * empty tokens between consecutive spaces are kept, but empty tokens at the end are removed.
+	 * Token ranges are stored in the given arrays, which must have room for maxTokens(text) tokens.
+	 * Returns the number of tokens.
+	 */
+	static int tokenize(String text, int[] starts, int[] ends)
+	{
+		int count = 0;
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i <= length; i++)
+		{
+			if (i == length || text.charAt(i) == ' ')
+			{
+				starts[count] = start;
+				ends[count] = i;
+				count++;
+				start = i + 1;
+			}
+		}
+		
+		// A text without spaces is a single token, even if it is empty
+		if (count > 1)
+		{
+			while (count > 0 && starts[count - 1] == ends[count - 1])
+			{
+				count--;
+			}
+		}
+		return count;
+	}
+}
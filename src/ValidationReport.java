@@ -0,0 +1,102 @@
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The format errors found while checking an annotations file: the number and text of each wrong line.
+ * All the errors are counted, but only the first MAX_REPORTED_ERRORS lines are kept to display them,
+ * so a file with many wrong lines does not use much memory.
+ * Reports of consecutive parts of a file (see ParallelAnnotationChecker) are added in order, with their line numbers
+ * moved by the lines of the previous parts, so the result is the same as checking the whole file at once.
+ */
+public final class ValidationReport
+{
+	public static final int MAX_REPORTED_ERRORS = 100;
+	
+	private final List<Integer> lineNumbers;
+	private final List<String> lines;
+	private int errorCount;
+	
+	public ValidationReport()
+	{
+		lineNumbers = new ArrayList<Integer>();
+		lines = new ArrayList<String>();
+	}
+	
+	/*
+	 * This method adds a wrong line. Lines must be added in order.
+	 */
+	public void add(int lineNumber, String line)
+	{
+		if (lines.size() < MAX_REPORTED_ERRORS)
+		{
+			lineNumbers.add(lineNumber);
+			lines.add(line);
+		}
+		errorCount++;
+	}
+	
+	/*
+	 * This method adds the errors of the next part of the file, whose line numbers start after the given number of lines
+	 */
+	public void add(ValidationReport part, int previousLines)
+	{
+		for (int i = 0; i < part.lines.size() && lines.size() < MAX_REPORTED_ERRORS; i++)
+		{
+			lineNumbers.add(part.lineNumbers.get(i) + previousLines);
+			lines.add(part.lines.get(i));
+		}
+		errorCount += part.errorCount;
+	}
+	
+	public boolean hasErrors()
+	{
+		return errorCount > 0;
+	}
+	
+	public int getErrorCount()
+	{
+		return errorCount;
+	}
+	
+	/*
+	 * This method returns the message of the first error, followed by the number of other errors if there are more.
+	 * The file is included in the message if it is not null. Returns null if there are no errors.
+	 */
+	public String getFirstError(String file)
+	{
+		if (errorCount == 0)
+		{
+			return null;
+		}
+		String error = message(0, file);
+		if (errorCount > 1)
+		{
+			error += " (and " + (errorCount - 1) + " more errors)";
+		}
+		return error;
+	}
+	
+	/*
+	 * This method displays the kept errors, one per line, and how many there are.
+	 * The file is included in the messages if it is not null.
+	 */
+	public void print(PrintStream out, String file)
+	{
+		for (int i = 0; i < lines.size(); i++)
+		{
+			out.println(message(i, file));
+		}
+		if (errorCount > 1)
+		{
+			out.println(errorCount + " WRONG LINES" + (file != null ? " IN " + file : "")
+					+ (errorCount > lines.size() ? ", ONLY THE FIRST " + lines.size() + " ARE DISPLAYED" : ""));
+		}
+	}
+	
+	private String message(int error, String file)
+	{
+		return "ERROR IN LINE " + lineNumbers.get(error) + (file != null ? " OF " + file : "") + " : " + lines.get(error);
+	}
+}